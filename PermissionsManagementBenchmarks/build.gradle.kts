@@ -0,0 +1,36 @@
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+// Plain JVM benchmarks for the Android independent core, run with: ./gradlew :PermissionsManagementBenchmarks:jmh
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+jmh {
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    // report allocation rate (gc.alloc.rate.norm) next to throughput
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+}
+
+dependencies {
+    jmh(project(":PermissionsManagementCore"))
+    jmh(libs.jmh.core)
+    jmhAnnotationProcessor(libs.jmh.generator.annprocess)
+}
+
+// Randomized end-to-end flows against the in-memory backend, run with:
+// ./gradlew :PermissionsManagementBenchmarks:simulatePermissionFlows [-Pflows=100000] [-Pseed=1]
+tasks.register<JavaExec>("simulatePermissionFlows") {
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("com.example.permissionsmanagementlib.benchmarks.PermissionFlowSimulator")
+    args(
+        (project.findProperty("flows") ?: "100000").toString(),
+        (project.findProperty("seed") ?: "1").toString()
+    )
+}
@@ -0,0 +1,64 @@
+package com.example.permissionsmanagementlib.benchmarks;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Realistic permission inputs shared by the benchmarks.
+ */
+final class BenchmarkPermissions {
+
+    // dangerous permissions a typical app declares, in the order apps usually request them
+    static final String[] ALL = {
+            "android.permission.CAMERA",
+            "android.permission.RECORD_AUDIO",
+            "android.permission.ACCESS_FINE_LOCATION",
+            "android.permission.ACCESS_COARSE_LOCATION",
+            "android.permission.ACCESS_BACKGROUND_LOCATION",
+            "android.permission.READ_CONTACTS",
+            "android.permission.WRITE_CONTACTS",
+            "android.permission.GET_ACCOUNTS",
+            "android.permission.READ_CALENDAR",
+            "android.permission.WRITE_CALENDAR",
+            "android.permission.READ_SMS",
+            "android.permission.SEND_SMS",
+            "android.permission.RECEIVE_SMS",
+            "android.permission.READ_PHONE_STATE",
+            "android.permission.CALL_PHONE",
+            "android.permission.READ_CALL_LOG",
+            "android.permission.BODY_SENSORS",
+            "android.permission.ACTIVITY_RECOGNITION",
+            "android.permission.READ_EXTERNAL_STORAGE",
+            "android.permission.WRITE_EXTERNAL_STORAGE",
+            "android.permission.POST_NOTIFICATIONS",
+            "android.permission.READ_MEDIA_IMAGES",
+            "android.permission.READ_MEDIA_VIDEO",
+            "android.permission.BLUETOOTH_CONNECT",
+    };
+
+    private BenchmarkPermissions() {
+    }
+
+    static String[] first(int count) {
+        return Arrays.copyOf(ALL, count);
+    }
+
+    static List<String> firstAsList(int count) {
+        return Arrays.asList(first(count));
+    }
+
+    /**
+     * Builds a RequestMultiplePermissions style result where every {@code deniedEvery}-th permission is denied.
+     * A {@code deniedEvery} of 0 grants everything.
+     */
+    static Map<String, Boolean> result(int count, int deniedEvery) {
+        Map<String, Boolean> result = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            boolean denied = deniedEvery > 0 && i % deniedEvery == 0;
+            result.put(ALL[i], !denied);
+        }
+        return result;
+    }
+}
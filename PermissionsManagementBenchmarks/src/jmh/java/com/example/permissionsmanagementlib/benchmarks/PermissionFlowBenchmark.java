@@ -0,0 +1,55 @@
+package com.example.permissionsmanagementlib.benchmarks;
+
+import com.example.permissionsmanagementlib.InMemoryPermissionBackend;
+import com.example.permissionsmanagementlib.PermissionFlowController;
+import com.example.permissionsmanagementlib.PermissionSet;
+import com.example.permissionsmanagementlib.PermissionsCallback;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole permission flows (planning, requests, dialogs, settings hops) against the in-memory backend,
+ * i.e. the library's own cost per flow without any platform work. See {@link PermissionFlowSimulator} for prompt counts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PermissionFlowBenchmark {
+
+    private final Random random = new Random(1);
+    private final PermissionSet declared = PermissionSet.of(BenchmarkPermissions.ALL);
+    private final PermissionsCallback callback = new PermissionsCallback() {
+        @Override
+        public void onPermissionsGranted() {
+        }
+
+        @Override
+        public void onPermissionsDenied(List<String> deniedPermissions) {
+        }
+    };
+    private InMemoryPermissionBackend backend;
+
+    @Setup
+    public void setUp() {
+        backend = new InMemoryPermissionBackend(34, new PermissionFlowSimulator.RandomUser(random));
+    }
+
+    @Benchmark
+    public int randomizedFlow() {
+        backend.reset();
+        backend.declare(declared);
+        PermissionFlowController controller = PermissionFlowSimulator.newController(random, backend, callback);
+        controller.requestPermissions();
+        return backend.getPromptCount();
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.permissionsmanagementlib.benchmarks;
+
+import com.example.permissionsmanagementlib.InMemoryPermissionBackend;
+import com.example.permissionsmanagementlib.PermissionBackend;
+import com.example.permissionsmanagementlib.PermissionFlowController;
+import com.example.permissionsmanagementlib.PermissionSet;
+import com.example.permissionsmanagementlib.PermissionsCallback;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Drives randomized user behaviour through the real flow logic ({@link PermissionFlowController}) against
+ * {@link InMemoryPermissionBackend} and reports round trips per flow, how flows ended and throughput.
+ * Runs are deterministic per seed, so a change in the prompt counts between two commits is a behaviour change.
+ *
+ * Run with: ./gradlew :PermissionsManagementBenchmarks:simulatePermissionFlows [-Pflows=100000] [-Pseed=1]
+ */
+public final class PermissionFlowSimulator {
+
+    static final int[] SDK_LEVELS = {26, 29, 30, 31, 33, 34};
+    static final PermissionSet BACKGROUND_LOCATION = PermissionSet.of("android.permission.ACCESS_BACKGROUND_LOCATION");
+    private static final PermissionSet DECLARED = PermissionSet.of(BenchmarkPermissions.ALL);
+
+    public static final class Report {
+        public int flows;
+        public int granted;
+        public int denied;
+        // flows that never reached a callback, or reached more than one: both are bugs
+        public int withoutCallback;
+        public int withSeveralCallbacks;
+        public long requests;
+        public long prompts;
+        public int maxPrompts;
+        public long rationaleDialogs;
+        public long settingsDialogs;
+        public long settingsVisits;
+        public long elapsedNanos;
+
+        @Override
+        public String toString() {
+            double perFlow = flows == 0 ? 0 : 1.0 / flows;
+            return String.format(java.util.Locale.ROOT,
+                    "flows=%d granted=%d denied=%d withoutCallback=%d withSeveralCallbacks=%d%n"
+                            + "per flow: requests=%.3f prompts=%.3f (max %d) rationale=%.3f settingsDialogs=%.3f settingsVisits=%.3f%n"
+                            + "throughput: %.0f flows/s",
+                    flows, granted, denied, withoutCallback, withSeveralCallbacks,
+                    requests * perFlow, prompts * perFlow, maxPrompts, rationaleDialogs * perFlow,
+                    settingsDialogs * perFlow, settingsVisits * perFlow,
+                    elapsedNanos == 0 ? 0 : flows * 1e9 / elapsedNanos);
+        }
+    }
+
+    /**
+     * Randomized user: answers prompts with the given probabilities, accepts dialogs and grants in settings at random.
+     */
+    static final class RandomUser implements InMemoryPermissionBackend.User {
+        private final Random random;
+
+        RandomUser(Random random) {
+            this.random = random;
+        }
+
+        @Override
+        public InMemoryPermissionBackend.Response onSystemPrompt(String permission) {
+            int roll = random.nextInt(20);
+            if (roll < 10) {
+                return InMemoryPermissionBackend.Response.GRANT;
+            }
+            if (roll < 15) {
+                return InMemoryPermissionBackend.Response.DENY;
+            }
+            return roll < 18 ? InMemoryPermissionBackend.Response.DENY_FOREVER : InMemoryPermissionBackend.Response.DISMISS;
+        }
+
+        @Override
+        public boolean onDialog(int kind) {
+            return random.nextInt(10) < (kind == PermissionBackend.DIALOG_RATIONALE ? 7 : 5);
+        }
+
+        @Override
+        public PermissionSet onSettingsScreen(PermissionSet notGranted) {
+            PermissionSet.Builder granted = new PermissionSet.Builder();
+            for (int id = notGranted.nextId(0); id >= 0; id = notGranted.nextId(id + 1)) {
+                if (random.nextBoolean()) {
+                    granted.addId(id);
+                }
+            }
+            return granted.build();
+        }
+    }
+
+    private static final class CountingCallback implements PermissionsCallback {
+        int granted;
+        int denied;
+
+        @Override
+        public void onPermissionsGranted() {
+            granted++;
+        }
+
+        @Override
+        public void onPermissionsDenied(List<String> deniedPermissions) {
+            denied++;
+        }
+
+        void reset() {
+            granted = 0;
+            denied = 0;
+        }
+    }
+
+    private PermissionFlowSimulator() {
+    }
+
+    public static Report run(long seed, int flows) {
+        Random random = new Random(seed);
+        RandomUser user = new RandomUser(random);
+        InMemoryPermissionBackend[] backends = new InMemoryPermissionBackend[SDK_LEVELS.length];
+        for (int i = 0; i < SDK_LEVELS.length; i++) {
+            backends[i] = new InMemoryPermissionBackend(SDK_LEVELS[i], user);
+        }
+        CountingCallback callback = new CountingCallback();
+        Report report = new Report();
+
+        long start = System.nanoTime();
+        for (int flow = 0; flow < flows; flow++) {
+            InMemoryPermissionBackend backend = backends[random.nextInt(backends.length)];
+            backend.reset();
+            backend.declare(DECLARED);
+            // some permissions were already decided in earlier sessions
+            backend.grant(randomSubset(random, 4));
+
+            PermissionFlowController controller = newController(random, backend, callback);
+            callback.reset();
+            controller.requestPermissions();
+            // the user sometimes asks again after a denial, e.g. by tapping the button a second time
+            if (callback.denied > 0 && random.nextInt(4) == 0) {
+                callback.reset();
+                controller.requestPermissions();
+            }
+
+            report.flows++;
+            int callbacks = callback.granted + callback.denied;
+            if (callbacks == 0) {
+                report.withoutCallback++;
+            } else if (callbacks > 1) {
+                report.withSeveralCallbacks++;
+            } else if (callback.granted == 1) {
+                report.granted++;
+            } else {
+                report.denied++;
+            }
+            report.requests += backend.getRequestCount();
+            report.prompts += backend.getPromptCount();
+            report.maxPrompts = Math.max(report.maxPrompts, backend.getPromptCount());
+            report.rationaleDialogs += backend.getRationaleDialogCount();
+            report.settingsDialogs += backend.getSettingsDialogCount();
+            report.settingsVisits += backend.getSettingsVisitCount();
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Builds a controller configured like one of the two managers for a random permission set.
+     */
+    static PermissionFlowController newController(Random random, PermissionBackend backend, PermissionsCallback callback) {
+        if (random.nextInt(5) == 0) {
+            // BackgroundLocationPermissionManager
+            return new PermissionFlowController(backend, BACKGROUND_LOCATION, () -> callback)
+                    .setRationaleCancelable(true)
+                    .setReportAllPermissionsOnDenial(true);
+        }
+        // GeneralPermissionManager
+        PermissionSet permissions = randomSubset(random, 1 + random.nextInt(6));
+        return new PermissionFlowController(backend, permissions, () -> callback)
+                .setListDeniedPermissions(true);
+    }
+
+    static PermissionSet randomSubset(Random random, int count) {
+        PermissionSet.Builder subset = new PermissionSet.Builder();
+        for (int i = 0; i < count; i++) {
+            subset.add(BenchmarkPermissions.ALL[random.nextInt(BenchmarkPermissions.ALL.length)]);
+        }
+        return subset.build();
+    }
+
+    public static void main(String[] args) {
+        int flows = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1L;
+        // first run warms up the JIT, the second one is reported
+        run(seed, Math.min(flows, 10_000));
+        Report report = run(seed, flows);
+        System.out.println(report);
+        if (report.withoutCallback > 0 || report.withSeveralCallbacks > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.permissionsmanagementlib.benchmarks;
+
+import com.example.permissionsmanagementlib.PermissionGrantSnapshot;
+import com.example.permissionsmanagementlib.PermissionRegistry;
+import com.example.permissionsmanagementlib.PermissionResults;
+import com.example.permissionsmanagementlib.PermissionSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Startup check of every declared permission: one check per permission versus one package info snapshot.
+ * The platform call is modelled by {@code callCost} (Blackhole.consumeCPU tokens per call, 0 = free) because
+ * binder transactions cannot run on the JVM. With {@code callCost = 0} the numbers are the decoding overhead
+ * the snapshot adds; with a cost the gap grows with {@code declared}, as it does on a device.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PermissionGrantSnapshotBenchmark {
+
+    @Param({"8", "24", "48"})
+    public int declared;
+
+    @Param({"0", "2000"})
+    public long callCost;
+
+    private String[] requestedPermissions;
+    private int[] requestedPermissionsFlags;
+    private PermissionSet permissions;
+    private Predicate<String> checkSelfPermission;
+
+    @Setup
+    public void setUp() {
+        requestedPermissions = new String[declared];
+        requestedPermissionsFlags = new int[declared];
+        for (int i = 0; i < declared; i++) {
+            // past the dangerous permissions, apps declare normal ones (INTERNET, WAKE_LOCK, ...)
+            requestedPermissions[i] = i < BenchmarkPermissions.ALL.length
+                    ? BenchmarkPermissions.ALL[i] : "android.permission.NORMAL_" + i;
+            requestedPermissionsFlags[i] = i % 3 == 0 ? 0 : PermissionGrantSnapshot.FLAG_GRANTED;
+            PermissionRegistry.idOf(requestedPermissions[i]);
+        }
+        permissions = PermissionSet.of(requestedPermissions);
+        PermissionGrantSnapshot truth = PermissionGrantSnapshot.of(requestedPermissions, requestedPermissionsFlags);
+        checkSelfPermission = permission -> {
+            Blackhole.consumeCPU(callCost);
+            return truth.getState(permission) == PermissionGrantSnapshot.STATE_GRANTED;
+        };
+    }
+
+    @Benchmark
+    public PermissionSet individualChecks() {
+        return PermissionResults.denied(permissions, checkSelfPermission);
+    }
+
+    @Benchmark
+    public PermissionSet snapshot() {
+        Blackhole.consumeCPU(callCost);
+        PermissionGrantSnapshot snapshot = PermissionGrantSnapshot.of(requestedPermissions, requestedPermissionsFlags);
+        return snapshot.getRequested().minus(snapshot.getGranted());
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.permissionsmanagementlib.benchmarks;
+
+import com.example.permissionsmanagementlib.DenialAction;
+import com.example.permissionsmanagementlib.PermissionResults;
+import com.example.permissionsmanagementlib.PermissionSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Result aggregation, denied permission computation and the rationale-versus-settings decision,
+ * the work done on the main thread every time a request returns.
+ * With {@code deniedEvery = 0} the result path ({@link #deniedFromResult}) must report 0 B/op in gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PermissionResultsBenchmark {
+
+    @Param({"1", "3", "8", "24"})
+    public int size;
+
+    // 0: everything granted, 1: everything denied, 2: every other permission denied
+    @Param({"0", "1", "2"})
+    public int deniedEvery;
+
+    private Map<String, Boolean> result;
+    private PermissionSet requested;
+    private PermissionSet denied;
+    private Predicate<String> isGranted;
+    private Predicate<String> shouldShowRationale;
+
+    @Setup
+    public void setUp() {
+        result = BenchmarkPermissions.result(size, deniedEvery);
+        requested = PermissionSet.of(result.keySet());
+        denied = PermissionResults.denied(result);
+
+        Set<String> grantedPermissions = new HashSet<>();
+        for (Map.Entry<String, Boolean> entry : result.entrySet()) {
+            if (entry.getValue()) {
+                grantedPermissions.add(entry.getKey());
+            }
+        }
+        isGranted = grantedPermissions::contains;
+        // worst case for the decision: no permission asks for a rationale, so every one is checked
+        shouldShowRationale = permission -> false;
+    }
+
+    @Benchmark
+    public PermissionSet aggregateResult() {
+        return PermissionResults.denied(result);
+    }
+
+    @Benchmark
+    public PermissionSet deniedFromResult() {
+        return PermissionResults.denied(requested, result);
+    }
+
+    @Benchmark
+    public PermissionSet deniedFromChecks() {
+        return PermissionResults.denied(requested, isGranted);
+    }
+
+    @Benchmark
+    public DenialAction decideDenialAction() {
+        return DenialAction.decide(denied, shouldShowRationale);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.permissionsmanagementlib.benchmarks;
+
+import com.example.permissionsmanagementlib.PermissionSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feature-gating style set operations: which of the required permissions are still missing.
+ * The String based variants reproduce the List / String[] plumbing the managers used before PermissionSet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PermissionSetBenchmark {
+
+    @Param({"1", "3", "8", "24"})
+    public int size;
+
+    private PermissionSet required;
+    private PermissionSet granted;
+    private List<String> requiredList;
+    private Set<String> grantedStrings;
+
+    @Setup
+    public void setUp() {
+        String[] permissions = BenchmarkPermissions.first(size);
+        required = PermissionSet.of(permissions);
+        requiredList = Arrays.asList(permissions);
+
+        // grant every other permission
+        List<String> grantedList = new ArrayList<>();
+        for (int i = 0; i < size; i += 2) {
+            grantedList.add(permissions[i]);
+        }
+        granted = PermissionSet.of(grantedList);
+        grantedStrings = new HashSet<>(grantedList);
+    }
+
+    @Benchmark
+    public PermissionSet missingPermissionSet() {
+        return required.minus(granted);
+    }
+
+    @Benchmark
+    public boolean allGrantedPermissionSet() {
+        return granted.containsAll(required);
+    }
+
+    @Benchmark
+    public List<String> missingStringList() {
+        List<String> missing = new ArrayList<>();
+        for (String permission : requiredList) {
+            if (!grantedStrings.contains(permission)) {
+                missing.add(permission);
+            }
+        }
+        return missing;
+    }
+
+    @Benchmark
+    public void iterateIds(Blackhole blackhole) {
+        for (int id = required.nextId(0); id >= 0; id = required.nextId(id + 1)) {
+            blackhole.consume(id);
+        }
+    }
+
+    @Benchmark
+    public String[] toArray() {
+        return required.toArray();
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.permissionsmanagementlib.benchmarks;
+
+import com.example.permissionsmanagementlib.MessageTemplate;
+import com.example.permissionsmanagementlib.PermissionSet;
+import com.example.permissionsmanagementlib.PermissionText;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text built for the rationale dialog and the default denied toast.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PermissionTextBenchmark {
+
+    @Param({"1", "3", "8", "24"})
+    public int size;
+
+    private List<String> permissions;
+    private PermissionSet permissionSet;
+    private final StringBuilder reusedBuilder = new StringBuilder();
+    private final MessageTemplate rationaleTemplate = MessageTemplate.compile(RATIONALE_PATTERN);
+    private final MessageTemplate pluralTemplate = MessageTemplate.plural(
+            count -> count == 1 ? "{app} needs this permission:\n{permissions}" : RATIONALE_PATTERN);
+
+    private static final String RATIONALE_PATTERN = "{app} needs these {count} permissions:\n{permissions}";
+
+    @Setup
+    public void setUp() {
+        permissions = BenchmarkPermissions.firstAsList(size);
+        permissionSet = PermissionSet.of(permissions);
+    }
+
+    @Benchmark
+    public String permissionName() {
+        return PermissionText.getPermissionName(permissions.get(0));
+    }
+
+    @Benchmark
+    public String permissionsStringGenerator() {
+        return PermissionText.permissionsStringGenerator(permissions);
+    }
+
+    // the rationale dialog path: one reused builder, no per-line strings (0 B/op once the builder has grown)
+    @Benchmark
+    public StringBuilder appendPermissionsListReused() {
+        reusedBuilder.setLength(0);
+        return PermissionText.appendPermissionsList(reusedBuilder, permissionSet);
+    }
+
+    // parsing a pattern, paid once per setter call
+    @Benchmark
+    public MessageTemplate compileTemplate() {
+        return MessageTemplate.compile(RATIONALE_PATTERN);
+    }
+
+    // a rationale message from a compiled template into a reused builder
+    @Benchmark
+    public StringBuilder renderTemplateReused() {
+        reusedBuilder.setLength(0);
+        return rationaleTemplate.render(reusedBuilder, permissionSet, null, "Demo");
+    }
+
+    // same with the pattern picked by count, each pattern is compiled on first use only
+    @Benchmark
+    public StringBuilder renderPluralTemplateReused() {
+        reusedBuilder.setLength(0);
+        return pluralTemplate.render(reusedBuilder, permissionSet, null, "Demo");
+    }
+}
@@ -0,0 +1,27 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.maven.publish)
+    // generates PlatformPermissionIndex from src/main/permissions/platform-permissions.csv
+    alias(libs.plugins.permission.index)
+}
+
+group = "com.example.permissionsmanagementlib"
+version = "1.0.0"
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+publishing {
+    publications {
+        create<MavenPublication>("release") {
+            artifactId = "PermissionsManagementCore"
+            from(components["java"])
+        }
+    }
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
@@ -0,0 +1,22 @@
+package com.example.permissionsmanagementlib;
+
+import java.util.function.Predicate;
+
+/**
+ * What the managers do after a request comes back with denied permissions.
+ */
+public enum DenialAction {
+    // at least one permission can still be requested, explain why and ask again
+    SHOW_RATIONALE,
+    // every denied permission is blocked ("Don't ask again"), only the settings screen can grant it
+    SHOW_SETTINGS;
+
+    public static DenialAction decide(PermissionSet deniedPermissions, Predicate<String> shouldShowRationale) {
+        for (int id = deniedPermissions.nextId(0); id >= 0; id = deniedPermissions.nextId(id + 1)) {
+            if (shouldShowRationale.test(PermissionRegistry.nameOf(id))) {
+                return SHOW_RATIONALE;
+            }
+        }
+        return SHOW_SETTINGS;
+    }
+}
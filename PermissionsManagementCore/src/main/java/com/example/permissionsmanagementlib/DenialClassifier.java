@@ -0,0 +1,68 @@
+package com.example.permissionsmanagementlib;
+
+/**
+ * Tells what a denied request result actually means. The result itself looks the same whether the user denied,
+ * dismissed the dialog or never saw one because the system answered for them.
+ *
+ * Each permission is judged by its own rationale state before and after the request: a rationale on either side
+ * means the system was still asking for it. Only a permission without one needs to know whether the system dialog
+ * was shown at all. A granted permission or a rationale anywhere in the batch proves it was; when the whole batch
+ * came back denied without any, the timing decides: the dialog counts as shown only if the host was paused and
+ * the round trip took longer than {@link #INSTANT_ROUND_TRIP_MILLIS}. A permission in "Don't ask again" state
+ * still starts the system's request activity briefly, but it finishes faster than anybody could read the dialog.
+ */
+public final class DenialClassifier {
+
+    public enum Kind {
+        // the system asked and may ask again
+        DENIED,
+        // "Don't ask again", a second denial from Android 11 on, or answered by the system without asking
+        DENIED_PERMANENTLY,
+        // the dialog was closed without a choice (back, outside tap), the next request asks again
+        DISMISSED
+    }
+
+    // round trips below this were answered without user interaction
+    public static final long INSTANT_ROUND_TRIP_MILLIS = 300L;
+
+    private DenialClassifier() {
+    }
+
+    public static boolean isPromptShown(boolean hostPaused, long roundTripMillis) {
+        return hostPaused && roundTripMillis >= INSTANT_ROUND_TRIP_MILLIS;
+    }
+
+    /**
+     * Whether the system dialog was shown for a batch, from the batch's results first and its timing only
+     * when they tell nothing.
+     *
+     * @param anyGranted   whether a permission of the batch came back granted
+     * @param anyRationale whether a permission of the batch had a rationale before or after the request
+     */
+    public static boolean isPromptShown(boolean anyGranted, boolean anyRationale, boolean hostPaused, long roundTripMillis) {
+        return anyGranted || anyRationale || isPromptShown(hostPaused, roundTripMillis);
+    }
+
+    /**
+     * Classifies one denied permission of a result.
+     *
+     * @param promptShown    whether the system dialog was shown for the batch, only consulted without a rationale
+     * @param knownPermanent whether the history already recorded the permission as permanently denied
+     */
+    public static Kind classify(boolean rationaleBefore, boolean rationaleAfter, boolean promptShown, boolean knownPermanent) {
+        if (rationaleAfter) {
+            return Kind.DENIED;
+        }
+        if (!promptShown) {
+            // nobody was asked: the permission can only be granted in the settings screen
+            return Kind.DENIED_PERMANENTLY;
+        }
+        if (rationaleBefore) {
+            // the system offered a rationale before and stopped after this denial
+            return Kind.DENIED_PERMANENTLY;
+        }
+        // no rationale before or after: a first prompt closed without a choice, unless the dialog was shown for
+        // other permissions of the batch and this one was already permanently denied
+        return knownPermanent ? Kind.DENIED_PERMANENTLY : Kind.DISMISSED;
+    }
+}
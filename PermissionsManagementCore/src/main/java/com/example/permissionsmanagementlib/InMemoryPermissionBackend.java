@@ -0,0 +1,282 @@
+package com.example.permissionsmanagementlib;
+
+/**
+ * Deterministic in-memory {@link PermissionBackend} that models the platform's permission behaviour,
+ * for running flows on the JVM in tests, benchmarks and simulations.
+ *
+ * A scripted {@link User} answers every system prompt, dialog and settings visit synchronously.
+ * Like the platform, a permission denied with "Don't ask again" comes back denied without a prompt,
+ * and from Android 11 (API 30) a second denial counts as "Don't ask again". The history the flow reads is
+ * classified with {@link DenialClassifier} like the Android backend's.
+ * Counters record the round trips of all flows since the last {@link #reset()}.
+ */
+public final class InMemoryPermissionBackend implements PermissionBackend {
+
+    public enum Response {
+        GRANT,
+        DENY,
+        DENY_FOREVER,
+        // closes the dialog without a choice, nothing changes
+        DISMISS
+    }
+
+    public interface User {
+        Response onSystemPrompt(String permission);
+
+        // true for the positive button
+        boolean onDialog(int kind);
+
+        // returns the permissions the user grants in the settings screen
+        PermissionSet onSettingsScreen(PermissionSet notGranted);
+    }
+
+    private static final int PERMANENT_DENIAL_AFTER_SECOND_SDK = 30;
+
+    private final int sdkInt;
+    private int targetSdkInt;
+    private User user;
+    private String appName = "App";
+
+    private PermissionSet granted = PermissionSet.EMPTY;
+    private PermissionSet deniedOnce = PermissionSet.EMPTY;
+    private PermissionSet deniedForever = PermissionSet.EMPTY;
+    private PermissionSet recordedForever = PermissionSet.EMPTY;
+    // declared and requested permissions, the settings screen shows them
+    private PermissionSet known = PermissionSet.EMPTY;
+
+    private int requestCount;
+    private int promptCount;
+    private int rationaleDialogCount;
+    private int settingsDialogCount;
+    private int settingsVisitCount;
+
+    public InMemoryPermissionBackend(int sdkInt, User user) {
+        this.sdkInt = sdkInt;
+        this.targetSdkInt = sdkInt;
+        this.user = user;
+    }
+
+    // defaults to the SDK level
+    public InMemoryPermissionBackend setTargetSdkInt(int targetSdkInt) {
+        this.targetSdkInt = targetSdkInt;
+        return this;
+    }
+
+    public InMemoryPermissionBackend setUser(User user) {
+        this.user = user;
+        return this;
+    }
+
+    public InMemoryPermissionBackend setAppName(String appName) {
+        this.appName = appName;
+        return this;
+    }
+
+    /**
+     * Declares permissions as the manifest would, so the settings screen offers them before they were requested.
+     */
+    public InMemoryPermissionBackend declare(PermissionSet permissions) {
+        known = known.union(permissions);
+        return this;
+    }
+
+    public InMemoryPermissionBackend grant(PermissionSet permissions) {
+        granted = granted.union(permissions);
+        deniedOnce = deniedOnce.minus(permissions);
+        deniedForever = deniedForever.minus(permissions);
+        return this;
+    }
+
+    public InMemoryPermissionBackend revoke(PermissionSet permissions) {
+        granted = granted.minus(permissions);
+        return this;
+    }
+
+    /**
+     * Installs a new version of the app, which makes the history forget its permanent denials.
+     */
+    public InMemoryPermissionBackend updateApp() {
+        recordedForever = PermissionSet.EMPTY;
+        return this;
+    }
+
+    /**
+     * Forgets all permission states, declarations and counters.
+     */
+    public void reset() {
+        granted = PermissionSet.EMPTY;
+        deniedOnce = PermissionSet.EMPTY;
+        deniedForever = PermissionSet.EMPTY;
+        recordedForever = PermissionSet.EMPTY;
+        known = PermissionSet.EMPTY;
+        requestCount = 0;
+        promptCount = 0;
+        rationaleDialogCount = 0;
+        settingsDialogCount = 0;
+        settingsVisitCount = 0;
+    }
+
+    @Override
+    public int getSdkInt() {
+        return sdkInt;
+    }
+
+    @Override
+    public int getTargetSdkInt() {
+        return targetSdkInt;
+    }
+
+    @Override
+    public boolean isGranted(String permission) {
+        return granted.contains(permission);
+    }
+
+    @Override
+    public PermissionSet denied(PermissionSet permissions) {
+        return permissions.minus(granted);
+    }
+
+    @Override
+    public boolean shouldShowRationale(String permission) {
+        return deniedOnce.contains(permission) && !deniedForever.contains(permission);
+    }
+
+    @Override
+    public void request(PermissionSet permissions, RequestListener listener) {
+        requestCount++;
+        known = known.union(permissions);
+        PermissionSet.Builder denied = new PermissionSet.Builder();
+        PermissionSet.Builder rationaleBefore = new PermissionSet.Builder();
+        boolean prompted = false;
+        for (int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            if (granted.containsId(id)) {
+                continue;
+            }
+            String permission = PermissionRegistry.nameOf(id);
+            if (shouldShowRationale(permission)) {
+                rationaleBefore.addId(id);
+            }
+            if (deniedForever.containsId(id)) {
+                // the system answers without showing anything
+                denied.addId(id);
+                continue;
+            }
+            prompted = true;
+            Response response = user.onSystemPrompt(permission);
+            if (response == Response.GRANT) {
+                grant(PermissionSet.of(permission));
+            } else if (response == Response.DISMISS) {
+                denied.addId(id);
+            } else {
+                denied.addId(id);
+                // "Don't ask again" is only offered once the permission was denied before
+                boolean forever = deniedOnce.containsId(id)
+                        && (response == Response.DENY_FOREVER || sdkInt >= PERMANENT_DENIAL_AFTER_SECOND_SDK);
+                deniedOnce = deniedOnce.with(permission);
+                if (forever) {
+                    deniedForever = deniedForever.with(permission);
+                }
+            }
+        }
+        if (prompted) {
+            promptCount++;
+        }
+
+        PermissionSet deniedPermissions = denied.build();
+        // what the library's history records after a result, judged from the same signals as on a device
+        PermissionSet rationale = rationaleBefore.build();
+        boolean anyRationaleAfter = false;
+        for (int id = deniedPermissions.nextId(0); id >= 0; id = deniedPermissions.nextId(id + 1)) {
+            anyRationaleAfter |= shouldShowRationale(PermissionRegistry.nameOf(id));
+        }
+        boolean promptShown = DenialClassifier.isPromptShown(deniedPermissions.size() < permissions.size(),
+                !rationale.isEmpty() || anyRationaleAfter,
+                prompted, prompted ? DenialClassifier.INSTANT_ROUND_TRIP_MILLIS : 0L);
+        for (int id = deniedPermissions.nextId(0); id >= 0; id = deniedPermissions.nextId(id + 1)) {
+            String permission = PermissionRegistry.nameOf(id);
+            DenialClassifier.Kind kind = DenialClassifier.classify(rationale.containsId(id), shouldShowRationale(permission),
+                    promptShown, recordedForever.containsId(id));
+            boolean forever = kind == DenialClassifier.Kind.DENIED_PERMANENTLY;
+            recordedForever = forever ? recordedForever.with(permission) : recordedForever.without(permission);
+        }
+        recordedForever = recordedForever.minus(permissions.minus(deniedPermissions));
+        listener.onRequestResult(deniedPermissions);
+    }
+
+    @Override
+    public void openSettings(SettingsListener listener) {
+        settingsVisitCount++;
+        grant(user.onSettingsScreen(known.minus(granted)));
+        listener.onSettingsResult();
+    }
+
+    @Override
+    public void showDialog(int kind, String title, CharSequence message,
+                           String positiveText, Runnable onPositive,
+                           String negativeText, Runnable onNegative,
+                           boolean cancelable) {
+        if (kind == DIALOG_RATIONALE) {
+            rationaleDialogCount++;
+        } else {
+            settingsDialogCount++;
+        }
+        if (user.onDialog(kind)) {
+            onPositive.run();
+        } else {
+            onNegative.run();
+        }
+    }
+
+    @Override
+    public void resumeSettings(SettingsListener listener) {
+        // the scripted user never leaves a settings screen open
+        listener.onSettingsResult();
+    }
+
+    @Override
+    public PermissionSet getRecordedPermanentlyDenied(PermissionSet permissions) {
+        return recordedForever.intersect(permissions);
+    }
+
+    @Override
+    public void recordGranted(PermissionSet permissions) {
+        recordedForever = recordedForever.minus(permissions);
+    }
+
+    @Override
+    public void recordRequestable(PermissionSet permissions) {
+        recordedForever = recordedForever.minus(permissions);
+    }
+
+    @Override
+    public PermissionLabels getLabels() {
+        return PermissionText::getPermissionName;
+    }
+
+    @Override
+    public CharSequence getAppName() {
+        return appName;
+    }
+
+    // system request launches, including ones the system answered without UI
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    // system dialogs the user actually saw
+    public int getPromptCount() {
+        return promptCount;
+    }
+
+    public int getRationaleDialogCount() {
+        return rationaleDialogCount;
+    }
+
+    public int getSettingsDialogCount() {
+        return settingsDialogCount;
+    }
+
+    public int getSettingsVisitCount() {
+        return settingsVisitCount;
+    }
+}
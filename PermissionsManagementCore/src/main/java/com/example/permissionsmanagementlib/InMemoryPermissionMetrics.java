@@ -0,0 +1,160 @@
+package com.example.permissionsmanagementlib;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free in-memory {@link PermissionMetrics}: a log2 latency histogram per phase plus outcome counters.
+ * Recording is a handful of atomic increments and never allocates; {@link #snapshot()} copies the current state.
+ */
+public final class InMemoryPermissionMetrics implements PermissionMetrics {
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final Outcome[] OUTCOMES = Outcome.values();
+    // bucket i counts durations in [2^i, 2^(i+1)) nanoseconds, bucket 0 also holds 0
+    private static final int BUCKETS = 64;
+    // per phase: count, sum, max, then the buckets
+    private static final int STRIDE = 3 + BUCKETS;
+
+    private final AtomicLongArray phases = new AtomicLongArray(PHASES.length * STRIDE);
+    private final AtomicLongArray outcomes = new AtomicLongArray(OUTCOMES.length);
+
+    @Override
+    public void onPhase(Phase phase, long durationNanos) {
+        long duration = Math.max(0, durationNanos);
+        int base = phase.ordinal() * STRIDE;
+        phases.incrementAndGet(base);
+        phases.addAndGet(base + 1, duration);
+        long max;
+        while ((max = phases.get(base + 2)) < duration && !phases.compareAndSet(base + 2, max, duration)) {
+            // retry until this duration is recorded or a larger one won
+        }
+        phases.incrementAndGet(base + 3 + bucketOf(duration));
+    }
+
+    @Override
+    public void onOutcome(Outcome outcome) {
+        outcomes.incrementAndGet(outcome.ordinal());
+    }
+
+    public Snapshot snapshot() {
+        long[] phaseData = new long[phases.length()];
+        for (int i = 0; i < phaseData.length; i++) {
+            phaseData[i] = phases.get(i);
+        }
+        long[] outcomeData = new long[outcomes.length()];
+        for (int i = 0; i < outcomeData.length; i++) {
+            outcomeData[i] = outcomes.get(i);
+        }
+        return new Snapshot(phaseData, outcomeData);
+    }
+
+    public void reset() {
+        for (int i = 0; i < phases.length(); i++) {
+            phases.set(i, 0);
+        }
+        for (int i = 0; i < outcomes.length(); i++) {
+            outcomes.set(i, 0);
+        }
+    }
+
+    private static int bucketOf(long duration) {
+        return duration == 0 ? 0 : 63 - Long.numberOfLeadingZeros(duration);
+    }
+
+    /**
+     * Immutable copy of the metrics at one point in time.
+     */
+    public static final class Snapshot {
+        private final long[] phases;
+        private final long[] outcomes;
+
+        Snapshot(long[] phases, long[] outcomes) {
+            this.phases = phases;
+            this.outcomes = outcomes;
+        }
+
+        public long getCount(Phase phase) {
+            return phases[phase.ordinal() * STRIDE];
+        }
+
+        public long getTotalNanos(Phase phase) {
+            return phases[phase.ordinal() * STRIDE + 1];
+        }
+
+        public long getMaxNanos(Phase phase) {
+            return phases[phase.ordinal() * STRIDE + 2];
+        }
+
+        public long getMeanNanos(Phase phase) {
+            long count = getCount(phase);
+            return count == 0 ? 0 : getTotalNanos(phase) / count;
+        }
+
+        /**
+         * Returns an upper bound for the given percentile (0..100), exact to a factor of two.
+         */
+        public long getPercentileNanos(Phase phase, double percentile) {
+            long count = getCount(phase);
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(count * percentile / 100.0);
+            int base = phase.ordinal() * STRIDE + 3;
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += phases[base + bucket];
+                if (seen >= Math.max(rank, 1)) {
+                    long upperBound = bucket >= 62 ? Long.MAX_VALUE : (1L << (bucket + 1)) - 1;
+                    return Math.min(upperBound, getMaxNanos(phase));
+                }
+            }
+            return getMaxNanos(phase);
+        }
+
+        public long getCount(Outcome outcome) {
+            return outcomes[outcome.ordinal()];
+        }
+
+        /**
+         * Writes the snapshot as one JSON object, e.g. for export to an analytics backend.
+         */
+        public void writeJson(Appendable out) throws IOException {
+            out.append("{\"phases\":{");
+            for (int i = 0; i < PHASES.length; i++) {
+                Phase phase = PHASES[i];
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append('"').append(phase.name()).append("\":{")
+                        .append("\"count\":").append(String.valueOf(getCount(phase)))
+                        .append(",\"meanNanos\":").append(String.valueOf(getMeanNanos(phase)))
+                        .append(",\"p50Nanos\":").append(String.valueOf(getPercentileNanos(phase, 50)))
+                        .append(",\"p90Nanos\":").append(String.valueOf(getPercentileNanos(phase, 90)))
+                        .append(",\"p99Nanos\":").append(String.valueOf(getPercentileNanos(phase, 99)))
+                        .append(",\"maxNanos\":").append(String.valueOf(getMaxNanos(phase)))
+                        .append('}');
+            }
+            out.append("},\"outcomes\":{");
+            for (int i = 0; i < OUTCOMES.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append('"').append(OUTCOMES[i].name()).append("\":").append(String.valueOf(outcomes[i]));
+            }
+            out.append("}}");
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder json = new StringBuilder();
+            try {
+                writeJson(json);
+            } catch (IOException e) {
+                // StringBuilder does not throw
+                throw new AssertionError(e);
+            }
+            return json.toString();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.permissionsmanagementlib;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.IntFunction;
+
+/**
+ * A dialog or toast message with placeholders, parsed once and rendered for every denial.
+ *
+ * Placeholders:
+ * {@code {permissions}} the numbered list of the permissions' labels, one per line,
+ * {@code {count}} the number of permissions and {@code {app}} the app's name.
+ * {@code {{} and {@code }}} stand for literal braces. Any other text in braces is kept as it is,
+ * so plain messages render unchanged.
+ *
+ * Rendering appends the literal parts and the values straight to the caller's {@link Appendable},
+ * nothing is concatenated on the way. {@link #plural(IntFunction)} picks the pattern by count like a plurals
+ * resource and compiles each pattern it gets once.
+ */
+public final class MessageTemplate {
+
+    public static final MessageTemplate EMPTY = compile("");
+
+    private static final byte LITERAL = 0;
+    private static final byte PERMISSIONS = 1;
+    private static final byte COUNT = 2;
+    private static final byte APP = 3;
+
+    private static final String[] NAMES = {null, "permissions", "count", "app"};
+
+    private final String pattern;
+    // literal parts with the escapes resolved, the segments index into it
+    private final String text;
+    private final byte[] kinds;
+    private final int[] starts;
+    private final int[] ends;
+
+    // set for plural templates only, which have no segments of their own
+    private final IntFunction<String> patternForCount;
+    private String[] pluralPatterns;
+    private MessageTemplate[] pluralTemplates;
+
+    private MessageTemplate(String pattern, String text, byte[] kinds, int[] starts, int[] ends) {
+        this.pattern = pattern;
+        this.text = text;
+        this.kinds = kinds;
+        this.starts = starts;
+        this.ends = ends;
+        this.patternForCount = null;
+    }
+
+    private MessageTemplate(IntFunction<String> patternForCount) {
+        this.pattern = null;
+        this.text = null;
+        this.kinds = null;
+        this.starts = null;
+        this.ends = null;
+        this.patternForCount = patternForCount;
+    }
+
+    public static MessageTemplate compile(String pattern) {
+        StringBuilder text = new StringBuilder(pattern.length());
+        // at most one literal and one placeholder per brace
+        int capacity = 1;
+        for (int i = 0; i < pattern.length(); i++) {
+            if (pattern.charAt(i) == '{') {
+                capacity += 2;
+            }
+        }
+        byte[] kinds = new byte[capacity];
+        int[] starts = new int[capacity];
+        int[] ends = new int[capacity];
+        int count = 0;
+
+        int literalStart = 0;
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if ((c == '{' || c == '}') && i + 1 < pattern.length() && pattern.charAt(i + 1) == c) {
+                text.append(c);
+                i += 2;
+                continue;
+            }
+            byte kind = c == '{' ? placeholderAt(pattern, i) : LITERAL;
+            if (kind == LITERAL) {
+                text.append(c);
+                i++;
+                continue;
+            }
+            if (text.length() > literalStart) {
+                kinds[count] = LITERAL;
+                starts[count] = literalStart;
+                ends[count++] = text.length();
+            }
+            kinds[count++] = kind;
+            i += NAMES[kind].length() + 2;
+            literalStart = text.length();
+        }
+        if (text.length() > literalStart) {
+            kinds[count] = LITERAL;
+            starts[count] = literalStart;
+            ends[count++] = text.length();
+        }
+
+        int[] trimmedStarts = new int[count];
+        int[] trimmedEnds = new int[count];
+        byte[] trimmedKinds = new byte[count];
+        System.arraycopy(kinds, 0, trimmedKinds, 0, count);
+        System.arraycopy(starts, 0, trimmedStarts, 0, count);
+        System.arraycopy(ends, 0, trimmedEnds, 0, count);
+        return new MessageTemplate(pattern, text.toString(), trimmedKinds, trimmedStarts, trimmedEnds);
+    }
+
+    /**
+     * Returns a template that renders the pattern {@code patternForCount} returns for the number of permissions,
+     * e.g. {@code count -> resources.getQuantityString(R.plurals.message, count)}.
+     * Must be rendered on one thread.
+     */
+    public static MessageTemplate plural(IntFunction<String> patternForCount) {
+        return new MessageTemplate(patternForCount);
+    }
+
+    private static byte placeholderAt(String pattern, int brace) {
+        for (byte kind = PERMISSIONS; kind < NAMES.length; kind++) {
+            String name = NAMES[kind];
+            int end = brace + 1 + name.length();
+            if (end < pattern.length() && pattern.charAt(end) == '}' && pattern.startsWith(name, brace + 1)) {
+                return kind;
+            }
+        }
+        return LITERAL;
+    }
+
+    public boolean isPlural() {
+        return patternForCount != null;
+    }
+
+    /**
+     * Returns the rendered text if the template has no placeholders, which needs no rendering at all, else null.
+     */
+    public String getConstantText() {
+        if (patternForCount != null) {
+            return null;
+        }
+        for (byte kind : kinds) {
+            if (kind != LITERAL) {
+                return null;
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Whether the template lists the permissions itself, for plural templates whether the pattern for
+     * {@code count} does.
+     */
+    public boolean containsPermissions(int count) {
+        MessageTemplate template = forCount(count);
+        for (byte kind : template.kinds) {
+            if (kind == PERMISSIONS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends the message for {@code permissions} to {@code out}.
+     *
+     * @param labels the labels for {@code {permissions}}, null for the built-in names
+     * @throws UncheckedIOException if {@code out} throws
+     */
+    public <A extends Appendable> A render(A out, PermissionSet permissions, PermissionLabels labels, CharSequence appName) {
+        MessageTemplate template = forCount(permissions.size());
+        try {
+            for (int i = 0; i < template.kinds.length; i++) {
+                switch (template.kinds[i]) {
+                    case PERMISSIONS:
+                        PermissionText.writePermissionsList(out, permissions, labels);
+                        break;
+                    case COUNT:
+                        PermissionText.writeInt(out, permissions.size());
+                        break;
+                    case APP:
+                        out.append(appName);
+                        break;
+                    default:
+                        out.append(template.text, template.starts[i], template.ends[i]);
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out;
+    }
+
+    private MessageTemplate forCount(int count) {
+        if (patternForCount == null) {
+            return this;
+        }
+        String selected = patternForCount.apply(count);
+        if (pluralPatterns == null) {
+            // CLDR has six plural categories at most
+            pluralPatterns = new String[6];
+            pluralTemplates = new MessageTemplate[6];
+        }
+        int free = -1;
+        for (int i = 0; i < pluralPatterns.length; i++) {
+            String known = pluralPatterns[i];
+            if (known == null) {
+                free = free < 0 ? i : free;
+            } else if (known.equals(selected)) {
+                return pluralTemplates[i];
+            }
+        }
+        MessageTemplate template = compile(selected);
+        // a source with more patterns than categories only loses the cache for them
+        if (free >= 0) {
+            pluralPatterns[free] = selected;
+            pluralTemplates[free] = template;
+        }
+        return template;
+    }
+
+    @Override
+    public String toString() {
+        return patternForCount != null ? "MessageTemplate{plural}" : pattern;
+    }
+}
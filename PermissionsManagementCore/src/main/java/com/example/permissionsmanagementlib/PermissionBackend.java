@@ -0,0 +1,87 @@
+package com.example.permissionsmanagementlib;
+
+/**
+ * Everything a permission flow needs from the platform: permission checks, the system request,
+ * the settings screen, the library's dialogs and the persisted history.
+ * {@link PermissionFlowController} only talks to this interface, so the flow logic runs on a device
+ * and, against {@link InMemoryPermissionBackend}, on the JVM.
+ * All calls and callbacks happen on one thread (the main thread on Android).
+ */
+public interface PermissionBackend {
+
+    int DIALOG_RATIONALE = 0;
+    int DIALOG_SETTINGS = 1;
+
+    interface RequestListener {
+        // deniedPermissions is the subset of the requested permissions that was not granted
+        void onRequestResult(PermissionSet deniedPermissions);
+    }
+
+    interface SettingsListener {
+        void onSettingsResult();
+    }
+
+    int getSdkInt();
+
+    // the app's targetSdkVersion, storage and media permissions depend on it
+    int getTargetSdkInt();
+
+    boolean isGranted(String permission);
+
+    /**
+     * Returns the subset of {@code permissions} that is not granted. The permissions are checked together,
+     * so a backend can answer them with one call to the platform instead of one check each.
+     */
+    PermissionSet denied(PermissionSet permissions);
+
+    boolean shouldShowRationale(String permission);
+
+    /**
+     * Shows the system permission dialog. The listener is called once with the result.
+     * A request for permissions whose dialog is still open, or was answered, before the activity was recreated
+     * gets that answer instead of a new dialog.
+     */
+    void request(PermissionSet permissions, RequestListener listener);
+
+    /**
+     * Opens the app settings screen. The listener is called once the user is back.
+     */
+    void openSettings(SettingsListener listener);
+
+    /**
+     * Waits for the return from a settings screen opened before the activity was recreated, without opening it
+     * again. Calls the listener right away if the user is already back.
+     */
+    void resumeSettings(SettingsListener listener);
+
+    /**
+     * Shows a dialog that runs one of the handlers when it is answered. A {@code cancelable} dialog the user cancels
+     * runs {@code onNegative}.
+     */
+    void showDialog(int kind, String title, CharSequence message,
+                    String positiveText, Runnable onPositive,
+                    String negativeText, Runnable onNegative,
+                    boolean cancelable);
+
+    /**
+     * Returns the subset of {@code permissions} the history recorded as permanently denied
+     * ("Don't ask again", or answered by the system without a dialog), also in earlier sessions of the app.
+     * The history forgets these denials when the app's version changes.
+     */
+    PermissionSet getRecordedPermanentlyDenied(PermissionSet permissions);
+
+    /**
+     * Records permissions granted outside a request result, i.e. in the settings screen.
+     */
+    void recordGranted(PermissionSet permissions);
+
+    /**
+     * Records permissions the system can ask for again, so the history no longer counts them as permanently denied.
+     */
+    void recordRequestable(PermissionSet permissions);
+
+    PermissionLabels getLabels();
+
+    // the app's name for the {app} placeholder of messages
+    CharSequence getAppName();
+}
@@ -0,0 +1,445 @@
+package com.example.permissionsmanagementlib;
+
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * The flow behind the permission managers, independent of Android.
+ *
+ * A flow plans the permissions for the backend's SDK level, runs the plan's request batches and settings hops
+ * in order, and on a denial shows the rationale dialog or, once the system stops asking, the settings dialog.
+ * Permissions the history knows to be permanently denied are never launched: the system would answer them
+ * without a dialog, so they count as denied right away and a flow made only of them goes straight to settings.
+ * Exactly one {@link PermissionsCallback} call ends each flow, unless it is {@link #cancel() cancelled}.
+ * A running flow can be {@link #saveState() saved} and {@link #resume(PermissionFlowState) resumed} by the
+ * controller of a recreated activity, the callback then ends the flow there.
+ */
+public final class PermissionFlowController {
+
+    private final PermissionBackend backend;
+    private final PermissionSet permissions;
+    private final Supplier<PermissionsCallback> callbackSupplier;
+
+    private final PermissionBackend.RequestListener requestListener = this::onRequestResult;
+    private final PermissionBackend.SettingsListener settingsListener = this::onSettingsResult;
+    private final Predicate<String> rationaleProbe;
+    private final PermissionFlowRecorder flowRecorder = new PermissionFlowRecorder();
+    // reused for every dialog message
+    private final StringBuilder messageBuilder = new StringBuilder();
+
+    private String rationaleTitle = "";
+    private MessageTemplate rationaleMessage = MessageTemplate.EMPTY;
+    private String settingsTitle = "";
+    private MessageTemplate settingsMessage = MessageTemplate.EMPTY;
+    // the managers set localized texts, these are for flows without resources
+    private String rationalePositiveText = "Allow";
+    private String rationaleNegativeText = "Deny";
+    private String settingsPositiveText = "Go to Settings";
+    private String settingsNegativeText = "Cancel";
+    private boolean listDeniedPermissions;
+    private boolean rationaleCancelable;
+    private boolean reportAllPermissionsOnDenial;
+    private String denialSection = "PermissionFlowController.handleDeniedPermissions";
+
+    // false once the flow delivered its callback or was cancelled, late results are ignored then
+    private boolean running;
+    // steps of the running flow and the index of the next one
+    private PermissionRequestPlan plan;
+    private int nextStep;
+    // known permanently denied permissions left out of the running request, part of its result
+    private PermissionSet skippedPermanentlyDenied = PermissionSet.EMPTY;
+    // what the flow waits for, and the permissions of the request or rationale dialog it waits on
+    private PermissionFlowState.Phase phase;
+    private PermissionSet pending = PermissionSet.EMPTY;
+
+    /**
+     * {@code callbackSupplier} is asked for the callback whenever a flow ends, so it may change between flows.
+     */
+    public PermissionFlowController(PermissionBackend backend, PermissionSet permissions, Supplier<PermissionsCallback> callbackSupplier) {
+        this.backend = backend;
+        this.permissions = permissions;
+        this.callbackSupplier = callbackSupplier;
+        this.rationaleProbe = backend::shouldShowRationale;
+    }
+
+    public void requestPermissions() {
+        running = true;
+        flowRecorder.flowStarted();
+        flowRecorder.trace(PermissionTraceLog.Event.FLOW_STARTED, permissions);
+        // drops what does not apply on this SDK and orders dependent permissions after their prerequisites
+        plan = PermissionRequestPlanner.plan(permissions, backend.getSdkInt(), backend.getTargetSdkInt(), backend::denied);
+        nextStep = 0;
+        if (plan.isEmpty()) {
+            flowRecorder.trace(PermissionTraceLog.Event.ALREADY_GRANTED, plan.getRequired());
+            deliverGranted();
+        } else {
+            runNextStep();
+        }
+    }
+
+    /**
+     * Ends the running flow without a callback, e.g. because the activity it runs in is destroyed.
+     * Request results, dialog clicks and settings returns of the flow that still arrive are ignored.
+     */
+    public void cancel() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        phase = null;
+        skippedPermanentlyDenied = PermissionSet.EMPTY;
+        flowRecorder.trace(PermissionTraceLog.Event.FLOW_CANCELLED, permissions);
+        flowRecorder.flowAbandoned();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns where the running flow stands, or null if no flow is running.
+     */
+    public PermissionFlowState saveState() {
+        if (!running || phase == null) {
+            return null;
+        }
+        return new PermissionFlowState(phase, plan, nextStep, pending, skippedPermanentlyDenied);
+    }
+
+    /**
+     * Continues a flow saved by another controller, typically the one of the activity before it was recreated.
+     * A request still waits for its result instead of being launched again, a dialog is shown again
+     * and a settings trip waits for the user's return. Flow metrics are not recorded for a resumed flow.
+     */
+    public void resume(PermissionFlowState state) {
+        running = true;
+        plan = state.plan;
+        nextStep = state.nextStep;
+        skippedPermanentlyDenied = state.skippedPermanentlyDenied;
+        flowRecorder.trace(PermissionTraceLog.Event.FLOW_RESUMED, state.pending);
+        switch (state.phase) {
+            case REQUEST:
+                phase = PermissionFlowState.Phase.REQUEST;
+                pending = state.pending;
+                backend.request(state.pending, requestListener);
+                break;
+            case RATIONALE_DIALOG:
+                showPermissionRationale(state.pending);
+                break;
+            case SETTINGS_DIALOG:
+                showSettingsDialog();
+                break;
+            default:
+                phase = PermissionFlowState.Phase.SETTINGS;
+                pending = PermissionSet.EMPTY;
+                backend.resumeSettings(settingsListener);
+                break;
+        }
+    }
+
+    private void runNextStep() {
+        List<PermissionRequestPlan.Step> steps = plan.getSteps();
+        if (nextStep == steps.size()) {
+            if (backend.denied(plan.getRequired()).isEmpty()) {
+                deliverGranted();
+            } else {
+                deliverDenied(getDeniedPermissions());
+            }
+            return;
+        }
+
+        PermissionRequestPlan.Step step = steps.get(nextStep++);
+        PermissionSet stepDenied = backend.denied(step.permissions);
+        if (stepDenied.isEmpty()) {
+            runNextStep();
+        } else if (step.kind == PermissionRequestPlan.StepKind.SETTINGS) {
+            showSettingsDialog();
+        } else {
+            launchRequest(stepDenied);
+        }
+    }
+
+    private void launchRequest(PermissionSet toRequest) {
+        PermissionSet permanentlyDenied = getKnownPermanentlyDenied(toRequest);
+        if (!permanentlyDenied.isEmpty()) {
+            // denied for good earlier, a request would come back denied without any UI
+            flowRecorder.trace(PermissionTraceLog.Event.KNOWN_PERMANENTLY_DENIED, permanentlyDenied);
+            if (permanentlyDenied.size() == toRequest.size()) {
+                showSettingsDialog();
+                return;
+            }
+            toRequest = toRequest.minus(permanentlyDenied);
+        }
+        skippedPermanentlyDenied = permanentlyDenied;
+        flowRecorder.phaseStarted(PermissionMetrics.Phase.SYSTEM_DIALOG);
+        flowRecorder.trace(PermissionTraceLog.Event.REQUEST_QUEUED, toRequest);
+        phase = PermissionFlowState.Phase.REQUEST;
+        pending = toRequest;
+        backend.request(toRequest, requestListener);
+    }
+
+    private void onRequestResult(PermissionSet deniedPermissions) {
+        if (!running) {
+            return;
+        }
+        if (!skippedPermanentlyDenied.isEmpty()) {
+            deniedPermissions = deniedPermissions.union(skippedPermanentlyDenied);
+            skippedPermanentlyDenied = PermissionSet.EMPTY;
+        }
+        flowRecorder.phaseEnded(PermissionMetrics.Phase.SYSTEM_DIALOG);
+        flowRecorder.trace(PermissionTraceLog.Event.REQUEST_RESULT, deniedPermissions);
+        if (isStepDone(deniedPermissions)) {
+            runNextStep();
+        } else {
+            handleDeniedPermissions(deniedPermissions);
+        }
+    }
+
+    private void onSettingsResult() {
+        if (!running) {
+            return;
+        }
+        flowRecorder.phaseEnded(PermissionMetrics.Phase.SETTINGS);
+        flowRecorder.trace(PermissionTraceLog.Event.SETTINGS_RETURNED, null);
+
+        PermissionSet stepPermissions = plan.getSteps().get(nextStep - 1).permissions;
+        PermissionSet stepDenied = backend.denied(stepPermissions);
+        // permissions granted in the settings screen never come back as a request result
+        backend.recordGranted(stepPermissions.minus(stepDenied));
+        // still denied may mean reset to "Ask every time", the next request finds out
+        backend.recordRequestable(stepDenied);
+        if (isStepDone(stepDenied)) {
+            flowRecorder.outcome(PermissionMetrics.Outcome.SETTINGS_RETURNED_GRANTED);
+            runNextStep();
+        } else {
+            deliverDenied(getDeniedPermissions());
+        }
+    }
+
+    // a denied prerequisite only matters if it leaves the next step without any of its prerequisites
+    private boolean isStepDone(PermissionSet stepDenied) {
+        if (stepDenied.containsAny(plan.getRequired())) {
+            return false;
+        }
+        if (nextStep >= plan.getSteps().size()) {
+            return true;
+        }
+        PermissionSet prerequisites = plan.getSteps().get(nextStep).prerequisites;
+        return prerequisites.isEmpty() || !backend.denied(prerequisites).containsAll(prerequisites);
+    }
+
+    private PermissionSet getKnownPermanentlyDenied(PermissionSet permissions) {
+        PermissionSet recorded = backend.getRecordedPermanentlyDenied(permissions);
+        if (recorded.isEmpty()) {
+            return recorded;
+        }
+        // a rationale means the system asks again. Its absence proves nothing, a reset to "Ask every time" clears
+        // it as well; the history gives such denials up when the app's version changes
+        PermissionSet.Builder known = null;
+        PermissionSet.Builder requestable = null;
+        for (int id = recorded.nextId(0); id >= 0; id = recorded.nextId(id + 1)) {
+            if (backend.shouldShowRationale(PermissionRegistry.nameOf(id))) {
+                if (requestable == null) {
+                    requestable = new PermissionSet.Builder();
+                }
+                requestable.addId(id);
+            } else {
+                if (known == null) {
+                    known = new PermissionSet.Builder();
+                }
+                known.addId(id);
+            }
+        }
+        if (requestable != null) {
+            backend.recordRequestable(requestable.build());
+        }
+        return known == null ? PermissionSet.EMPTY : known.build();
+    }
+
+    private PermissionSet getDeniedPermissions() {
+        return backend.denied(plan != null ? plan.getRequired() : permissions);
+    }
+
+    private void handleDeniedPermissions(PermissionSet deniedPermissions) {
+        boolean traced = PermissionTraceLog.beginSection(denialSection);
+        try {
+            if (DenialAction.decide(deniedPermissions, rationaleProbe) == DenialAction.SHOW_RATIONALE) {
+                showPermissionRationale(deniedPermissions);
+            } else {
+                showSettingsDialog();
+            }
+        } finally {
+            PermissionTraceLog.endSection(traced);
+        }
+    }
+
+    private void showPermissionRationale(PermissionSet deniedPermissions) {
+        flowRecorder.outcome(PermissionMetrics.Outcome.RATIONALE_SHOWN);
+        flowRecorder.trace(PermissionTraceLog.Event.RATIONALE_SHOWN, deniedPermissions);
+        flowRecorder.phaseStarted(PermissionMetrics.Phase.RATIONALE_DIALOG);
+        phase = PermissionFlowState.Phase.RATIONALE_DIALOG;
+        pending = deniedPermissions;
+        backend.showDialog(PermissionBackend.DIALOG_RATIONALE,
+                rationaleTitle,
+                renderMessage(rationaleMessage, deniedPermissions, listDeniedPermissions),
+                rationalePositiveText, () -> {
+                    if (!running) {
+                        return;
+                    }
+                    flowRecorder.phaseEnded(PermissionMetrics.Phase.RATIONALE_DIALOG);
+                    flowRecorder.trace(PermissionTraceLog.Event.RATIONALE_ACCEPTED, deniedPermissions);
+                    launchRequest(deniedPermissions);
+                },
+                rationaleNegativeText, () -> {
+                    if (!running) {
+                        return;
+                    }
+                    flowRecorder.phaseEnded(PermissionMetrics.Phase.RATIONALE_DIALOG);
+                    flowRecorder.trace(PermissionTraceLog.Event.RATIONALE_DECLINED, deniedPermissions);
+                    deliverDenied(deniedPermissions);
+                },
+                rationaleCancelable);
+    }
+
+    private CharSequence renderMessage(MessageTemplate template, PermissionSet deniedPermissions, boolean listPermissions) {
+        String constant = template.getConstantText();
+        if (constant != null && !listPermissions) {
+            return constant;
+        }
+        // listed in the order the app passed them
+        PermissionSet permissions = (deniedPermissions != null ? deniedPermissions : getDeniedPermissions())
+                .inOrder(this.permissions);
+        messageBuilder.setLength(0);
+        template.render(messageBuilder, permissions, backend.getLabels(), backend.getAppName());
+        if (listPermissions && !template.containsPermissions(permissions.size())) {
+            messageBuilder.append('\n');
+            PermissionText.appendPermissionsList(messageBuilder, permissions, backend.getLabels());
+        }
+        return messageBuilder.toString();
+    }
+
+    private void showSettingsDialog() {
+        flowRecorder.trace(PermissionTraceLog.Event.SETTINGS_DIALOG_SHOWN, null);
+        flowRecorder.phaseStarted(PermissionMetrics.Phase.SETTINGS_DIALOG);
+        phase = PermissionFlowState.Phase.SETTINGS_DIALOG;
+        pending = PermissionSet.EMPTY;
+        backend.showDialog(PermissionBackend.DIALOG_SETTINGS,
+                settingsTitle,
+                renderMessage(settingsMessage, null, false),
+                settingsPositiveText, () -> {
+                    if (!running) {
+                        return;
+                    }
+                    flowRecorder.phaseEnded(PermissionMetrics.Phase.SETTINGS_DIALOG);
+                    flowRecorder.outcome(PermissionMetrics.Outcome.SETTINGS_VISITED);
+                    flowRecorder.trace(PermissionTraceLog.Event.SETTINGS_OPENED, null);
+                    flowRecorder.phaseStarted(PermissionMetrics.Phase.SETTINGS);
+                    phase = PermissionFlowState.Phase.SETTINGS;
+                    backend.openSettings(settingsListener);
+                },
+                settingsNegativeText, () -> {
+                    if (!running) {
+                        return;
+                    }
+                    flowRecorder.phaseEnded(PermissionMetrics.Phase.SETTINGS_DIALOG);
+                    deliverDenied(getDeniedPermissions());
+                },
+                false);
+    }
+
+    private void deliverGranted() {
+        running = false;
+        phase = null;
+        flowRecorder.trace(PermissionTraceLog.Event.FLOW_GRANTED, plan != null ? plan.getRequired() : permissions);
+        flowRecorder.flowEnded(true);
+        callbackSupplier.get().onPermissionsGranted();
+    }
+
+    private void deliverDenied(PermissionSet deniedPermissions) {
+        running = false;
+        phase = null;
+        PermissionSet reported = reportAllPermissionsOnDenial ? permissions : deniedPermissions.inOrder(permissions);
+        flowRecorder.trace(PermissionTraceLog.Event.FLOW_DENIED, reported);
+        flowRecorder.flowEnded(false);
+        callbackSupplier.get().onPermissionsDenied(reported);
+    }
+
+    public PermissionSet getPermissions() {
+        return permissions;
+    }
+
+    public PermissionFlowController setRationaleTitle(String rationaleTitle) {
+        this.rationaleTitle = rationaleTitle;
+        return this;
+    }
+
+    /**
+     * Sets the rationale message, a {@link MessageTemplate} pattern such as "{app} needs:\n{permissions}".
+     */
+    public PermissionFlowController setRationaleMessage(String rationaleMessage) {
+        return setRationaleMessage(MessageTemplate.compile(rationaleMessage));
+    }
+
+    public PermissionFlowController setRationaleMessage(MessageTemplate rationaleMessage) {
+        this.rationaleMessage = rationaleMessage;
+        return this;
+    }
+
+    public PermissionFlowController setSettingsTitle(String settingsTitle) {
+        this.settingsTitle = settingsTitle;
+        return this;
+    }
+
+    /**
+     * Sets the settings dialog message, a {@link MessageTemplate} pattern rendered for the denied permissions.
+     */
+    public PermissionFlowController setSettingsMessage(String settingsMessage) {
+        return setSettingsMessage(MessageTemplate.compile(settingsMessage));
+    }
+
+    public PermissionFlowController setSettingsMessage(MessageTemplate settingsMessage) {
+        this.settingsMessage = settingsMessage;
+        return this;
+    }
+
+    public PermissionFlowController setRationaleButtons(String positiveText, String negativeText) {
+        this.rationalePositiveText = positiveText;
+        this.rationaleNegativeText = negativeText;
+        return this;
+    }
+
+    public PermissionFlowController setSettingsButtons(String positiveText, String negativeText) {
+        this.settingsPositiveText = positiveText;
+        this.settingsNegativeText = negativeText;
+        return this;
+    }
+
+    // appends the denied permissions' labels to a rationale message without a {permissions} placeholder
+    public PermissionFlowController setListDeniedPermissions(boolean listDeniedPermissions) {
+        this.listDeniedPermissions = listDeniedPermissions;
+        return this;
+    }
+
+    public PermissionFlowController setRationaleCancelable(boolean rationaleCancelable) {
+        this.rationaleCancelable = rationaleCancelable;
+        return this;
+    }
+
+    // reports all of the flow's permissions as denied instead of only the denied subset
+    public PermissionFlowController setReportAllPermissionsOnDenial(boolean reportAllPermissionsOnDenial) {
+        this.reportAllPermissionsOnDenial = reportAllPermissionsOnDenial;
+        return this;
+    }
+
+    // names the trace section around the denial handling, e.g. after the owning manager
+    public PermissionFlowController setTraceTag(String tag) {
+        this.denialSection = tag + ".handleDeniedPermissions";
+        return this;
+    }
+
+    public PermissionFlowController setPermissionMetrics(PermissionMetrics permissionMetrics) {
+        flowRecorder.setMetrics(permissionMetrics);
+        return this;
+    }
+}
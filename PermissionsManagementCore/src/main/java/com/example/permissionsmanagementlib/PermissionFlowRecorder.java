@@ -0,0 +1,96 @@
+package com.example.permissionsmanagementlib;
+
+/**
+ * Per-manager bookkeeping of the current flow's phase start times, reported to {@link PermissionMetrics}
+ * and, when tracing is on, to {@link PermissionTraceLog}.
+ * With no metrics configured and tracing off, every call is two branches and {@link System#nanoTime()} is never read.
+ */
+public final class PermissionFlowRecorder {
+
+    private static final int PHASE_COUNT = PermissionMetrics.Phase.values().length;
+
+    private static volatile PermissionMetrics defaultMetrics;
+
+    private PermissionMetrics metrics;
+    // metrics of the running flow, null when disabled or no flow is running
+    private PermissionMetrics active;
+    private long flowStartedAt;
+    private final long[] phaseStartedAt = new long[PHASE_COUNT];
+    // tells the flows of different managers apart in the trace
+    private final int traceSource = System.identityHashCode(this);
+
+    /**
+     * Sets the metrics used by every manager that has no metrics of its own.
+     */
+    public static void setDefaultMetrics(PermissionMetrics metrics) {
+        defaultMetrics = metrics;
+    }
+
+    public void setMetrics(PermissionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void flowStarted() {
+        PermissionTraceLog.phaseStarted(PermissionMetrics.Phase.FLOW, traceSource);
+        PermissionMetrics current = metrics != null ? metrics : defaultMetrics;
+        active = current;
+        if (current != null) {
+            flowStartedAt = System.nanoTime();
+            for (int i = 0; i < PHASE_COUNT; i++) {
+                phaseStartedAt[i] = 0;
+            }
+        }
+    }
+
+    public void phaseStarted(PermissionMetrics.Phase phase) {
+        PermissionTraceLog.phaseStarted(phase, traceSource);
+        if (active != null) {
+            phaseStartedAt[phase.ordinal()] = System.nanoTime();
+        }
+    }
+
+    public void phaseEnded(PermissionMetrics.Phase phase) {
+        PermissionTraceLog.phaseEnded(phase, traceSource);
+        PermissionMetrics current = active;
+        if (current == null) {
+            return;
+        }
+        long startedAt = phaseStartedAt[phase.ordinal()];
+        if (startedAt != 0) {
+            phaseStartedAt[phase.ordinal()] = 0;
+            current.onPhase(phase, System.nanoTime() - startedAt);
+        }
+    }
+
+    /**
+     * Records a trace event of this manager's flow, a no-op while tracing is off.
+     */
+    public void trace(PermissionTraceLog.Event event, PermissionSet permissions) {
+        PermissionTraceLog.record(event, traceSource, permissions);
+    }
+
+    public void outcome(PermissionMetrics.Outcome outcome) {
+        if (active != null) {
+            active.onOutcome(outcome);
+        }
+    }
+
+    public void flowEnded(boolean granted) {
+        PermissionTraceLog.phaseEnded(PermissionMetrics.Phase.FLOW, traceSource);
+        PermissionMetrics current = active;
+        if (current == null) {
+            return;
+        }
+        active = null;
+        current.onOutcome(granted ? PermissionMetrics.Outcome.GRANTED : PermissionMetrics.Outcome.DENIED);
+        current.onPhase(PermissionMetrics.Phase.FLOW, System.nanoTime() - flowStartedAt);
+    }
+
+    /**
+     * Ends the flow without reporting an outcome or its duration, it never finished.
+     */
+    public void flowAbandoned() {
+        PermissionTraceLog.phaseEnded(PermissionMetrics.Phase.FLOW, traceSource);
+        active = null;
+    }
+}
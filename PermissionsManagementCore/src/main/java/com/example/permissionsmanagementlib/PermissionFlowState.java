@@ -0,0 +1,200 @@
+package com.example.permissionsmanagementlib;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Where a running {@link PermissionFlowController} flow stands: its plan, the next step and what it waits for.
+ * Saved when the activity may be destroyed and handed to the next controller, which resumes the flow from there.
+ *
+ * The compact form is the flow's permission names plus a {@code long[]} of bitmasks over them. Names rather than
+ * {@link PermissionRegistry} ids, because ids are only stable within one process.
+ */
+public final class PermissionFlowState {
+
+    public enum Phase {
+        // waiting for the system request result
+        REQUEST,
+        RATIONALE_DIALOG,
+        SETTINGS_DIALOG,
+        // waiting for the user to come back from the settings screen
+        SETTINGS
+    }
+
+    private static final long VERSION = 1L;
+    private static final Phase[] PHASES = Phase.values();
+    private static final PermissionRequestPlan.StepKind[] STEP_KINDS = PermissionRequestPlan.StepKind.values();
+
+    final Phase phase;
+    final PermissionRequestPlan plan;
+    final int nextStep;
+    // the launched permissions in REQUEST, the dialog's permissions in RATIONALE_DIALOG, else empty
+    final PermissionSet pending;
+    final PermissionSet skippedPermanentlyDenied;
+
+    PermissionFlowState(Phase phase, PermissionRequestPlan plan, int nextStep, PermissionSet pending,
+                        PermissionSet skippedPermanentlyDenied) {
+        this.phase = phase;
+        this.plan = plan;
+        this.nextStep = nextStep;
+        this.pending = pending;
+        this.skippedPermanentlyDenied = skippedPermanentlyDenied;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public PermissionSet getPending() {
+        return pending;
+    }
+
+    /**
+     * Returns the names the bitmasks of {@link #getData()} refer to.
+     */
+    public String[] getNames() {
+        return universe().toArray();
+    }
+
+    /**
+     * Returns the state as bitmasks over {@link #getNames()}:
+     * version, phase, next step, step count, words per mask, the required, pending and skipped masks,
+     * then kind, permissions and prerequisites of every step.
+     */
+    public long[] getData() {
+        PermissionSet universe = universe();
+        int[] index = indexOf(universe);
+        int words = (universe.size() + 63) >>> 6;
+        List<PermissionRequestPlan.Step> steps = plan.getSteps();
+        long[] data = new long[5 + 3 * words + steps.size() * (1 + 2 * words)];
+        data[0] = VERSION;
+        data[1] = phase.ordinal();
+        data[2] = nextStep;
+        data[3] = steps.size();
+        data[4] = words;
+        int at = 5;
+        at = writeMask(data, at, words, plan.getRequired(), index);
+        at = writeMask(data, at, words, pending, index);
+        at = writeMask(data, at, words, skippedPermanentlyDenied, index);
+        for (PermissionRequestPlan.Step step : steps) {
+            data[at++] = step.kind.ordinal();
+            at = writeMask(data, at, words, step.permissions, index);
+            at = writeMask(data, at, words, step.prerequisites, index);
+        }
+        return data;
+    }
+
+    /**
+     * Reads a state written by {@link #getNames()} and {@link #getData()}, or returns null if it is not one
+     * (another library version, a corrupted bundle).
+     */
+    public static PermissionFlowState decode(String[] names, long[] data) {
+        if (names == null || data == null || data.length < 5 || data[0] != VERSION) {
+            return null;
+        }
+        long phase = data[1];
+        long nextStep = data[2];
+        long stepCount = data[3];
+        long words = data[4];
+        // every phase is reached from a step that was already started
+        if (phase < 0 || phase >= PHASES.length || nextStep < 1 || nextStep > stepCount
+                || words != (names.length + 63) >>> 6
+                || data.length != 5 + 3 * words + stepCount * (1 + 2 * words)) {
+            return null;
+        }
+        int[] ids = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == null) {
+                return null;
+            }
+            ids[i] = PermissionRegistry.idOf(names[i]);
+        }
+
+        int w = (int) words;
+        int at = 5;
+        PermissionSet required = readMask(data, at, w, ids);
+        at += w;
+        PermissionSet pending = readMask(data, at, w, ids);
+        at += w;
+        PermissionSet skipped = readMask(data, at, w, ids);
+        at += w;
+        boolean waitsOnPermissions = PHASES[(int) phase] == Phase.REQUEST || PHASES[(int) phase] == Phase.RATIONALE_DIALOG;
+        if (required == null || pending == null || skipped == null || waitsOnPermissions && pending.isEmpty()) {
+            return null;
+        }
+        List<PermissionRequestPlan.Step> steps = new ArrayList<>((int) stepCount);
+        for (int i = 0; i < stepCount; i++) {
+            long kind = data[at++];
+            PermissionSet permissions = readMask(data, at, w, ids);
+            at += w;
+            PermissionSet prerequisites = readMask(data, at, w, ids);
+            at += w;
+            if (kind < 0 || kind >= STEP_KINDS.length || permissions == null || prerequisites == null) {
+                return null;
+            }
+            steps.add(new PermissionRequestPlan.Step(STEP_KINDS[(int) kind], permissions, prerequisites));
+        }
+        // the dropped permissions only matter while planning
+        PermissionRequestPlan plan = new PermissionRequestPlan(required, PermissionSet.EMPTY, steps);
+        return new PermissionFlowState(PHASES[(int) phase], plan, (int) nextStep, pending, skipped);
+    }
+
+    private PermissionSet universe() {
+        PermissionSet.Builder universe = new PermissionSet.Builder()
+                .addAll(plan.getRequired())
+                .addAll(pending)
+                .addAll(skippedPermanentlyDenied);
+        for (PermissionRequestPlan.Step step : plan.getSteps()) {
+            universe.addAll(step.permissions).addAll(step.prerequisites);
+        }
+        return universe.build();
+    }
+
+    // maps registry ids to bit positions, the universe's iteration order
+    private static int[] indexOf(PermissionSet universe) {
+        int maxId = -1;
+        for (int id = universe.nextId(0); id >= 0; id = universe.nextId(id + 1)) {
+            maxId = id;
+        }
+        int[] index = new int[maxId + 1];
+        int bit = 0;
+        for (int id = universe.nextId(0); id >= 0; id = universe.nextId(id + 1)) {
+            index[id] = bit++;
+        }
+        return index;
+    }
+
+    private static int writeMask(long[] data, int at, int words, PermissionSet permissions, int[] index) {
+        for (int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            int bit = index[id];
+            data[at + (bit >>> 6)] |= 1L << bit;
+        }
+        return at + words;
+    }
+
+    // null if a bit has no name
+    private static PermissionSet readMask(long[] data, int at, int words, int[] ids) {
+        PermissionSet.Builder permissions = null;
+        for (int word = 0; word < words; word++) {
+            long mask = data[at + word];
+            while (mask != 0) {
+                int bit = (word << 6) + Long.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                if (bit >= ids.length) {
+                    return null;
+                }
+                if (permissions == null) {
+                    permissions = new PermissionSet.Builder();
+                }
+                permissions.addId(ids[bit]);
+            }
+        }
+        return permissions == null ? PermissionSet.EMPTY : permissions.build();
+    }
+
+    @Override
+    public String toString() {
+        return "PermissionFlowState{" + phase + ", step " + nextStep + " of " + plan.getSteps().size()
+                + ", pending=" + pending + "}";
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.permissionsmanagementlib;
+
+/**
+ * Grant state of every permission the app requests in its manifest, decoded from the
+ * {@code requestedPermissions} / {@code requestedPermissionsFlags} pair of one PackageInfo.
+ * Android reads it with a single PackageManager call instead of one permission check per permission.
+ *
+ * The flags only answer for permissions listed in the manifest. Everything else, and a permission
+ * listed twice with conflicting flags, is {@link #STATE_UNKNOWN} and has to be checked individually.
+ */
+public final class PermissionGrantSnapshot {
+
+    // same value as PackageInfo.REQUESTED_PERMISSION_GRANTED
+    public static final int FLAG_GRANTED = 2;
+
+    public static final int STATE_UNKNOWN = 0;
+    public static final int STATE_GRANTED = 1;
+    public static final int STATE_DENIED = 2;
+
+    // returned when the package info could not be read: every permission is unknown
+    public static final PermissionGrantSnapshot UNAVAILABLE =
+            new PermissionGrantSnapshot(PermissionSet.EMPTY, PermissionSet.EMPTY, PermissionSet.EMPTY, false);
+
+    private final PermissionSet requested;
+    private final PermissionSet granted;
+    private final PermissionSet ambiguous;
+    private final boolean available;
+
+    private PermissionGrantSnapshot(PermissionSet requested, PermissionSet granted, PermissionSet ambiguous, boolean available) {
+        this.requested = requested;
+        this.granted = granted;
+        this.ambiguous = ambiguous;
+        this.available = available;
+    }
+
+    /**
+     * Decodes the manifest's requested permissions and their flags. Null or mismatched arrays give {@link #UNAVAILABLE}.
+     */
+    public static PermissionGrantSnapshot of(String[] requestedPermissions, int[] requestedPermissionsFlags) {
+        if (requestedPermissions == null) {
+            // a manifest without uses-permission entries
+            return new PermissionGrantSnapshot(PermissionSet.EMPTY, PermissionSet.EMPTY, PermissionSet.EMPTY, true);
+        }
+        if (requestedPermissionsFlags == null || requestedPermissionsFlags.length != requestedPermissions.length) {
+            return UNAVAILABLE;
+        }
+
+        PermissionSet.Builder requested = new PermissionSet.Builder();
+        PermissionSet.Builder granted = new PermissionSet.Builder();
+        PermissionSet.Builder ambiguous = null;
+        for (int i = 0; i < requestedPermissions.length; i++) {
+            String permission = requestedPermissions[i];
+            if (permission == null) {
+                continue;
+            }
+            int id = PermissionRegistry.idOf(permission);
+            boolean isGranted = (requestedPermissionsFlags[i] & FLAG_GRANTED) != 0;
+            if (requested.containsId(id) && granted.containsId(id) != isGranted) {
+                if (ambiguous == null) {
+                    ambiguous = new PermissionSet.Builder();
+                }
+                ambiguous.addId(id);
+            }
+            requested.addId(id);
+            if (isGranted) {
+                granted.addId(id);
+            }
+        }
+        return new PermissionGrantSnapshot(requested.build(), granted.build(),
+                ambiguous == null ? PermissionSet.EMPTY : ambiguous.build(), true);
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Returns every permission listed in the manifest.
+     */
+    public PermissionSet getRequested() {
+        return requested;
+    }
+
+    /**
+     * Returns the requested permissions whose state is known and granted.
+     */
+    public PermissionSet getGranted() {
+        return granted.minus(ambiguous);
+    }
+
+    public int getState(String permission) {
+        int id = PermissionRegistry.find(permission);
+        return id < 0 ? STATE_UNKNOWN : getState(id);
+    }
+
+    public int getState(int id) {
+        if (!requested.containsId(id) || ambiguous.containsId(id)) {
+            return STATE_UNKNOWN;
+        }
+        return granted.containsId(id) ? STATE_GRANTED : STATE_DENIED;
+    }
+
+    /**
+     * Returns the subset of {@code permissions} that is not listed in the manifest. Requesting those can never succeed.
+     */
+    public PermissionSet getUndeclared(PermissionSet permissions) {
+        return available ? permissions.minus(requested) : PermissionSet.EMPTY;
+    }
+
+    @Override
+    public String toString() {
+        if (!available) {
+            return "PermissionGrantSnapshot{unavailable}";
+        }
+        return "PermissionGrantSnapshot{requested=" + requested.size() + ", granted=" + getGranted() + "}";
+    }
+}
@@ -0,0 +1,411 @@
+package com.example.permissionsmanagementlib;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongSupplier;
+
+/**
+ * Append-only binary log of what happened to each permission across sessions:
+ * the last outcome, how often it was denied, whether the system still offered a rationale after
+ * the last denial, and when it was first and last requested.
+ *
+ * The file is memory-mapped and replayed once when opened. Every change appends one small record on a
+ * background thread, and the log is compacted to one record per permission in the background once
+ * it holds enough superseded records. A truncated trailing record (process killed mid-write) is discarded.
+ *
+ * A permanent denial is only a guess from signals around the request, and it keeps the flows from ever
+ * launching the request again, also after a restart. So it is downgraded to a plain denial once the system is
+ * seen offering the request again ({@link #recordRequestable(String)}), and for all permissions when the app's
+ * version changes. The version change bounds how long a reset to "Ask every time" in the settings screen, which
+ * looks the same to the app, can go unnoticed.
+ */
+public final class PermissionHistoryStore {
+
+    public enum Outcome {
+        GRANTED,
+        DENIED,
+        // denied and the system no longer shows a rationale: only the settings screen can grant it
+        DENIED_PERMANENTLY
+    }
+
+    public static final class Entry {
+        public final String permission;
+        public final Outcome lastOutcome;
+        public final int denialCount;
+        public final boolean rationaleShown;
+        public final long firstRequestedAt;
+        public final long lastUpdatedAt;
+
+        Entry(String permission, Outcome lastOutcome, int denialCount, boolean rationaleShown,
+              long firstRequestedAt, long lastUpdatedAt) {
+            this.permission = permission;
+            this.lastOutcome = lastOutcome;
+            this.denialCount = denialCount;
+            this.rationaleShown = rationaleShown;
+            this.firstRequestedAt = firstRequestedAt;
+            this.lastUpdatedAt = lastUpdatedAt;
+        }
+
+        @Override
+        public String toString() {
+            return permission + "{" + lastOutcome + ", denials=" + denialCount + ", rationale=" + rationaleShown + "}";
+        }
+    }
+
+    // for stores that do not track the app's version
+    public static final long NO_APP_VERSION = -1L;
+
+    private static final int MAGIC = 0x50484953; // "PHIS"
+    private static final short VERSION = 2;
+    // magic, format version, app version
+    private static final int HEADER_SIZE = 14;
+    // version 1 headers had no app version
+    private static final short VERSION_1 = 1;
+    private static final int VERSION_1_HEADER_SIZE = 6;
+    // outcome, flags, denial count, first and last timestamp; the name is stored before it
+    private static final int RECORD_FIXED_SIZE = 1 + 1 + 4 + 8 + 8;
+    private static final int FLAG_RATIONALE_SHOWN = 1;
+
+    // compact when superseded records outnumber live ones by this factor (and there are enough of them)
+    private static final int COMPACTION_FACTOR = 4;
+    private static final int COMPACTION_MIN_RECORDS = 64;
+
+    private static final Map<String, PermissionHistoryStore> stores = new HashMap<>();
+
+    private final File file;
+    private long appVersion;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "PermissionHistoryStore");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private int recordCount;
+    private boolean compactionScheduled;
+
+    private PermissionHistoryStore(File file, long appVersion) {
+        this.file = file;
+        this.appVersion = appVersion;
+    }
+
+    /**
+     * Returns the store backed by {@code file}, loading it on first use. One instance exists per file.
+     */
+    public static PermissionHistoryStore open(File file) {
+        return open(file, () -> NO_APP_VERSION);
+    }
+
+    /**
+     * Like {@link #open(File)}, and downgrades the permanent denials of an older or newer app version when the file
+     * is loaded. {@code appVersion} is only asked then, e.g. for the versionCode.
+     */
+    public static PermissionHistoryStore open(File file, LongSupplier appVersion) {
+        String key = file.getAbsolutePath();
+        synchronized (stores) {
+            PermissionHistoryStore store = stores.get(key);
+            if (store == null) {
+                store = reload(file, appVersion.getAsLong());
+                stores.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    // a new store read from the file, outside the one instance per file; tests reload a file with it
+    static PermissionHistoryStore reload(File file, long appVersion) {
+        PermissionHistoryStore store = new PermissionHistoryStore(file, appVersion);
+        store.load();
+        return store;
+    }
+
+    // waits until the background thread wrote everything queued so far
+    void awaitWrites() throws InterruptedException, ExecutionException {
+        ioExecutor.submit(() -> {
+        }).get();
+    }
+
+    public synchronized Entry get(String permission) {
+        return entries.get(permission);
+    }
+
+    /**
+     * Returns true if the last recorded outcome was a denial without rationale ("Don't ask again").
+     */
+    public synchronized boolean isPermanentlyDenied(String permission) {
+        Entry entry = entries.get(permission);
+        return entry != null && entry.lastOutcome == Outcome.DENIED_PERMANENTLY;
+    }
+
+    /**
+     * Returns true if every permission of the set is recorded as permanently denied.
+     */
+    public synchronized boolean areAllPermanentlyDenied(PermissionSet permissions) {
+        if (permissions.isEmpty()) {
+            return false;
+        }
+        for (int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            if (!isPermanentlyDenied(PermissionRegistry.nameOf(id))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the subset of {@code permissions} recorded as permanently denied.
+     */
+    public synchronized PermissionSet getPermanentlyDenied(PermissionSet permissions) {
+        PermissionSet.Builder denied = null;
+        for (int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            if (isPermanentlyDenied(PermissionRegistry.nameOf(id))) {
+                if (denied == null) {
+                    denied = new PermissionSet.Builder();
+                }
+                denied.addId(id);
+            }
+        }
+        return denied == null ? PermissionSet.EMPTY : denied.build();
+    }
+
+    /**
+     * Returns an immutable copy of all entries, for analytics.
+     */
+    public synchronized Map<String, Entry> snapshot() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(entries));
+    }
+
+    public void recordGranted(String permission) {
+        record(permission, Outcome.GRANTED, false, System.currentTimeMillis());
+    }
+
+    /**
+     * Records a denial. {@code rationaleShown} is the system's shouldShowRequestPermissionRationale after the denial.
+     */
+    public void recordDenied(String permission, boolean rationaleShown) {
+        record(permission, rationaleShown ? Outcome.DENIED : Outcome.DENIED_PERMANENTLY, rationaleShown, System.currentTimeMillis());
+    }
+
+    /**
+     * Records a denial classified by {@link DenialClassifier}, which also tells dismissed dialogs and
+     * system answers without a dialog apart from the user's choices.
+     */
+    public void recordDenied(String permission, DenialClassifier.Kind kind, boolean rationaleShown) {
+        Outcome outcome = kind == DenialClassifier.Kind.DENIED_PERMANENTLY ? Outcome.DENIED_PERMANENTLY : Outcome.DENIED;
+        record(permission, outcome, rationaleShown, System.currentTimeMillis());
+    }
+
+    /**
+     * Records that the system can ask for the permission again, e.g. because it offers a rationale for it.
+     * Downgrades a recorded permanent denial to a plain one, anything else stays as it is.
+     */
+    public synchronized void recordRequestable(String permission) {
+        Entry previous = entries.get(permission);
+        if (previous == null || previous.lastOutcome != Outcome.DENIED_PERMANENTLY) {
+            return;
+        }
+        store(downgrade(previous, System.currentTimeMillis()));
+    }
+
+    private static Entry downgrade(Entry entry, long now) {
+        return new Entry(entry.permission, Outcome.DENIED, entry.denialCount, entry.rationaleShown,
+                entry.firstRequestedAt, now);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        recordCount = 0;
+        ioExecutor.execute(() -> writeSnapshot(Collections.emptyList()));
+    }
+
+    /**
+     * Rewrites the log with one record per permission. Runs on the store's background thread.
+     */
+    public synchronized Future<?> compact() {
+        compactionScheduled = true;
+        return ioExecutor.submit(this::compactNow);
+    }
+
+    private synchronized void record(String permission, Outcome outcome, boolean rationaleShown, long now) {
+        Entry previous = entries.get(permission);
+        if (previous != null && previous.lastOutcome == outcome && previous.rationaleShown == rationaleShown
+                && outcome == Outcome.GRANTED) {
+            // repeated grants carry no new information
+            return;
+        }
+
+        int denialCount = previous != null ? previous.denialCount : 0;
+        if (outcome != Outcome.GRANTED) {
+            denialCount++;
+        }
+        long firstRequestedAt = previous != null ? previous.firstRequestedAt : now;
+        store(new Entry(permission, outcome, denialCount, rationaleShown, firstRequestedAt, now));
+    }
+
+    private synchronized void store(Entry entry) {
+        entries.put(entry.permission, entry);
+        recordCount++;
+
+        ioExecutor.execute(() -> append(entry));
+        if (!compactionScheduled && recordCount >= COMPACTION_MIN_RECORDS && recordCount > entries.size() * COMPACTION_FACTOR) {
+            compactionScheduled = true;
+            ioExecutor.execute(this::compactNow);
+        }
+    }
+
+    private synchronized void load() {
+        if (!file.exists() || file.length() < VERSION_1_HEADER_SIZE) {
+            return;
+        }
+        long validLength = 0;
+        // rewritten with the current header, and without the permanent denials of another app version
+        boolean rewrite = false;
+        boolean otherAppVersion = false;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            short format = buffer.getInt() == MAGIC ? buffer.getShort() : 0;
+            if (format == VERSION || format == VERSION_1) {
+                long storedAppVersion = format == VERSION ? buffer.getLong() : NO_APP_VERSION;
+                validLength = buffer.position();
+                if (appVersion == NO_APP_VERSION) {
+                    appVersion = storedAppVersion;
+                }
+                otherAppVersion = storedAppVersion != appVersion;
+                rewrite = format != VERSION || otherAppVersion;
+                while (buffer.hasRemaining()) {
+                    Entry entry = readRecord(buffer);
+                    entries.put(entry.permission, entry);
+                    recordCount++;
+                    validLength = buffer.position();
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            // truncated or corrupt trailing record, everything before it is kept
+        } catch (IOException e) {
+            validLength = 0;
+            rewrite = false;
+        }
+
+        if (rewrite) {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (otherAppVersion && entry.getValue().lastOutcome == Outcome.DENIED_PERMANENTLY) {
+                    entry.setValue(downgrade(entry.getValue(), now));
+                }
+            }
+            compactionScheduled = true;
+            ioExecutor.execute(this::compactNow);
+            return;
+        }
+        long length = validLength;
+        if (length != file.length()) {
+            ioExecutor.execute(() -> truncate(length));
+        }
+    }
+
+    private static Entry readRecord(ByteBuffer buffer) {
+        int nameLength = buffer.getShort() & 0xFFFF;
+        byte[] name = new byte[nameLength];
+        buffer.get(name);
+        Outcome outcome = Outcome.values()[buffer.get()];
+        int flags = buffer.get();
+        int denialCount = buffer.getInt();
+        long firstRequestedAt = buffer.getLong();
+        long lastUpdatedAt = buffer.getLong();
+        return new Entry(new String(name, StandardCharsets.UTF_8), outcome, denialCount,
+                (flags & FLAG_RATIONALE_SHOWN) != 0, firstRequestedAt, lastUpdatedAt);
+    }
+
+    private static void writeRecord(ByteBuffer buffer, Entry entry, byte[] name) {
+        buffer.putShort((short) name.length);
+        buffer.put(name);
+        buffer.put((byte) entry.lastOutcome.ordinal());
+        buffer.put((byte) (entry.rationaleShown ? FLAG_RATIONALE_SHOWN : 0));
+        buffer.putInt(entry.denialCount);
+        buffer.putLong(entry.firstRequestedAt);
+        buffer.putLong(entry.lastUpdatedAt);
+    }
+
+    // runs on ioExecutor
+    private void append(Entry entry) {
+        byte[] name = entry.permission.getBytes(StandardCharsets.UTF_8);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            ByteBuffer buffer;
+            if (channel.size() < HEADER_SIZE) {
+                channel.truncate(0);
+                buffer = ByteBuffer.allocate(HEADER_SIZE + 2 + name.length + RECORD_FIXED_SIZE);
+                buffer.putInt(MAGIC).putShort(VERSION).putLong(appVersion);
+            } else {
+                buffer = ByteBuffer.allocate(2 + name.length + RECORD_FIXED_SIZE);
+            }
+            writeRecord(buffer, entry, name);
+            buffer.flip();
+            channel.position(channel.size());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException ignored) {
+            // the history is an optimization, the in-memory state stays correct for this session
+        }
+    }
+
+    // runs on ioExecutor
+    private void compactNow() {
+        Iterable<Entry> live;
+        synchronized (this) {
+            live = new LinkedHashMap<>(entries).values();
+            recordCount = entries.size();
+            compactionScheduled = false;
+        }
+        writeSnapshot(live);
+    }
+
+    // runs on ioExecutor
+    private void writeSnapshot(Iterable<Entry> live) {
+        File temp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw"); FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION).putLong(appVersion).flip();
+            channel.write(header);
+            for (Entry entry : live) {
+                byte[] name = entry.permission.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer buffer = ByteBuffer.allocate(2 + name.length + RECORD_FIXED_SIZE);
+                writeRecord(buffer, entry, name);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+
+    // runs on ioExecutor
+    private void truncate(long length) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            channel.truncate(length);
+        } catch (IOException ignored) {
+            // a later append rewrites the header if the file is unusable
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.permissionsmanagementlib;
+
+/**
+ * Build-time metadata of the platform permissions: group, protection level and the SDK range each one
+ * has an effect on, compiled from {@code src/main/permissions/platform-permissions.csv}.
+ *
+ * {@link PermissionRegistry} keeps the table row of every id it hands out, so every lookup by id is
+ * two array accesses. Permissions outside the table are unknown.
+ */
+public final class PermissionIndex {
+
+    public static final int PROTECTION_UNKNOWN = -1;
+    public static final int PROTECTION_NORMAL = 0;
+    // runtime permissions, granted by the user
+    public static final int PROTECTION_DANGEROUS = 1;
+    public static final int PROTECTION_SIGNATURE = 2;
+    // special access granted in a settings screen (SYSTEM_ALERT_WINDOW, MANAGE_EXTERNAL_STORAGE, ...)
+    public static final int PROTECTION_APPOP = 3;
+
+    private PermissionIndex() {
+    }
+
+    public static boolean isKnown(int id) {
+        return PermissionRegistry.rowOf(id) >= 0;
+    }
+
+    public static boolean isKnown(String permission) {
+        return isKnown(PermissionRegistry.find(permission));
+    }
+
+    /**
+     * Returns the platform group, e.g. "android.permission-group.LOCATION", or null if it has none or is unknown.
+     */
+    public static String getGroup(int id) {
+        int row = PermissionRegistry.rowOf(id);
+        return row >= 0 ? PlatformPermissionIndex.GROUPS[row] : null;
+    }
+
+    public static String getGroup(String permission) {
+        return getGroup(PermissionRegistry.find(permission));
+    }
+
+    public static int getProtection(int id) {
+        int row = PermissionRegistry.rowOf(id);
+        return row >= 0 ? PlatformPermissionIndex.PROTECTION[row] : PROTECTION_UNKNOWN;
+    }
+
+    public static boolean isRuntime(int id) {
+        return getProtection(id) == PROTECTION_DANGEROUS;
+    }
+
+    /**
+     * Returns the API level that introduced the permission, or 0 if it is unknown.
+     */
+    public static int getMinSdk(int id) {
+        int row = PermissionRegistry.rowOf(id);
+        return row >= 0 ? PlatformPermissionIndex.MIN_SDK[row] : 0;
+    }
+
+    /**
+     * Returns the last API level the permission has an effect on, or Integer.MAX_VALUE.
+     */
+    public static int getMaxSdk(int id) {
+        int row = PermissionRegistry.rowOf(id);
+        return row >= 0 ? PlatformPermissionIndex.MAX_SDK[row] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns false only for known permissions that do not exist or have no effect on {@code sdkInt}.
+     */
+    public static boolean appliesTo(int id, int sdkInt) {
+        int row = PermissionRegistry.rowOf(id);
+        return row < 0 || (sdkInt >= PlatformPermissionIndex.MIN_SDK[row] && sdkInt <= PlatformPermissionIndex.MAX_SDK[row]);
+    }
+
+    /**
+     * Returns the readable name, e.g. "read external storage", or null if the permission is unknown.
+     */
+    public static String getDisplayName(int id) {
+        int row = PermissionRegistry.rowOf(id);
+        return row >= 0 ? PlatformPermissionIndex.DISPLAY_NAMES[row] : null;
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.permissionsmanagementlib;
+
+/**
+ * Source of the display names used when permissions are listed to the user.
+ */
+public interface PermissionLabels {
+    String getLabel(String permission);
+}
@@ -0,0 +1,36 @@
+package com.example.permissionsmanagementlib;
+
+/**
+ * Receives timings and outcome counts of the managers' permission flows.
+ * Callbacks arrive on the main thread and should return quickly.
+ *
+ * @see InMemoryPermissionMetrics
+ * @see PermissionFlowRecorder#setDefaultMetrics(PermissionMetrics)
+ */
+public interface PermissionMetrics {
+
+    enum Phase {
+        // system permission dialog: launch until the result arrives
+        SYSTEM_DIALOG,
+        // rationale dialog: shown until the user answers it
+        RATIONALE_DIALOG,
+        // settings dialog: shown until the user answers it
+        SETTINGS_DIALOG,
+        // app settings screen: opened until the app is back
+        SETTINGS,
+        // whole flow: requestPermissions() until the final PermissionsCallback call
+        FLOW
+    }
+
+    enum Outcome {
+        GRANTED,
+        DENIED,
+        RATIONALE_SHOWN,
+        SETTINGS_VISITED,
+        SETTINGS_RETURNED_GRANTED
+    }
+
+    void onPhase(Phase phase, long durationNanos);
+
+    void onOutcome(Outcome outcome);
+}
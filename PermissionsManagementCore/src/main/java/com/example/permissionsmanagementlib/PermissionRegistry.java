@@ -0,0 +1,98 @@
+package com.example.permissionsmanagementlib;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns permission strings into small, process-stable integer ids used by {@link PermissionSet}.
+ * Ids are assigned in registration order, so the most common permissions fit into a single long.
+ * The runtime permissions of {@link PermissionIndex} are registered up front, their ids are the index rows;
+ * its other permissions only take an id when they are used, and keep their row next to it.
+ */
+public final class PermissionRegistry {
+
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[64];
+    // PermissionIndex row of each id, -1 for permissions outside the index
+    private static volatile int[] rows = new int[64];
+    private static int count;
+    // the index rows not registered up front
+    private static final Map<String, Integer> platformRows = new HashMap<>();
+
+    static {
+        for (int row = PlatformPermissionIndex.RUNTIME_COUNT; row < PlatformPermissionIndex.COUNT; row++) {
+            platformRows.put(PlatformPermissionIndex.NAMES[row], row);
+        }
+        for (int row = 0; row < PlatformPermissionIndex.RUNTIME_COUNT; row++) {
+            register(PlatformPermissionIndex.NAMES[row]);
+        }
+    }
+
+    private PermissionRegistry() {
+    }
+
+    /**
+     * Returns the id of the permission, registering it if it was not seen before.
+     */
+    public static int idOf(String permission) {
+        Integer id = ids.get(permission);
+        if (id != null) {
+            return id;
+        }
+        return register(permission);
+    }
+
+    /**
+     * Returns the id of the permission, or -1 if it was never registered.
+     */
+    public static int find(String permission) {
+        Integer id = ids.get(permission);
+        return id != null ? id : -1;
+    }
+
+    public static String nameOf(int id) {
+        String[] current = names;
+        if (id < 0 || id >= current.length || current[id] == null) {
+            throw new IllegalArgumentException("Unknown permission id: " + id);
+        }
+        return current[id];
+    }
+
+    // the PermissionIndex row, -1 if the permission is not in the index
+    static int rowOf(int id) {
+        int[] current = rows;
+        return id >= 0 && id < current.length ? current[id] : -1;
+    }
+
+    public static int size() {
+        synchronized (PermissionRegistry.class) {
+            return count;
+        }
+    }
+
+    private static synchronized int register(String permission) {
+        Integer existing = ids.get(permission);
+        if (existing != null) {
+            return existing;
+        }
+
+        int id = count;
+        String[] current = names;
+        int[] currentRows = rows;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+            currentRows = Arrays.copyOf(currentRows, currentRows.length * 2);
+        }
+        current[id] = permission;
+        Integer row = platformRows.get(permission);
+        currentRows[id] = id < PlatformPermissionIndex.RUNTIME_COUNT ? id : row != null ? row : -1;
+        // publish the name and row before the id so readers never see an id without them
+        rows = currentRows;
+        names = current;
+        ids.put(permission, id);
+        count = id + 1;
+        return id;
+    }
+}
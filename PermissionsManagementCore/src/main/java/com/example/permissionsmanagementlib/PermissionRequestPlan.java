@@ -0,0 +1,77 @@
+package com.example.permissionsmanagementlib;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ordered steps that bring a permission set to granted on one SDK level, computed by {@link PermissionRequestPlanner}.
+ * Steps run one after another: a step only makes sense once the steps before it succeeded.
+ */
+public final class PermissionRequestPlan {
+
+    public enum StepKind {
+        // one system permission dialog for all permissions of the step
+        REQUEST,
+        // the permissions can only be granted in the app settings screen
+        SETTINGS
+    }
+
+    public static final class Step {
+        public final StepKind kind;
+        public final PermissionSet permissions;
+        // at least one of these must be granted before the step can succeed, empty if there is no such condition
+        public final PermissionSet prerequisites;
+
+        Step(StepKind kind, PermissionSet permissions, PermissionSet prerequisites) {
+            this.kind = kind;
+            this.permissions = permissions;
+            this.prerequisites = prerequisites;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + permissions;
+        }
+    }
+
+    private final PermissionSet required;
+    private final PermissionSet dropped;
+    private final List<Step> steps;
+
+    PermissionRequestPlan(PermissionSet required, PermissionSet dropped, List<Step> steps) {
+        this.required = required;
+        this.dropped = dropped;
+        this.steps = Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * Returns the permissions that must be granted at the end on this SDK level. Requested permissions that
+     * do not exist there are replaced by their equivalents, and companions the system insists on are added.
+     */
+    public PermissionSet getRequired() {
+        return required;
+    }
+
+    /**
+     * Returns the requested permissions that do not apply on this SDK level (implicitly granted or meaningless).
+     */
+    public PermissionSet getDropped() {
+        return dropped;
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Returns true if nothing has to be requested: every required permission is already granted.
+     */
+    public boolean isEmpty() {
+        return steps.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "PermissionRequestPlan" + steps + " dropped=" + dropped;
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.permissionsmanagementlib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Turns an arbitrary permission set into the shortest ordered sequence of request batches and settings hops
+ * for a given SDK level and target SDK.
+ *
+ * A declarative rule table describes the platform's quirks:
+ * permissions that only exist from some SDK on (and what stands in for them before), permissions that
+ * stopped meaning anything, companions the system requires, and permissions that can only be requested
+ * after another one was granted, in their own dialog or only through the settings screen.
+ * Rules marked {@code byTargetSdk} follow the app's behaviour, which the platform keys on the lower of the device's
+ * SDK and the app's target SDK (an app targeting S keeps using the storage permissions on TIRAMISU).
+ * Permissions without a rule are requested in the first batch, unless {@link PermissionIndex} knows they do not
+ * exist on the SDK. Rules are kept by permission id, so every lookup is an array access.
+ * Grant states are asked for whole sets, the requested permissions and their prerequisites in one call.
+ */
+public final class PermissionRequestPlanner {
+
+    private static final String PREFIX = "android.permission.";
+    private static final String ACCESS_FINE_LOCATION = PREFIX + "ACCESS_FINE_LOCATION";
+    private static final String ACCESS_COARSE_LOCATION = PREFIX + "ACCESS_COARSE_LOCATION";
+    private static final String ACCESS_BACKGROUND_LOCATION = PREFIX + "ACCESS_BACKGROUND_LOCATION";
+    private static final String BODY_SENSORS = PREFIX + "BODY_SENSORS";
+    private static final String BODY_SENSORS_BACKGROUND = PREFIX + "BODY_SENSORS_BACKGROUND";
+    private static final String READ_EXTERNAL_STORAGE = PREFIX + "READ_EXTERNAL_STORAGE";
+
+    // Build.VERSION_CODES, the core module has no Android dependency
+    private static final int Q = 29;
+    private static final int R = 30;
+    private static final int S = 31;
+    private static final int TIRAMISU = 33;
+    private static final int UPSIDE_DOWN_CAKE = 34;
+
+    // indexed by permission id; rule permissions are platform permissions, so the array stays small
+    private static Rule[] rules = new Rule[0];
+
+    static {
+        // background access is part of the foreground grant before Q; from R on it is only granted in settings
+        rule(ACCESS_BACKGROUND_LOCATION).since(Q, ACCESS_FINE_LOCATION, ACCESS_COARSE_LOCATION)
+                .after(ACCESS_FINE_LOCATION, ACCESS_COARSE_LOCATION).ownBatchSince(R).settingsSince(R);
+        rule(BODY_SENSORS_BACKGROUND).since(TIRAMISU, BODY_SENSORS)
+                .after(BODY_SENSORS).ownBatchSince(TIRAMISU);
+        // from S on a fine location request without coarse location is ignored by the system
+        rule(ACCESS_FINE_LOCATION).withSince(S, ACCESS_COARSE_LOCATION);
+
+        // notifications are allowed by default before TIRAMISU
+        rule(PREFIX + "POST_NOTIFICATIONS").since(TIRAMISU);
+        // granular media permissions replace the storage permission for apps targeting TIRAMISU
+        rule(PREFIX + "READ_MEDIA_IMAGES").since(TIRAMISU, READ_EXTERNAL_STORAGE).byTargetSdk();
+        rule(PREFIX + "READ_MEDIA_VIDEO").since(TIRAMISU, READ_EXTERNAL_STORAGE).byTargetSdk();
+        rule(PREFIX + "READ_MEDIA_AUDIO").since(TIRAMISU, READ_EXTERNAL_STORAGE).byTargetSdk();
+        rule(PREFIX + "READ_MEDIA_VISUAL_USER_SELECTED").since(UPSIDE_DOWN_CAKE);
+        rule(READ_EXTERNAL_STORAGE).until(TIRAMISU - 1).byTargetSdk();
+        // scoped storage: writing needs no permission for apps targeting R
+        rule(PREFIX + "WRITE_EXTERNAL_STORAGE").until(Q).byTargetSdk();
+        rule(PREFIX + "ACCESS_MEDIA_LOCATION").since(Q);
+        // nearby device scans needed location before their own permissions existed
+        rule(PREFIX + "NEARBY_WIFI_DEVICES").since(TIRAMISU, ACCESS_FINE_LOCATION);
+        rule(PREFIX + "BLUETOOTH_SCAN").since(S, ACCESS_FINE_LOCATION);
+        rule(PREFIX + "BLUETOOTH_CONNECT").since(S);
+        rule(PREFIX + "BLUETOOTH_ADVERTISE").since(S);
+        rule(PREFIX + "UWB_RANGING").since(S);
+        rule(PREFIX + "ACTIVITY_RECOGNITION").since(Q);
+    }
+
+    private PermissionRequestPlanner() {
+    }
+
+    /**
+     * Plans {@code permissions} for an app targeting the device's SDK.
+     */
+    public static PermissionRequestPlan plan(PermissionSet permissions, int sdkInt, UnaryOperator<PermissionSet> denied) {
+        return plan(permissions, sdkInt, sdkInt, denied);
+    }
+
+    /**
+     * Plans {@code permissions} for {@code sdkInt} and an app targeting {@code targetSdk}.
+     * {@code denied} returns the subset of a set that is not granted, e.g. {@link PermissionBackend#denied};
+     * only those permissions are requested.
+     */
+    public static PermissionRequestPlan plan(PermissionSet permissions, int sdkInt, int targetSdk,
+                                             UnaryOperator<PermissionSet> denied) {
+        // what a target-keyed rule sees
+        int appSdkInt = Math.min(sdkInt, targetSdk);
+        PermissionSet.Builder required = new PermissionSet.Builder();
+        PermissionSet.Builder dropped = new PermissionSet.Builder();
+        for (int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            resolve(PermissionRegistry.nameOf(id), sdkInt, appSdkInt, required, dropped);
+        }
+        PermissionSet requiredSet = required.build();
+
+        PermissionSet.Builder toCheck = new PermissionSet.Builder().addAll(requiredSet);
+        for (int id = requiredSet.nextId(0); id >= 0; id = requiredSet.nextId(id + 1)) {
+            Rule rule = ruleOf(id);
+            if (rule != null && rule.after != null) {
+                toCheck.addAll(rule.after);
+            }
+        }
+        GrantStates grants = new GrantStates(denied);
+        grants.check(toCheck.build());
+
+        // pull in prerequisites that are neither granted nor requested
+        PermissionSet.Builder toPlan = new PermissionSet.Builder().addAll(requiredSet);
+        PermissionSet.Builder ignored = new PermissionSet.Builder();
+        for (int id = requiredSet.nextId(0); id >= 0; id = requiredSet.nextId(id + 1)) {
+            Rule rule = ruleOf(id);
+            if (rule != null && rule.after != null && !grants.anyGranted(rule.after) && !requiredSet.containsAny(rule.after)) {
+                for (int prerequisite = rule.after.nextId(0); prerequisite >= 0; prerequisite = rule.after.nextId(prerequisite + 1)) {
+                    resolve(PermissionRegistry.nameOf(prerequisite), sdkInt, appSdkInt, toPlan, ignored);
+                }
+            }
+        }
+        PermissionSet pending = grants.denied(toPlan.build());
+        return new PermissionRequestPlan(requiredSet, dropped.build(), steps(pending, sdkInt, grants));
+    }
+
+    private static void resolve(String permission, int sdkInt, int appSdkInt,
+                                PermissionSet.Builder into, PermissionSet.Builder dropped) {
+        int id = PermissionRegistry.idOf(permission);
+        if (into.containsId(id)) {
+            return;
+        }
+        Rule rule = ruleOf(id);
+        if (rule == null) {
+            (PermissionIndex.appliesTo(id, sdkInt) ? into : dropped).addId(id);
+            return;
+        }
+        int ruleSdkInt = rule.byTargetSdk ? appSdkInt : sdkInt;
+        if (ruleSdkInt < rule.minSdk || ruleSdkInt > rule.maxSdk) {
+            dropped.addId(id);
+            if (ruleSdkInt < rule.minSdk && rule.before != null) {
+                for (String replacement : rule.before) {
+                    resolve(replacement, sdkInt, appSdkInt, into, dropped);
+                }
+            }
+            return;
+        }
+        into.addId(id);
+        if (rule.companions != null && sdkInt >= rule.companionsSince) {
+            for (String companion : rule.companions) {
+                resolve(companion, sdkInt, appSdkInt, into, dropped);
+            }
+        }
+    }
+
+    private static List<PermissionRequestPlan.Step> steps(PermissionSet pending, int sdkInt, GrantStates grants) {
+        List<PermissionRequestPlan.Step> steps = new ArrayList<>();
+        if (pending.isEmpty()) {
+            return steps;
+        }
+
+        // level of each pending permission: a dependent needs a later level than its pending prerequisites
+        int size = PermissionRegistry.size();
+        int[] level = new int[size];
+        int maxLevel = 0;
+        // rule chains are short, relaxing once per pending permission always reaches the fixpoint
+        for (int round = 0; round < pending.size(); round++) {
+            boolean changed = false;
+            for (int id = pending.nextId(0); id >= 0; id = pending.nextId(id + 1)) {
+                Rule rule = ruleOf(id);
+                if (rule == null || rule.after == null || grants.anyGranted(rule.after)) {
+                    continue;
+                }
+                int gap = sdkInt >= rule.ownBatchSince || sdkInt >= rule.settingsSince ? 1 : 0;
+                for (int prerequisite = rule.after.nextId(0); prerequisite >= 0; prerequisite = rule.after.nextId(prerequisite + 1)) {
+                    if (pending.containsId(prerequisite) && level[id] < level[prerequisite] + gap) {
+                        level[id] = level[prerequisite] + gap;
+                        changed = true;
+                    }
+                }
+                maxLevel = Math.max(maxLevel, level[id]);
+            }
+            if (!changed) {
+                break;
+            }
+        }
+        PermissionSet.Builder batch = new PermissionSet.Builder();
+        PermissionSet.Builder settingsHop = new PermissionSet.Builder();
+        for (int current = 0; current <= maxLevel; current++) {
+            PermissionSet.Builder prerequisites = new PermissionSet.Builder();
+            for (int id = pending.nextId(0); id >= 0; id = pending.nextId(id + 1)) {
+                if (level[id] != current) {
+                    continue;
+                }
+                Rule rule = ruleOf(id);
+                boolean settingsOnly = rule != null && rule.after != null && sdkInt >= rule.settingsSince;
+                (settingsOnly ? settingsHop : batch).addId(id);
+                if (current > 0 && rule != null && rule.after != null) {
+                    prerequisites.addAll(rule.after);
+                }
+            }
+            PermissionSet stepPrerequisites = prerequisites.build();
+            if (!batch.isEmpty()) {
+                steps.add(new PermissionRequestPlan.Step(PermissionRequestPlan.StepKind.REQUEST, batch.build(), stepPrerequisites));
+                batch.clear();
+            }
+            if (!settingsHop.isEmpty()) {
+                steps.add(new PermissionRequestPlan.Step(PermissionRequestPlan.StepKind.SETTINGS, settingsHop.build(), stepPrerequisites));
+                settingsHop.clear();
+            }
+        }
+        return steps;
+    }
+
+    private static Rule ruleOf(int id) {
+        return id < rules.length ? rules[id] : null;
+    }
+
+    private static Rule rule(String permission) {
+        int id = PermissionRegistry.idOf(permission);
+        if (id >= rules.length) {
+            rules = Arrays.copyOf(rules, id + 1);
+        }
+        Rule rule = new Rule();
+        rules[id] = rule;
+        return rule;
+    }
+
+    // the grant states of one planning, each permission is checked at most once
+    private static final class GrantStates {
+        private final UnaryOperator<PermissionSet> deniedCheck;
+        private PermissionSet checked = PermissionSet.EMPTY;
+        private PermissionSet denied = PermissionSet.EMPTY;
+
+        GrantStates(UnaryOperator<PermissionSet> deniedCheck) {
+            this.deniedCheck = deniedCheck;
+        }
+
+        void check(PermissionSet permissions) {
+            PermissionSet unchecked = permissions.minus(checked);
+            if (!unchecked.isEmpty()) {
+                denied = denied.union(deniedCheck.apply(unchecked));
+                checked = checked.union(unchecked);
+            }
+        }
+
+        PermissionSet denied(PermissionSet permissions) {
+            check(permissions);
+            return denied.intersect(permissions);
+        }
+
+        boolean anyGranted(PermissionSet permissions) {
+            return !denied(permissions).containsAll(permissions);
+        }
+    }
+
+    private static final class Rule {
+        int minSdk = 0;
+        int maxSdk = Integer.MAX_VALUE;
+        // what stands in for the permission below minSdk
+        String[] before;
+        String[] companions;
+        int companionsSince;
+        PermissionSet after;
+        int ownBatchSince = Integer.MAX_VALUE;
+        int settingsSince = Integer.MAX_VALUE;
+        // minSdk and maxSdk apply to min(sdkInt, targetSdk)
+        boolean byTargetSdk;
+
+        Rule since(int sdk, String... replacedBy) {
+            minSdk = sdk;
+            before = replacedBy.length > 0 ? replacedBy : null;
+            return this;
+        }
+
+        Rule until(int sdk) {
+            maxSdk = sdk;
+            return this;
+        }
+
+        Rule byTargetSdk() {
+            byTargetSdk = true;
+            return this;
+        }
+
+        Rule withSince(int sdk, String... companions) {
+            this.companionsSince = sdk;
+            this.companions = companions;
+            return this;
+        }
+
+        // any one of the prerequisites must be granted first
+        Rule after(String... prerequisites) {
+            after = PermissionSet.of(prerequisites);
+            return this;
+        }
+
+        Rule ownBatchSince(int sdk) {
+            ownBatchSince = sdk;
+            return this;
+        }
+
+        Rule settingsSince(int sdk) {
+            settingsSince = sdk;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.permissionsmanagementlib;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The listeners waiting on batched permission requests: what each one still waits for and what was denied so far.
+ * A listener that requests again while it waits is merged into its pending request.
+ *
+ * Waiters are recycled once their result is delivered, so in steady state neither adding a request nor
+ * completing a batch that grants everything allocates.
+ */
+public final class PermissionRequestWaiters<L> {
+
+    public interface Delivery<L> {
+        void deliver(L listener, PermissionSet deniedPermissions);
+    }
+
+    private final List<Waiter<L>> waiters = new ArrayList<>();
+    // completed by the last batch, delivered by deliverFinished
+    private final List<Waiter<L>> finished = new ArrayList<>();
+    private final List<Waiter<L>> recycled = new ArrayList<>();
+    private final PermissionSet.Builder claimed = new PermissionSet.Builder();
+
+    public void add(L listener, PermissionSet permissions) {
+        Waiter<L> waiter = find(listener);
+        if (waiter != null) {
+            waiter.remaining = waiter.remaining.union(permissions.minus(waiter.requested));
+            waiter.requested = waiter.requested.union(permissions);
+            return;
+        }
+        waiter = recycled.isEmpty() ? new Waiter<>() : recycled.remove(recycled.size() - 1);
+        waiter.listener = listener;
+        waiter.requested = permissions;
+        waiter.remaining = permissions;
+        waiters.add(waiter);
+    }
+
+    public boolean isWaiting(L listener) {
+        return find(listener) != null;
+    }
+
+    public boolean isEmpty() {
+        return waiters.isEmpty();
+    }
+
+    /**
+     * Adds the permissions the waiters still wait for to {@code batch}.
+     */
+    public void addRemainingTo(PermissionSet.Builder batch) {
+        for (int i = 0; i < waiters.size(); i++) {
+            batch.addAll(waiters.get(i).remaining);
+        }
+    }
+
+    /**
+     * Applies the result of the batch {@code completed}, of which {@code denied} was not granted. Waiters with
+     * nothing left to wait for move to the finished ones.
+     *
+     * @param collectUnclaimed whether to compute the permissions of {@code completed} nobody waited for
+     * @return those permissions, or empty if not collected
+     */
+    public PermissionSet complete(PermissionSet completed, PermissionSet denied, boolean collectUnclaimed) {
+        claimed.clear();
+        for (int i = 0; i < waiters.size(); ) {
+            Waiter<L> waiter = waiters.get(i);
+            if (!waiter.remaining.containsAny(completed)) {
+                i++;
+                continue;
+            }
+            if (collectUnclaimed) {
+                claimed.addAll(waiter.remaining);
+            }
+            if (denied.containsAny(waiter.remaining)) {
+                waiter.denied = waiter.denied.union(denied.intersect(waiter.remaining));
+            }
+            if (completed.containsAll(waiter.remaining)) {
+                waiters.remove(i);
+                finished.add(waiter);
+            } else {
+                waiter.remaining = waiter.remaining.minus(completed);
+                i++;
+            }
+        }
+        return collectUnclaimed ? completed.minus(claimed.build()) : PermissionSet.EMPTY;
+    }
+
+    /**
+     * Delivers the result of every finished waiter. Listeners may request again from {@code delivery}.
+     */
+    public void deliverFinished(Delivery<L> delivery) {
+        for (int i = 0; i < finished.size(); i++) {
+            Waiter<L> waiter = finished.get(i);
+            delivery.deliver(waiter.listener, waiter.denied);
+            waiter.listener = null;
+            waiter.requested = null;
+            waiter.remaining = null;
+            waiter.denied = PermissionSet.EMPTY;
+            recycled.add(waiter);
+        }
+        finished.clear();
+    }
+
+    public void clear() {
+        waiters.clear();
+        finished.clear();
+    }
+
+    private Waiter<L> find(L listener) {
+        for (int i = 0; i < waiters.size(); i++) {
+            if (waiters.get(i).listener == listener) {
+                return waiters.get(i);
+            }
+        }
+        return null;
+    }
+
+    private static final class Waiter<L> {
+        L listener;
+        PermissionSet requested;
+        PermissionSet remaining;
+        PermissionSet denied = PermissionSet.EMPTY;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.permissionsmanagementlib;
+
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Aggregates permission request results and grant checks into {@link PermissionSet}s.
+ */
+public final class PermissionResults {
+
+    private PermissionResults() {
+    }
+
+    /**
+     * Returns the permissions a RequestMultiplePermissions result reports as not granted.
+     */
+    public static PermissionSet denied(Map<String, Boolean> result) {
+        PermissionSet.Builder denied = null;
+        for (Map.Entry<String, Boolean> entry : result.entrySet()) {
+            if (!Boolean.TRUE.equals(entry.getValue())) {
+                if (denied == null) {
+                    denied = new PermissionSet.Builder();
+                }
+                denied.add(entry.getKey());
+            }
+        }
+        return denied == null ? PermissionSet.EMPTY : denied.build();
+    }
+
+    /**
+     * Returns the permissions of {@code requested} that the result does not report as granted.
+     * Permissions missing from the result (a cancelled request) count as denied.
+     * Does not allocate when everything is granted.
+     */
+    public static PermissionSet denied(PermissionSet requested, Map<String, Boolean> result) {
+        PermissionSet.Builder denied = null;
+        for (int id = requested.nextId(0); id >= 0; id = requested.nextId(id + 1)) {
+            if (!Boolean.TRUE.equals(result.get(PermissionRegistry.nameOf(id)))) {
+                if (denied == null) {
+                    denied = new PermissionSet.Builder();
+                }
+                denied.addId(id);
+            }
+        }
+        return denied == null ? PermissionSet.EMPTY : denied.build();
+    }
+
+    /**
+     * Returns the subset of {@code permissions} for which {@code isGranted} is false.
+     */
+    public static PermissionSet denied(PermissionSet permissions, Predicate<String> isGranted) {
+        PermissionSet.Builder denied = null;
+        for (int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            if (!isGranted.test(PermissionRegistry.nameOf(id))) {
+                if (denied == null) {
+                    denied = new PermissionSet.Builder();
+                }
+                denied.addId(id);
+            }
+        }
+        return denied == null ? PermissionSet.EMPTY : denied.build();
+    }
+
+    public static boolean allGranted(PermissionSet permissions, Predicate<String> isGranted) {
+        for (int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            if (!isGranted.test(PermissionRegistry.nameOf(id))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
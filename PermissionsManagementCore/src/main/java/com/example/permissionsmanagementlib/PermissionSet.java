@@ -0,0 +1,419 @@
+package com.example.permissionsmanagementlib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable set of permissions backed by a bitmask over {@link PermissionRegistry} ids.
+ * Sets with ids below 64 live in a single long, so set operations are single word operations.
+ * Larger ids spill into an overflow word array.
+ *
+ * A set made by {@link #of(String...)} lists its permissions in the order they were passed, so dialogs and
+ * callbacks show them the way the app wrote them; {@link #inOrder(Iterable)} applies such an order to another set.
+ * The order plays no part in equality, and the results of set operations are in registry id order.
+ */
+public final class PermissionSet implements Iterable<String> {
+
+    public static final PermissionSet EMPTY = new PermissionSet(0L, null);
+
+    // ids 0..63
+    private final long bits;
+    // ids 64 and up, null when unused; never has trailing zero words
+    private final long[] overflow;
+
+    // the names in listing order, null for id order
+    private final String[] order;
+    // lazily cached names, never handed out; racing threads build identical arrays, volatile publishes them whole
+    private volatile String[] names;
+
+    private PermissionSet(long bits, long[] overflow) {
+        this(bits, overflow, null);
+    }
+
+    private PermissionSet(long bits, long[] overflow, String[] order) {
+        this.bits = bits;
+        this.overflow = overflow;
+        this.order = order;
+    }
+
+    public static PermissionSet of(String... permissions) {
+        return of(Arrays.asList(permissions));
+    }
+
+    public static PermissionSet of(Collection<String> permissions) {
+        Builder builder = new Builder();
+        for (String permission : permissions) {
+            builder.add(permission);
+        }
+        return builder.build().inOrder(permissions);
+    }
+
+    /**
+     * Returns this set listing its permissions in the order of {@code order}, and the ones {@code order} lacks
+     * after them in id order.
+     */
+    public PermissionSet inOrder(Iterable<String> order) {
+        // nothing to order
+        if (size() < 2) {
+            return this;
+        }
+        String[] ordered = new String[size()];
+        int count = 0;
+        boolean idOrder = true;
+        int lastId = -1;
+        Builder listed = new Builder();
+        for (String permission : order) {
+            int id = PermissionRegistry.find(permission);
+            if (id >= 0 && containsId(id) && !listed.containsId(id)) {
+                listed.addId(id);
+                ordered[count++] = permission;
+                idOrder &= id > lastId;
+                lastId = id;
+            }
+        }
+        for (int id = nextId(0); id >= 0; id = nextId(id + 1)) {
+            if (!listed.containsId(id)) {
+                ordered[count++] = PermissionRegistry.nameOf(id);
+                idOrder &= id > lastId;
+                lastId = id;
+            }
+        }
+        if (idOrder) {
+            return this.order == null ? this : new PermissionSet(bits, overflow);
+        }
+        return Arrays.equals(ordered, this.order) ? this : new PermissionSet(bits, overflow, ordered);
+    }
+
+    // the names in listing order, or null if the set lists them in id order
+    String[] order() {
+        return order;
+    }
+
+    public boolean contains(String permission) {
+        int id = PermissionRegistry.find(permission);
+        return id >= 0 && containsId(id);
+    }
+
+    public boolean containsId(int id) {
+        if (id < 64) {
+            return (bits & (1L << id)) != 0;
+        }
+        int word = (id >>> 6) - 1;
+        return overflow != null && word < overflow.length && (overflow[word] & (1L << id)) != 0;
+    }
+
+    public boolean containsAll(PermissionSet other) {
+        if ((other.bits & ~bits) != 0) {
+            return false;
+        }
+        if (other.overflow == null) {
+            return true;
+        }
+        for (int i = 0; i < other.overflow.length; i++) {
+            if ((other.overflow[i] & ~word(overflow, i)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean containsAny(PermissionSet other) {
+        if ((other.bits & bits) != 0) {
+            return true;
+        }
+        if (overflow == null || other.overflow == null) {
+            return false;
+        }
+        int length = Math.min(overflow.length, other.overflow.length);
+        for (int i = 0; i < length; i++) {
+            if ((overflow[i] & other.overflow[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // union, intersect and minus return an operand instead of a copy where the result equals it
+    public PermissionSet union(PermissionSet other) {
+        if (containsAll(other)) {
+            return this;
+        }
+        if (other.containsAll(this)) {
+            return other;
+        }
+        if (overflow == null && other.overflow == null) {
+            return create(bits | other.bits, null);
+        }
+        int length = Math.max(length(overflow), length(other.overflow));
+        long[] words = new long[length];
+        for (int i = 0; i < length; i++) {
+            words[i] = word(overflow, i) | word(other.overflow, i);
+        }
+        return create(bits | other.bits, words);
+    }
+
+    public PermissionSet intersect(PermissionSet other) {
+        if (other.containsAll(this)) {
+            return this;
+        }
+        if (containsAll(other)) {
+            return other;
+        }
+        if (overflow == null || other.overflow == null) {
+            return create(bits & other.bits, null);
+        }
+        int length = Math.min(overflow.length, other.overflow.length);
+        long[] words = new long[length];
+        for (int i = 0; i < length; i++) {
+            words[i] = overflow[i] & other.overflow[i];
+        }
+        return create(bits & other.bits, words);
+    }
+
+    public PermissionSet minus(PermissionSet other) {
+        if (!containsAny(other)) {
+            return this;
+        }
+        if (overflow == null) {
+            return create(bits & ~other.bits, null);
+        }
+        long[] words = new long[overflow.length];
+        for (int i = 0; i < overflow.length; i++) {
+            words[i] = overflow[i] & ~word(other.overflow, i);
+        }
+        return create(bits & ~other.bits, words);
+    }
+
+    public PermissionSet with(String permission) {
+        return union(of(permission));
+    }
+
+    public PermissionSet without(String permission) {
+        int id = PermissionRegistry.find(permission);
+        if (id < 0 || !containsId(id)) {
+            return this;
+        }
+        return minus(of(permission));
+    }
+
+    public boolean isEmpty() {
+        return bits == 0 && overflow == null;
+    }
+
+    public int size() {
+        int size = Long.bitCount(bits);
+        if (overflow != null) {
+            for (long word : overflow) {
+                size += Long.bitCount(word);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the smallest id in this set that is {@code >= fromId}, or -1 if there is none.
+     * Allows allocation-free iteration:
+     * {@code for (int id = set.nextId(0); id >= 0; id = set.nextId(id + 1))}.
+     */
+    public int nextId(int fromId) {
+        if (fromId < 64) {
+            long remaining = fromId <= 0 ? bits : bits & (-1L << fromId);
+            if (remaining != 0) {
+                return Long.numberOfTrailingZeros(remaining);
+            }
+            fromId = 64;
+        }
+        if (overflow == null) {
+            return -1;
+        }
+        int word = (fromId >>> 6) - 1;
+        if (word >= overflow.length) {
+            return -1;
+        }
+        long remaining = overflow[word] & (-1L << fromId);
+        while (true) {
+            if (remaining != 0) {
+                return ((word + 1) << 6) + Long.numberOfTrailingZeros(remaining);
+            }
+            if (++word == overflow.length) {
+                return -1;
+            }
+            remaining = overflow[word];
+        }
+    }
+
+    /**
+     * Returns the permissions as a new array the caller owns.
+     */
+    public String[] toArray() {
+        return names().clone();
+    }
+
+    /**
+     * Returns the permissions as a new, mutable list the caller owns.
+     */
+    public List<String> toList() {
+        return new ArrayList<>(Arrays.asList(names()));
+    }
+
+    private String[] names() {
+        if (order != null) {
+            return order;
+        }
+        String[] result = names;
+        if (result == null) {
+            result = new String[size()];
+            int i = 0;
+            for (int id = nextId(0); id >= 0; id = nextId(id + 1)) {
+                result[i++] = PermissionRegistry.nameOf(id);
+            }
+            names = result;
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        if (order != null) {
+            return Collections.unmodifiableList(Arrays.asList(order)).iterator();
+        }
+        return new Iterator<String>() {
+            private int next = nextId(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public String next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                String permission = PermissionRegistry.nameOf(next);
+                next = nextId(next + 1);
+                return permission;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PermissionSet)) {
+            return false;
+        }
+        PermissionSet other = (PermissionSet) o;
+        return bits == other.bits && Arrays.equals(overflow, other.overflow);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(bits) + Arrays.hashCode(overflow);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(names());
+    }
+
+    private static PermissionSet create(long bits, long[] overflow) {
+        int length = length(overflow);
+        while (length > 0 && overflow[length - 1] == 0) {
+            length--;
+        }
+        if (length == 0) {
+            return bits == 0 ? EMPTY : new PermissionSet(bits, null);
+        }
+        return new PermissionSet(bits, length == overflow.length ? overflow : Arrays.copyOf(overflow, length));
+    }
+
+    private static int length(long[] words) {
+        return words == null ? 0 : words.length;
+    }
+
+    private static long word(long[] words, int index) {
+        return words != null && index < words.length ? words[index] : 0L;
+    }
+
+    /**
+     * Mutable builder, reusable after {@link #build()} via {@link #clear()}.
+     */
+    public static final class Builder {
+        private long bits;
+        private long[] overflow;
+
+        public Builder add(String permission) {
+            return addId(PermissionRegistry.idOf(permission));
+        }
+
+        public Builder addId(int id) {
+            if (id < 64) {
+                bits |= 1L << id;
+            } else {
+                int word = (id >>> 6) - 1;
+                if (overflow == null) {
+                    overflow = new long[word + 1];
+                } else if (word >= overflow.length) {
+                    overflow = Arrays.copyOf(overflow, word + 1);
+                }
+                overflow[word] |= 1L << id;
+            }
+            return this;
+        }
+
+        public Builder addAll(PermissionSet set) {
+            bits |= set.bits;
+            if (set.overflow != null) {
+                for (int i = 0; i < set.overflow.length; i++) {
+                    if (set.overflow[i] != 0) {
+                        addId((i + 1) << 6 | Long.numberOfTrailingZeros(set.overflow[i]));
+                        overflow[i] |= set.overflow[i];
+                    }
+                }
+            }
+            return this;
+        }
+
+        public boolean containsId(int id) {
+            if (id < 64) {
+                return (bits & (1L << id)) != 0;
+            }
+            int word = (id >>> 6) - 1;
+            return overflow != null && word < overflow.length && (overflow[word] & (1L << id)) != 0;
+        }
+
+        public boolean isEmpty() {
+            if (bits != 0) {
+                return false;
+            }
+            if (overflow != null) {
+                for (long word : overflow) {
+                    if (word != 0) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        public Builder clear() {
+            bits = 0;
+            if (overflow != null) {
+                Arrays.fill(overflow, 0L);
+            }
+            return this;
+        }
+
+        public PermissionSet build() {
+            return create(bits, overflow == null ? null : overflow.clone());
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.permissionsmanagementlib;
+
+/**
+ * Receives changes of the grant state of an observed permission set.
+ */
+public interface PermissionStateListener {
+
+    /**
+     * Called with the permissions whose state changed since the last call: {@code granted} became granted,
+     * {@code denied} became denied. The first call after subscribing reports the full current state.
+     */
+    void onPermissionStateChanged(PermissionSet granted, PermissionSet denied);
+}
@@ -0,0 +1,135 @@
+package com.example.permissionsmanagementlib;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Builds the user facing text for permission lists.
+ */
+public final class PermissionText {
+
+    private static final String ANDROID_PERMISSION_PREFIX = "android.permission.";
+
+    private PermissionText() {
+    }
+
+    /**
+     * Returns a readable name, e.g. "read external storage": looked up for platform permissions,
+     * derived from the permission string itself for any other.
+     */
+    public static String getPermissionName(String permission) {
+        return appendPermissionName(new StringBuilder(permission.length()), permission).toString();
+    }
+
+    /**
+     * Appends the numbered list of permission names to {@code out} without intermediate strings,
+     * so callers can reuse one builder for every dialog.
+     */
+    public static StringBuilder appendPermissionsList(StringBuilder out, PermissionSet permissions) {
+        return appendPermissionsList(out, permissions, null);
+    }
+
+    /**
+     * Same as {@link #appendPermissionsList(StringBuilder, PermissionSet)} with names taken from {@code labels}
+     * (for example the system's localized labels). A null {@code labels} uses the derived names.
+     */
+    public static StringBuilder appendPermissionsList(StringBuilder out, PermissionSet permissions, PermissionLabels labels) {
+        try {
+            writePermissionsList(out, permissions, labels);
+        } catch (IOException e) {
+            // a StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+        return out;
+    }
+
+    public static StringBuilder appendPermissionName(StringBuilder out, String permission) {
+        try {
+            writePermissionName(out, permission);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out;
+    }
+
+    static void writePermissionsList(Appendable out, PermissionSet permissions, PermissionLabels labels) throws IOException {
+        String[] order = permissions.order();
+        if (order != null) {
+            for (int i = 0; i < order.length; i++) {
+                writePermissionsListItem(out, i + 1, PermissionRegistry.find(order[i]), order[i], labels);
+            }
+            return;
+        }
+        int index = 1;
+        for (int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            writePermissionsListItem(out, index++, id, PermissionRegistry.nameOf(id), labels);
+        }
+    }
+
+    private static void writePermissionsListItem(Appendable out, int index, int id, String permission,
+                                                 PermissionLabels labels) throws IOException {
+        writeInt(out, index);
+        out.append(") ");
+        if (labels != null) {
+            out.append(labels.getLabel(permission));
+        } else if (PermissionIndex.isKnown(id)) {
+            out.append(PermissionIndex.getDisplayName(id));
+        } else {
+            writePermissionName(out, permission);
+        }
+        out.append('\n');
+    }
+
+    static void writePermissionName(Appendable out, String permission) throws IOException {
+        // platform permissions have their name precomputed at build time
+        String displayName = PermissionIndex.getDisplayName(PermissionRegistry.find(permission));
+        if (displayName != null) {
+            out.append(displayName);
+            return;
+        }
+        // android.permission.READ_SMS -> read sms, com.example.permission.SYNC_DATA -> sync data
+        int start = permission.startsWith(ANDROID_PERMISSION_PREFIX)
+                ? ANDROID_PERMISSION_PREFIX.length()
+                : permission.lastIndexOf('.') + 1;
+        for (int i = start; i < permission.length(); i++) {
+            char c = permission.charAt(i);
+            out.append(c == '_' ? ' ' : Character.toLowerCase(c));
+        }
+    }
+
+    // Appendable has no append(int), the digits are written one by one instead of through a String
+    static void writeInt(Appendable out, int value) throws IOException {
+        if (value < 0) {
+            out.append('-');
+            value = -value;
+        }
+        int divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + value / divisor % 10));
+        }
+    }
+
+    public static String permissionsStringGenerator(List<String> permissions) {
+        return permissionsStringGenerator(permissions, null);
+    }
+
+    public static String permissionsStringGenerator(List<String> permissions, PermissionLabels labels) {
+        StringBuilder permissionsString = new StringBuilder();
+        for (int i = 0; i < permissions.size(); i++) {
+            String permission = permissions.get(i);
+            permissionsString.append(i + 1).append(") ");
+            if (labels != null) {
+                permissionsString.append(labels.getLabel(permission));
+            } else {
+                appendPermissionName(permissionsString, permission);
+            }
+            permissionsString.append("\n");
+        }
+
+        return permissionsString.toString();
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.permissionsmanagementlib;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-size ring buffer of typed permission-flow events, dumped on demand.
+ *
+ * Tracing is off by default. Every entry point then returns after one volatile read and records nothing.
+ * Recording never allocates: events go to preallocated parallel arrays, and the permissions of an event
+ * are kept by reference because {@link PermissionSet} is immutable.
+ * Writers claim a slot with one atomic increment. A dump taken while events are written may show a torn
+ * entry at the head of the ring.
+ */
+public final class PermissionTraceLog {
+
+    public static final int LEVEL_OFF = 0;
+    // typed events into the ring buffer
+    public static final int LEVEL_EVENTS = 1;
+    // events plus trace sections visible in Perfetto / systrace
+    public static final int LEVEL_SECTIONS = 2;
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    public enum Event {
+        FLOW_STARTED,
+        ALREADY_GRANTED,
+        KNOWN_PERMANENTLY_DENIED,
+        REQUEST_QUEUED,
+        REQUEST_LAUNCHED,
+        REQUEST_RESULT,
+        RATIONALE_SHOWN,
+        RATIONALE_ACCEPTED,
+        RATIONALE_DECLINED,
+        SETTINGS_DIALOG_SHOWN,
+        SETTINGS_OPENED,
+        SETTINGS_RETURNED,
+        FLOW_GRANTED,
+        FLOW_DENIED,
+        PHASE_STARTED,
+        PHASE_ENDED,
+        TOAST_SHOWN,
+        // a request result the system produced without showing its dialog
+        INSTANT_DENIAL,
+        // the flow ended without a callback because its activity was destroyed
+        FLOW_CANCELLED,
+        // a flow saved by the previous instance of the activity continues
+        FLOW_RESUMED
+    }
+
+    /**
+     * Receives trace sections when the level is {@link #LEVEL_SECTIONS}, e.g. to forward them to android.os.Trace.
+     */
+    public interface SectionWriter {
+        void beginSection(String name);
+
+        void endSection();
+
+        void beginAsyncSection(String name, int cookie);
+
+        void endAsyncSection(String name, int cookie);
+    }
+
+    private static final Event[] EVENTS = Event.values();
+    private static final PermissionMetrics.Phase[] PHASES = PermissionMetrics.Phase.values();
+    private static final String[] PHASE_SECTIONS = new String[PHASES.length];
+
+    static {
+        for (int i = 0; i < PHASES.length; i++) {
+            PHASE_SECTIONS[i] = "Permission." + PHASES[i].name();
+        }
+    }
+
+    private static volatile int level = LEVEL_OFF;
+    private static volatile SectionWriter sectionWriter;
+    private static volatile PermissionTraceLog instance = new PermissionTraceLog(DEFAULT_CAPACITY);
+
+    private final int mask;
+    private final long[] timestamps;
+    private final int[] events;
+    private final int[] sources;
+    private final int[] args;
+    private final PermissionSet[] permissions;
+    private final AtomicLong next = new AtomicLong();
+
+    private PermissionTraceLog(int capacity) {
+        // a power of two, so the slot is a mask instead of a modulo
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        mask = size - 1;
+        timestamps = new long[size];
+        events = new int[size];
+        sources = new int[size];
+        args = new int[size];
+        permissions = new PermissionSet[size];
+    }
+
+    public static void setLevel(int level) {
+        PermissionTraceLog.level = level;
+    }
+
+    public static int getLevel() {
+        return level;
+    }
+
+    public static boolean isEnabled() {
+        return level != LEVEL_OFF;
+    }
+
+    public static void setSectionWriter(SectionWriter sectionWriter) {
+        PermissionTraceLog.sectionWriter = sectionWriter;
+    }
+
+    /**
+     * Replaces the ring buffer with an empty one holding the last {@code capacity} events (rounded up to a power of two).
+     */
+    public static void setCapacity(int capacity) {
+        instance = new PermissionTraceLog(capacity);
+    }
+
+    public static void clear() {
+        instance = new PermissionTraceLog(instance.mask + 1);
+    }
+
+    /**
+     * Records an event. {@code source} identifies the emitter (e.g. its identity hash), {@code permissions} may be null.
+     */
+    public static void record(Event event, int source, PermissionSet permissions) {
+        if (level != LEVEL_OFF) {
+            instance.write(event, source, permissions, 0);
+        }
+    }
+
+    public static void record(Event event, int source, PermissionSet permissions, int arg) {
+        if (level != LEVEL_OFF) {
+            instance.write(event, source, permissions, arg);
+        }
+    }
+
+    public static void phaseStarted(PermissionMetrics.Phase phase, int source) {
+        if (level == LEVEL_OFF) {
+            return;
+        }
+        instance.write(Event.PHASE_STARTED, source, null, phase.ordinal());
+        SectionWriter writer = sectionWriter;
+        if (level >= LEVEL_SECTIONS && writer != null) {
+            writer.beginAsyncSection(PHASE_SECTIONS[phase.ordinal()], source);
+        }
+    }
+
+    public static void phaseEnded(PermissionMetrics.Phase phase, int source) {
+        if (level == LEVEL_OFF) {
+            return;
+        }
+        instance.write(Event.PHASE_ENDED, source, null, phase.ordinal());
+        SectionWriter writer = sectionWriter;
+        if (level >= LEVEL_SECTIONS && writer != null) {
+            writer.endAsyncSection(PHASE_SECTIONS[phase.ordinal()], source);
+        }
+    }
+
+    /**
+     * Opens a synchronous section on the calling thread. Returns true if it was opened and
+     * {@link #endSection(boolean)} must close it.
+     */
+    public static boolean beginSection(String name) {
+        if (level < LEVEL_SECTIONS) {
+            return false;
+        }
+        SectionWriter writer = sectionWriter;
+        if (writer == null) {
+            return false;
+        }
+        writer.beginSection(name);
+        return true;
+    }
+
+    public static void endSection(boolean begun) {
+        if (begun) {
+            SectionWriter writer = sectionWriter;
+            if (writer != null) {
+                writer.endSection();
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered events, oldest first, one per line:
+     * {@code <nanos> <source> <event> [phase] [permissions]}.
+     */
+    public static void dump(Appendable out) throws IOException {
+        instance.dumpTo(out);
+    }
+
+    private void write(Event event, int source, PermissionSet permissionSet, int arg) {
+        int slot = (int) (next.getAndIncrement() & mask);
+        timestamps[slot] = System.nanoTime();
+        events[slot] = event.ordinal();
+        sources[slot] = source;
+        args[slot] = arg;
+        permissions[slot] = permissionSet;
+    }
+
+    private void dumpTo(Appendable out) throws IOException {
+        long end = next.get();
+        long start = Math.max(0, end - (mask + 1));
+        for (long i = start; i < end; i++) {
+            int slot = (int) (i & mask);
+            Event event = EVENTS[events[slot]];
+            out.append(String.valueOf(timestamps[slot]))
+                    .append(' ').append(Integer.toHexString(sources[slot]))
+                    .append(' ').append(event.name());
+            if (event == Event.PHASE_STARTED || event == Event.PHASE_ENDED) {
+                out.append(' ').append(PHASES[args[slot]].name());
+            } else if (args[slot] != 0) {
+                out.append(' ').append(String.valueOf(args[slot]));
+            }
+            PermissionSet permissionSet = permissions[slot];
+            if (permissionSet != null) {
+                out.append(' ').append(permissionSet.toString());
+            }
+            out.append('\n');
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.permissionsmanagementlib;
+
+import java.util.List;
+
+public interface PermissionsCallback {
+    void onPermissionsGranted();
+    void onPermissionsDenied(List<String> deniedPermissions);
+
+    // The managers report denials through this overload; override it to avoid the list conversion.
+    default void onPermissionsDenied(PermissionSet deniedPermissions) {
+        onPermissionsDenied(deniedPermissions.toList());
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.permissionsmanagementlib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DenialClassifierTest {
+
+    private static final long INSTANT = 0L;
+    private static final long READ = DenialClassifier.INSTANT_ROUND_TRIP_MILLIS;
+
+    @Test
+    public void batchResultsOutweighTheTiming() {
+        // a fast answer does not hide a dialog that granted something or still offers a rationale
+        assertTrue(DenialClassifier.isPromptShown(true, false, false, INSTANT));
+        assertTrue(DenialClassifier.isPromptShown(false, true, false, INSTANT));
+        assertFalse(DenialClassifier.isPromptShown(false, false, true, INSTANT));
+        assertTrue(DenialClassifier.isPromptShown(false, false, true, READ));
+    }
+
+    @Test
+    public void rationaleDecidesWithoutTheBatch() {
+        assertEquals(DenialClassifier.Kind.DENIED, DenialClassifier.classify(false, true, false, true));
+        assertEquals(DenialClassifier.Kind.DENIED_PERMANENTLY, DenialClassifier.classify(true, false, true, false));
+    }
+
+    @Test
+    public void noRationaleDependsOnThePrompt() {
+        assertEquals(DenialClassifier.Kind.DENIED_PERMANENTLY, DenialClassifier.classify(false, false, false, false));
+        assertEquals(DenialClassifier.Kind.DISMISSED, DenialClassifier.classify(false, false, true, false));
+        // skipped by the system while it asked for the rest of the batch
+        assertEquals(DenialClassifier.Kind.DENIED_PERMANENTLY, DenialClassifier.classify(false, false, true, true));
+    }
+}
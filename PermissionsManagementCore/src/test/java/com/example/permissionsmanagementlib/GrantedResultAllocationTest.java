@@ -0,0 +1,122 @@
+package com.example.permissionsmanagementlib;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Guards the allocation-free handling of a request result that grants everything. Every path runs until it is
+ * compiled, then the bytes the thread allocates over many more runs are measured.
+ */
+public class GrantedResultAllocationTest {
+
+    private static final int WARMUP_RUNS = 20_000;
+    private static final int MEASURED_RUNS = 200_000;
+    // leaves room for a stray allocation of the JVM itself, anything per run is far above it
+    private static final double MAX_BYTES_PER_RUN = 0.5;
+
+    private static final String CAMERA = "android.permission.CAMERA";
+    private static final String RECORD_AUDIO = "android.permission.RECORD_AUDIO";
+
+    private final PermissionSet camera = PermissionSet.of(CAMERA);
+    private final PermissionSet cameraAndAudio = PermissionSet.of(CAMERA, RECORD_AUDIO);
+    private final Map<String, Boolean> allGranted = new HashMap<>();
+
+    private com.sun.management.ThreadMXBean threads;
+
+    @Before
+    public void setUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        allGranted.put(CAMERA, true);
+        allGranted.put(RECORD_AUDIO, true);
+    }
+
+    @Test
+    public void grantedResultHasNoDenied() {
+        assertSame(PermissionSet.EMPTY, PermissionResults.denied(cameraAndAudio, allGranted));
+        assertNoAllocation(() -> PermissionResults.denied(cameraAndAudio, allGranted));
+    }
+
+    @Test
+    public void grantedBatchCompletesWaitersWithoutAllocation() {
+        PermissionRequestWaiters<Object> waiters = new PermissionRequestWaiters<>();
+        Object first = new Object();
+        Object second = new Object();
+        int[] delivered = new int[1];
+        PermissionRequestWaiters.Delivery<Object> delivery = (listener, denied) -> {
+            assertSame(PermissionSet.EMPTY, denied);
+            delivered[0]++;
+        };
+        PermissionTraceLog.setLevel(PermissionTraceLog.LEVEL_EVENTS);
+        try {
+            assertNoAllocation(() -> {
+                waiters.add(first, camera);
+                waiters.add(second, cameraAndAudio);
+                // what the scheduler does with the result of the batch
+                PermissionSet denied = PermissionResults.denied(cameraAndAudio, allGranted);
+                PermissionTraceLog.record(PermissionTraceLog.Event.REQUEST_RESULT, 0, denied);
+                waiters.complete(cameraAndAudio, denied, false);
+                waiters.deliverFinished(delivery);
+            });
+        } finally {
+            PermissionTraceLog.setLevel(PermissionTraceLog.LEVEL_OFF);
+        }
+        assertEquals(2L * (WARMUP_RUNS + MEASURED_RUNS), delivered[0]);
+        assertTrue(waiters.isEmpty());
+    }
+
+    @Test
+    public void repeatedGrantIsNotRecordedAgain() throws IOException {
+        File file = File.createTempFile("permission_history", ".bin");
+        file.deleteOnExit();
+        PermissionHistoryStore history = PermissionHistoryStore.open(file);
+        history.recordGranted(CAMERA);
+        assertNoAllocation(() -> history.recordGranted(CAMERA));
+    }
+
+    @Test
+    public void unchangedSetOperationsReturnAnOperand() {
+        assertSame(cameraAndAudio, cameraAndAudio.union(camera));
+        assertSame(cameraAndAudio, camera.union(cameraAndAudio));
+        assertSame(camera, camera.intersect(cameraAndAudio));
+        assertSame(cameraAndAudio, cameraAndAudio.minus(PermissionSet.EMPTY));
+        assertSame(PermissionSet.EMPTY, camera.minus(cameraAndAudio));
+        // what the state observers compute when nothing changed
+        assertNoAllocation(() -> {
+            PermissionSet watched = PermissionSet.EMPTY.union(camera).union(cameraAndAudio);
+            PermissionSet granted = watched.minus(PermissionSet.EMPTY);
+            granted.intersect(camera).minus(camera);
+        });
+    }
+
+    private void assertNoAllocation(Runnable run) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            run.run();
+        }
+        long thread = Thread.currentThread().getId();
+        // what reading the counter allocates itself
+        long overhead = -threads.getThreadAllocatedBytes(thread) + threads.getThreadAllocatedBytes(thread);
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            run.run();
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+        double bytesPerRun = (double) allocated / MEASURED_RUNS;
+        if (bytesPerRun > MAX_BYTES_PER_RUN) {
+            throw new AssertionError(bytesPerRun + " bytes allocated per run");
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.permissionsmanagementlib;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MessageTemplateTest {
+
+    private static final String CAMERA = "android.permission.CAMERA";
+    private static final String RECORD_AUDIO = "android.permission.RECORD_AUDIO";
+
+    private static final String APP = "Demo";
+    private static final PermissionLabels LABELS = permission -> permission.substring(permission.lastIndexOf('.') + 1);
+
+    private static final PermissionSet BOTH = PermissionSet.of(CAMERA, RECORD_AUDIO)
+            .inOrder(Arrays.asList(CAMERA, RECORD_AUDIO));
+
+    @Test
+    public void substitutesEveryPlaceholder() {
+        MessageTemplate template = MessageTemplate.compile("{app} needs {count} permissions:\n{permissions}Allow?");
+
+        assertEquals("Demo needs 2 permissions:\n1) CAMERA\n2) RECORD_AUDIO\nAllow?", render(template, BOTH));
+        assertEquals("Demo needs 1 permissions:\n1) CAMERA\nAllow?", render(template, PermissionSet.of(CAMERA)));
+        assertTrue(template.containsPermissions(2));
+        assertNull(template.getConstantText());
+    }
+
+    @Test
+    public void placeholdersMayRepeatAndTouch() {
+        assertEquals("22Demo", render(MessageTemplate.compile("{count}{count}{app}"), BOTH));
+        assertEquals("", render(MessageTemplate.EMPTY, BOTH));
+    }
+
+    @Test
+    public void countHasAllItsDigits() {
+        PermissionSet.Builder many = new PermissionSet.Builder();
+        for (int i = 0; i < 12; i++) {
+            many.add("com.example.permission.MESSAGE_" + i);
+        }
+
+        assertEquals("12 of them", render(MessageTemplate.compile("{count} of them"), many.build()));
+    }
+
+    @Test
+    public void pluralPicksThePatternByCount() {
+        List<Integer> asked = new ArrayList<>();
+        MessageTemplate template = MessageTemplate.plural(count -> {
+            asked.add(count);
+            return count == 1 ? "{app} needs this permission:\n{permissions}" : "{app} needs {count} permissions";
+        });
+
+        assertTrue(template.isPlural());
+        assertNull(template.getConstantText());
+        assertEquals("Demo needs this permission:\n1) CAMERA\n", render(template, PermissionSet.of(CAMERA)));
+        assertEquals("Demo needs 2 permissions", render(template, BOTH));
+        // rendering the same count again reuses the compiled pattern
+        assertEquals("Demo needs 2 permissions", render(template, BOTH));
+        assertEquals(Arrays.asList(1, 2, 2), asked);
+
+        assertTrue(template.containsPermissions(1));
+        assertFalse(template.containsPermissions(2));
+    }
+
+    @Test
+    public void pluralWithMorePatternsThanCategoriesStillRenders() {
+        MessageTemplate template = MessageTemplate.plural(count -> "pattern {count}" + "!".repeat(count));
+        PermissionSet.Builder permissions = new PermissionSet.Builder();
+        for (int i = 1; i <= 8; i++) {
+            permissions.add("com.example.permission.PLURAL_" + i);
+            assertEquals("pattern " + i + "!".repeat(i), render(template, permissions.build()));
+        }
+    }
+
+    @Test
+    public void unknownPlaceholdersStayAsTheyAre() {
+        MessageTemplate template = MessageTemplate.compile("{name} and {Count} and {permission} and {}");
+
+        assertEquals("{name} and {Count} and {permission} and {}", render(template, BOTH));
+        assertEquals("{name} and {Count} and {permission} and {}", template.getConstantText());
+        assertFalse(template.containsPermissions(2));
+    }
+
+    @Test
+    public void unterminatedPlaceholdersStayAsTheyAre() {
+        assertEquals("needs {count", render(MessageTemplate.compile("needs {count"), BOTH));
+        assertEquals("needs {app", MessageTemplate.compile("needs {app").getConstantText());
+        assertEquals("{", render(MessageTemplate.compile("{"), BOTH));
+        assertEquals("2 {permissions", render(MessageTemplate.compile("{count} {permissions"), BOTH));
+    }
+
+    @Test
+    public void doubledBracesAreLiteral() {
+        MessageTemplate template = MessageTemplate.compile("{{app}} is {app}, {{{count}}} and }}");
+
+        assertEquals("{app} is Demo, {2} and }", render(template, BOTH));
+        assertEquals("{count}", MessageTemplate.compile("{{count}}").getConstantText());
+        // a single closing brace is text as well
+        assertEquals("a } b", MessageTemplate.compile("a } b").getConstantText());
+    }
+
+    @Test
+    public void plainMessagesRenderUnchanged() {
+        MessageTemplate template = MessageTemplate.compile("Please allow the permissions.");
+
+        assertEquals("Please allow the permissions.", template.getConstantText());
+        assertEquals("Please allow the permissions.", render(template, BOTH));
+        assertEquals("Please allow the permissions.", template.toString());
+    }
+
+    @Test
+    public void renderAppendsToTheCallersBuilder() {
+        StringBuilder out = new StringBuilder("> ");
+        MessageTemplate.compile("{count}").render(out, BOTH, LABELS, APP);
+
+        assertEquals("> 2", out.toString());
+    }
+
+    private static String render(MessageTemplate template, PermissionSet permissions) {
+        return template.render(new StringBuilder(), permissions, LABELS, APP).toString();
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.permissionsmanagementlib;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs whole flows against {@link InMemoryPermissionBackend} with a scripted user.
+ */
+public class PermissionFlowControllerTest {
+
+    private static final String CAMERA = "android.permission.CAMERA";
+    private static final String RECORD_AUDIO = "android.permission.RECORD_AUDIO";
+    private static final String FINE_LOCATION = "android.permission.ACCESS_FINE_LOCATION";
+    private static final String COARSE_LOCATION = "android.permission.ACCESS_COARSE_LOCATION";
+    private static final String BACKGROUND_LOCATION = "android.permission.ACCESS_BACKGROUND_LOCATION";
+
+    private static final int Q = 29;
+    private static final int R = 30;
+
+    @Test
+    public void grantedOnFirstPrompt() {
+        ScriptedUser user = new ScriptedUser().answer(InMemoryPermissionBackend.Response.GRANT,
+                InMemoryPermissionBackend.Response.GRANT);
+        InMemoryPermissionBackend backend = new InMemoryPermissionBackend(R, user);
+        Result result = run(backend, CAMERA, RECORD_AUDIO);
+
+        assertTrue(result.granted);
+        assertEquals(Arrays.asList(CAMERA, RECORD_AUDIO), user.prompted);
+        assertEquals(1, backend.getPromptCount());
+        assertEquals(0, backend.getRationaleDialogCount());
+        assertEquals(0, backend.getSettingsDialogCount());
+    }
+
+    @Test
+    public void alreadyGrantedNeedsNoRequest() {
+        InMemoryPermissionBackend backend = new InMemoryPermissionBackend(R, new ScriptedUser())
+                .grant(PermissionSet.of(CAMERA));
+        Result result = run(backend, CAMERA);
+
+        assertTrue(result.granted);
+        assertEquals(0, backend.getRequestCount());
+    }
+
+    @Test
+    public void deniedOnceShowsRationaleThenAsksAgain() {
+        ScriptedUser user = new ScriptedUser()
+                .answer(InMemoryPermissionBackend.Response.DENY, InMemoryPermissionBackend.Response.GRANT)
+                .dialog(true);
+        InMemoryPermissionBackend backend = new InMemoryPermissionBackend(R, user);
+        Result result = run(backend, CAMERA);
+
+        assertTrue(result.granted);
+        assertEquals(Arrays.asList(CAMERA, CAMERA), user.prompted);
+        assertEquals(Collections.singletonList(PermissionBackend.DIALOG_RATIONALE), user.dialogs);
+        assertEquals(0, backend.getSettingsDialogCount());
+    }
+
+    @Test
+    public void declinedRationaleReportsTheDeniedPermissions() {
+        ScriptedUser user = new ScriptedUser()
+                .answer(InMemoryPermissionBackend.Response.GRANT, InMemoryPermissionBackend.Response.DENY)
+                .dialog(false);
+        InMemoryPermissionBackend backend = new InMemoryPermissionBackend(R, user);
+        Result result = run(backend, CAMERA, RECORD_AUDIO);
+
+        assertFalse(result.granted);
+        assertEquals(Collections.singletonList(RECORD_AUDIO), result.denied);
+        assertEquals(1, backend.getPromptCount());
+        assertEquals(1, backend.getRationaleDialogCount());
+    }
+
+    @Test
+    public void deniedPermissionsKeepTheCallersOrder() {
+        ScriptedUser user = new ScriptedUser()
+                .answer(InMemoryPermissionBackend.Response.DENY, InMemoryPermissionBackend.Response.DENY)
+                .dialog(false);
+        InMemoryPermissionBackend backend = new InMemoryPermissionBackend(R, user);
+        Result result = run(backend, RECORD_AUDIO, CAMERA);
+
+        assertFalse(result.granted);
+        assertEquals(Arrays.asList(RECORD_AUDIO, CAMERA), result.denied);
+    }
+
+    @Test
+    public void permanentDenialLeadsToSettings() {
+        // from R on the second denial counts as "Don't ask again"
+        ScriptedUser user = new ScriptedUser()
+                .answer(InMemoryPermissionBackend.Response.DENY, InMemoryPermissionBackend.Response.DENY)
+                .dialog(true, true)
+                .settingsGrant(CAMERA);
+        InMemoryPermissionBackend backend = new InMemoryPermissionBackend(R, user);
+        Result result = run(backend, CAMERA);
+
+        assertTrue(result.granted);
+        assertEquals(2, backend.getPromptCount());
+        assertEquals(Arrays.asList(PermissionBackend.DIALOG_RATIONALE, PermissionBackend.DIALOG_SETTINGS), user.dialogs);
+        assertEquals(1, backend.getSettingsVisitCount());
+    }
+
+    @Test
+    public void knownPermanentDenialGoesStraightToSettings() {
+        ScriptedUser user = new ScriptedUser()
+                .answer(InMemoryPermissionBackend.Response.DENY, InMemoryPermissionBackend.Response.DENY)
+                .dialog(true, false);
+        InMemoryPermissionBackend backend = new InMemoryPermissionBackend(R, user);
+        Result first = run(backend, CAMERA);
+        assertFalse(first.granted);
+        assertEquals(Collections.singletonList(CAMERA), first.denied);
+
+        int prompts = backend.getPromptCount();
+        user.dialogs.clear();
+        user.dialog(false);
+        Result second = run(backend, CAMERA);
+
+        assertFalse(second.granted);
+        assertEquals(prompts, backend.getPromptCount());
+        assertEquals(Collections.singletonList(PermissionBackend.DIALOG_SETTINGS), user.dialogs);
+        assertEquals(0, backend.getSettingsVisitCount());
+    }
+
+    @Test
+    public void appUpdateLetsTheNextFlowRequestAgain() {
+        ScriptedUser user = new ScriptedUser()
+                .answer(InMemoryPermissionBackend.Response.DENY, InMemoryPermissionBackend.Response.DENY)
+                .dialog(true, false);
+        InMemoryPermissionBackend backend = new InMemoryPermissionBackend(R, user);
+        run(backend, CAMERA);
+
+        backend.updateApp();
+        int requests = backend.getRequestCount();
+        int prompts = backend.getPromptCount();
+        user.dialogs.clear();
+        user.dialog(false, false);
+        run(backend, CAMERA);
+
+        // the system answers the request without a dialog, which records the denial again
+        assertEquals(requests + 1, backend.getRequestCount());
+        assertEquals(prompts, backend.getPromptCount());
+        assertEquals(Collections.singletonList(PermissionBackend.DIALOG_SETTINGS), user.dialogs);
+
+        run(backend, CAMERA);
+        assertEquals(requests + 1, backend.getRequestCount());
+    }
+
+    @Test
+    public void settingsTripWithoutGrantLetsTheNextFlowRequest() {
+        ScriptedUser user = new ScriptedUser()
+                .answer(InMemoryPermissionBackend.Response.DENY, InMemoryPermissionBackend.Response.DENY)
+                .dialog(true, true);
+        InMemoryPermissionBackend backend = new InMemoryPermissionBackend(R, user);
+        Result first = run(backend, CAMERA);
+        assertFalse(first.granted);
+        assertEquals(1, backend.getSettingsVisitCount());
+
+        int requests = backend.getRequestCount();
+        user.dialog(false);
+        run(backend, CAMERA);
+        assertEquals(requests + 1, backend.getRequestCount());
+    }
+
+    @Test
+    public void backgroundLocationFollowsForegroundInSettingsFromR() {
+        ScriptedUser user = new ScriptedUser()
+                .answer(InMemoryPermissionBackend.Response.GRANT, InMemoryPermissionBackend.Response.GRANT)
+                .dialog(true)
+                .settingsGrant(BACKGROUND_LOCATION);
+        InMemoryPermissionBackend backend = new InMemoryPermissionBackend(R, user)
+                .declare(PermissionSet.of(BACKGROUND_LOCATION));
+        Result result = run(backend, BACKGROUND_LOCATION);
+
+        assertTrue(result.granted);
+        // foreground location is requested first, background location is only granted in settings
+        assertEquals(Arrays.asList(COARSE_LOCATION, FINE_LOCATION), sorted(user.prompted));
+        assertEquals(1, backend.getPromptCount());
+        assertEquals(Collections.singletonList(PermissionBackend.DIALOG_SETTINGS), user.dialogs);
+        assertEquals(1, backend.getSettingsVisitCount());
+    }
+
+    @Test
+    public void backgroundLocationStopsWhenForegroundIsDenied() {
+        ScriptedUser user = new ScriptedUser()
+                .answer(InMemoryPermissionBackend.Response.DENY, InMemoryPermissionBackend.Response.DENY)
+                .dialog(false);
+        InMemoryPermissionBackend backend = new InMemoryPermissionBackend(R, user);
+        Result result = run(backend, BACKGROUND_LOCATION);
+
+        assertFalse(result.granted);
+        assertFalse(user.prompted.contains(BACKGROUND_LOCATION));
+        assertEquals(0, backend.getSettingsVisitCount());
+    }
+
+    @Test
+    public void backgroundLocationSharesTheForegroundBatchOnQ() {
+        ScriptedUser user = new ScriptedUser().answer(InMemoryPermissionBackend.Response.GRANT,
+                InMemoryPermissionBackend.Response.GRANT, InMemoryPermissionBackend.Response.GRANT);
+        InMemoryPermissionBackend backend = new InMemoryPermissionBackend(Q, user);
+        Result result = run(backend, BACKGROUND_LOCATION);
+
+        assertTrue(result.granted);
+        assertEquals(Arrays.asList(BACKGROUND_LOCATION, COARSE_LOCATION, FINE_LOCATION), sorted(user.prompted));
+        assertEquals(1, backend.getPromptCount());
+        assertTrue(user.dialogs.isEmpty());
+    }
+
+    private static Result run(PermissionBackend backend, String... permissions) {
+        Result result = new Result();
+        PermissionFlowController controller = new PermissionFlowController(backend, PermissionSet.of(permissions), () -> result);
+        controller.requestPermissions();
+        // the in-memory backend answers synchronously
+        assertFalse(controller.isRunning());
+        assertTrue(result.delivered);
+        return result;
+    }
+
+    private static List<String> sorted(List<String> permissions) {
+        List<String> copy = new ArrayList<>(permissions);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    private static final class Result implements PermissionsCallback {
+        boolean delivered;
+        boolean granted;
+        List<String> denied;
+
+        @Override
+        public void onPermissionsGranted() {
+            assertFalse(delivered);
+            delivered = true;
+            granted = true;
+        }
+
+        @Override
+        public void onPermissionsDenied(List<String> deniedPermissions) {
+            assertFalse(delivered);
+            delivered = true;
+            denied = deniedPermissions;
+        }
+    }
+
+    // answers prompts and dialogs in order, a missing answer fails the test
+    private static final class ScriptedUser implements InMemoryPermissionBackend.User {
+        final Deque<InMemoryPermissionBackend.Response> answers = new ArrayDeque<>();
+        final Deque<Boolean> dialogAnswers = new ArrayDeque<>();
+        PermissionSet settingsGrant = PermissionSet.EMPTY;
+        final List<String> prompted = new ArrayList<>();
+        final List<Integer> dialogs = new ArrayList<>();
+
+        ScriptedUser answer(InMemoryPermissionBackend.Response... responses) {
+            answers.addAll(Arrays.asList(responses));
+            return this;
+        }
+
+        ScriptedUser dialog(Boolean... positive) {
+            dialogAnswers.addAll(Arrays.asList(positive));
+            return this;
+        }
+
+        ScriptedUser settingsGrant(String... permissions) {
+            settingsGrant = PermissionSet.of(permissions);
+            return this;
+        }
+
+        @Override
+        public InMemoryPermissionBackend.Response onSystemPrompt(String permission) {
+            prompted.add(permission);
+            return answers.remove();
+        }
+
+        @Override
+        public boolean onDialog(int kind) {
+            dialogs.add(kind);
+            return dialogAnswers.remove();
+        }
+
+        @Override
+        public PermissionSet onSettingsScreen(PermissionSet notGranted) {
+            return settingsGrant.intersect(notGranted);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.example.permissionsmanagementlib;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Encodes flow states and hands flows from one controller to the next, as an activity recreation does.
+ */
+public class PermissionFlowStateTest {
+
+    private static final String CAMERA = "android.permission.CAMERA";
+    private static final String RECORD_AUDIO = "android.permission.RECORD_AUDIO";
+    private static final String FINE_LOCATION = "android.permission.ACCESS_FINE_LOCATION";
+    private static final String COARSE_LOCATION = "android.permission.ACCESS_COARSE_LOCATION";
+    private static final String BACKGROUND_LOCATION = "android.permission.ACCESS_BACKGROUND_LOCATION";
+
+    private static final int R = 30;
+
+    @Test
+    public void encodedStateDecodesToTheSameFlow() {
+        PermissionRequestPlan plan = PermissionRequestPlanner.plan(PermissionSet.of(BACKGROUND_LOCATION, CAMERA), R,
+                checked -> checked);
+        PermissionFlowState state = new PermissionFlowState(PermissionFlowState.Phase.REQUEST, plan, 1,
+                PermissionSet.of(CAMERA, FINE_LOCATION), PermissionSet.of(COARSE_LOCATION));
+
+        PermissionFlowState decoded = decode(state);
+        assertNotNull(decoded);
+        assertEquals(PermissionFlowState.Phase.REQUEST, decoded.getPhase());
+        assertEquals(1, decoded.nextStep);
+        assertEquals(PermissionSet.of(CAMERA, FINE_LOCATION), decoded.getPending());
+        assertEquals(PermissionSet.of(COARSE_LOCATION), decoded.skippedPermanentlyDenied);
+        assertEquals(plan.getRequired(), decoded.plan.getRequired());
+        assertSameSteps(plan.getSteps(), decoded.plan.getSteps());
+        // the dropped permissions are not saved
+        assertEquals(PermissionSet.EMPTY, decoded.plan.getDropped());
+    }
+
+    @Test
+    public void namesOutgrowingOneMaskWord() {
+        PermissionSet.Builder many = new PermissionSet.Builder();
+        for (int i = 0; i < 70; i++) {
+            many.add("com.example.permission.FLOW_STATE_" + i);
+        }
+        PermissionSet permissions = many.build();
+        PermissionRequestPlan plan = PermissionRequestPlanner.plan(permissions, R, checked -> checked);
+        PermissionFlowState state = new PermissionFlowState(PermissionFlowState.Phase.RATIONALE_DIALOG, plan, 1,
+                permissions.without("com.example.permission.FLOW_STATE_3"), PermissionSet.EMPTY);
+
+        assertEquals(2L, state.getData()[4]);
+        PermissionFlowState decoded = decode(state);
+        assertNotNull(decoded);
+        assertEquals(PermissionFlowState.Phase.RATIONALE_DIALOG, decoded.getPhase());
+        assertEquals(permissions.without("com.example.permission.FLOW_STATE_3"), decoded.getPending());
+        assertEquals(permissions, decoded.plan.getRequired());
+        assertSameSteps(plan.getSteps(), decoded.plan.getSteps());
+    }
+
+    @Test
+    public void foreignDataIsRejected() {
+        PermissionRequestPlan plan = PermissionRequestPlanner.plan(PermissionSet.of(CAMERA, RECORD_AUDIO), R,
+                checked -> checked);
+        PermissionFlowState state = new PermissionFlowState(PermissionFlowState.Phase.REQUEST, plan, 1,
+                PermissionSet.of(CAMERA), PermissionSet.EMPTY);
+        String[] names = state.getNames();
+        long[] data = state.getData();
+        assertNotNull(PermissionFlowState.decode(names, data));
+
+        assertNull(PermissionFlowState.decode(null, data));
+        assertNull(PermissionFlowState.decode(names, null));
+        assertNull(PermissionFlowState.decode(names, new long[0]));
+        // version, phase, next step
+        assertNull(PermissionFlowState.decode(names, with(data, 0, 2L)));
+        assertNull(PermissionFlowState.decode(names, with(data, 1, PermissionFlowState.Phase.values().length)));
+        assertNull(PermissionFlowState.decode(names, with(data, 2, 0L)));
+        assertNull(PermissionFlowState.decode(names, with(data, 2, 2L)));
+        // step count and words that do not match the length
+        assertNull(PermissionFlowState.decode(names, with(data, 3, 2L)));
+        assertNull(PermissionFlowState.decode(names, with(data, 4, 2L)));
+        assertNull(PermissionFlowState.decode(names, Arrays.copyOf(data, data.length - 1)));
+        // a bit without a name, a missing name, an unknown step kind
+        assertNull(PermissionFlowState.decode(names, with(data, 5, data[5] | 1L << names.length)));
+        assertNull(PermissionFlowState.decode(new String[]{names[0], null}, data));
+        assertNull(PermissionFlowState.decode(names, with(data, 8, 99L)));
+        // a request waits on its permissions
+        assertNull(PermissionFlowState.decode(names, with(data, 6, 0L)));
+    }
+
+    @Test
+    public void onlyRunningFlowsHaveAState() {
+        HeldBackend backend = new HeldBackend();
+        Result result = new Result();
+        PermissionFlowController controller = controller(backend, result, CAMERA);
+        assertNull(controller.saveState());
+
+        controller.requestPermissions();
+        assertNotNull(controller.saveState());
+        controller.cancel();
+        assertNull(controller.saveState());
+
+        controller.requestPermissions();
+        backend.granted = PermissionSet.of(CAMERA);
+        backend.answerRequest(PermissionSet.EMPTY);
+        assertTrue(result.granted);
+        assertNull(controller.saveState());
+    }
+
+    @Test
+    public void resumedRequestWaitsForTheResult() {
+        HeldBackend before = new HeldBackend();
+        Result first = new Result();
+        PermissionFlowController destroyed = controller(before, first, CAMERA, RECORD_AUDIO);
+        destroyed.requestPermissions();
+        PermissionFlowState state = decode(destroyed.saveState());
+        destroyed.cancel();
+
+        assertEquals(PermissionFlowState.Phase.REQUEST, state.getPhase());
+        assertEquals(PermissionSet.of(CAMERA, RECORD_AUDIO), state.getPending());
+
+        HeldBackend after = new HeldBackend();
+        Result second = new Result();
+        PermissionFlowController recreated = controller(after, second, CAMERA, RECORD_AUDIO);
+        recreated.resume(state);
+        // handed to the backend, which joins the launch of the previous activity instead of starting another
+        assertEquals(PermissionSet.of(CAMERA, RECORD_AUDIO), after.requested);
+
+        after.granted = PermissionSet.of(CAMERA, RECORD_AUDIO);
+        after.answerRequest(PermissionSet.EMPTY);
+        assertTrue(second.granted);
+        assertFalse(first.delivered);
+        assertFalse(recreated.isRunning());
+    }
+
+    @Test
+    public void resumedRationaleIsShownAgain() {
+        HeldBackend before = new HeldBackend();
+        before.rationale = PermissionSet.of(CAMERA);
+        PermissionFlowController destroyed = controller(before, new Result(), CAMERA);
+        destroyed.requestPermissions();
+        before.answerRequest(PermissionSet.of(CAMERA));
+        assertEquals(PermissionBackend.DIALOG_RATIONALE, before.dialogKind);
+        PermissionFlowState state = decode(destroyed.saveState());
+        destroyed.cancel();
+
+        HeldBackend after = new HeldBackend();
+        after.rationale = PermissionSet.of(CAMERA);
+        Result result = new Result();
+        PermissionFlowController recreated = controller(after, result, CAMERA);
+        recreated.resume(state);
+        assertEquals(PermissionBackend.DIALOG_RATIONALE, after.dialogKind);
+
+        after.onPositive.run();
+        assertEquals(PermissionSet.of(CAMERA), after.requested);
+        after.answerRequest(PermissionSet.of(CAMERA));
+        after.onNegative.run();
+        assertFalse(result.granted);
+        assertEquals(Collections.singletonList(CAMERA), result.denied);
+    }
+
+    @Test
+    public void resumedSettingsTripWaitsForTheReturn() {
+        HeldBackend before = new HeldBackend();
+        PermissionFlowController destroyed = controller(before, new Result(), CAMERA);
+        destroyed.requestPermissions();
+        // no rationale after the denial, the flow offers the settings screen
+        before.answerRequest(PermissionSet.of(CAMERA));
+        assertEquals(PermissionBackend.DIALOG_SETTINGS, before.dialogKind);
+        assertEquals(PermissionFlowState.Phase.SETTINGS_DIALOG, decode(destroyed.saveState()).getPhase());
+        before.onPositive.run();
+        assertNotNull(before.settingsListener);
+        PermissionFlowState state = decode(destroyed.saveState());
+        destroyed.cancel();
+        assertEquals(PermissionFlowState.Phase.SETTINGS, state.getPhase());
+
+        HeldBackend after = new HeldBackend();
+        Result result = new Result();
+        PermissionFlowController recreated = controller(after, result, CAMERA);
+        recreated.resume(state);
+        assertTrue(after.resumedSettings);
+        assertEquals(-1, after.dialogKind);
+
+        after.granted = PermissionSet.of(CAMERA);
+        after.settingsListener.onSettingsResult();
+        assertTrue(result.granted);
+    }
+
+    private static PermissionFlowState decode(PermissionFlowState state) {
+        return PermissionFlowState.decode(state.getNames(), state.getData());
+    }
+
+    private static long[] with(long[] data, int index, long value) {
+        long[] copy = data.clone();
+        copy[index] = value;
+        return copy;
+    }
+
+    private static void assertSameSteps(List<PermissionRequestPlan.Step> expected, List<PermissionRequestPlan.Step> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).kind, actual.get(i).kind);
+            assertEquals(expected.get(i).permissions, actual.get(i).permissions);
+            assertEquals(expected.get(i).prerequisites, actual.get(i).prerequisites);
+        }
+    }
+
+    private static PermissionFlowController controller(PermissionBackend backend, Result result, String... permissions) {
+        return new PermissionFlowController(backend, PermissionSet.of(permissions), () -> result);
+    }
+
+    private static final class Result implements PermissionsCallback {
+        boolean delivered;
+        boolean granted;
+        List<String> denied;
+
+        @Override
+        public void onPermissionsGranted() {
+            assertFalse(delivered);
+            delivered = true;
+            granted = true;
+        }
+
+        @Override
+        public void onPermissionsDenied(List<String> deniedPermissions) {
+            assertFalse(delivered);
+            delivered = true;
+            denied = deniedPermissions;
+        }
+    }
+
+    // keeps requests, dialogs and settings trips open until the test answers them
+    private static final class HeldBackend implements PermissionBackend {
+        PermissionSet granted = PermissionSet.EMPTY;
+        PermissionSet rationale = PermissionSet.EMPTY;
+
+        PermissionSet requested;
+        RequestListener requestListener;
+        int dialogKind = -1;
+        Runnable onPositive;
+        Runnable onNegative;
+        SettingsListener settingsListener;
+        boolean resumedSettings;
+
+        void answerRequest(PermissionSet deniedPermissions) {
+            RequestListener listener = requestListener;
+            requestListener = null;
+            listener.onRequestResult(deniedPermissions);
+        }
+
+        @Override
+        public int getSdkInt() {
+            return R;
+        }
+
+        @Override
+        public int getTargetSdkInt() {
+            return R;
+        }
+
+        @Override
+        public boolean isGranted(String permission) {
+            return granted.contains(permission);
+        }
+
+        @Override
+        public PermissionSet denied(PermissionSet permissions) {
+            return permissions.minus(granted);
+        }
+
+        @Override
+        public boolean shouldShowRationale(String permission) {
+            return rationale.contains(permission);
+        }
+
+        @Override
+        public void request(PermissionSet permissions, RequestListener listener) {
+            requested = permissions;
+            requestListener = listener;
+        }
+
+        @Override
+        public void openSettings(SettingsListener listener) {
+            settingsListener = listener;
+        }
+
+        @Override
+        public void resumeSettings(SettingsListener listener) {
+            resumedSettings = true;
+            settingsListener = listener;
+        }
+
+        @Override
+        public void showDialog(int kind, String title, CharSequence message,
+                               String positiveText, Runnable onPositive,
+                               String negativeText, Runnable onNegative,
+                               boolean cancelable) {
+            dialogKind = kind;
+            this.onPositive = onPositive;
+            this.onNegative = onNegative;
+        }
+
+        @Override
+        public PermissionSet getRecordedPermanentlyDenied(PermissionSet permissions) {
+            return PermissionSet.EMPTY;
+        }
+
+        @Override
+        public void recordGranted(PermissionSet permissions) {
+        }
+
+        @Override
+        public void recordRequestable(PermissionSet permissions) {
+        }
+
+        @Override
+        public PermissionLabels getLabels() {
+            return null;
+        }
+
+        @Override
+        public CharSequence getAppName() {
+            return "App";
+        }
+    }
+}
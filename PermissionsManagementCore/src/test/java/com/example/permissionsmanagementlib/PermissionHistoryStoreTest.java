@@ -0,0 +1,190 @@
+package com.example.permissionsmanagementlib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes a history, waits for the background thread and reads the file back into a new store.
+ */
+public class PermissionHistoryStoreTest {
+
+    private static final String CAMERA = "android.permission.CAMERA";
+    private static final String RECORD_AUDIO = "android.permission.RECORD_AUDIO";
+    private static final String READ_CONTACTS = "android.permission.READ_CONTACTS";
+
+    private static final long VERSION_1 = 1L;
+    private static final long VERSION_2 = 2L;
+
+    // magic, format version and app version
+    private static final int HEADER_SIZE = 14;
+    // name length, outcome, flags, denial count, first and last timestamp
+    private static final int RECORD_OVERHEAD = 2 + 1 + 1 + 4 + 8 + 8;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("permission-history", ".bin");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void entriesSurviveAReload() throws Exception {
+        PermissionHistoryStore store = PermissionHistoryStore.reload(file, VERSION_1);
+        store.recordGranted(CAMERA);
+        store.recordDenied(RECORD_AUDIO, DenialClassifier.Kind.DENIED, true);
+        store.recordDenied(READ_CONTACTS, DenialClassifier.Kind.DENIED, true);
+        store.recordDenied(READ_CONTACTS, DenialClassifier.Kind.DENIED_PERMANENTLY, false);
+        store.awaitWrites();
+
+        PermissionHistoryStore reloaded = PermissionHistoryStore.reload(file, VERSION_1);
+        assertEquals(PermissionHistoryStore.Outcome.GRANTED, reloaded.get(CAMERA).lastOutcome);
+        assertEquals(PermissionHistoryStore.Outcome.DENIED, reloaded.get(RECORD_AUDIO).lastOutcome);
+        assertTrue(reloaded.get(RECORD_AUDIO).rationaleShown);
+        assertEquals(2, reloaded.get(READ_CONTACTS).denialCount);
+        assertFalse(reloaded.get(READ_CONTACTS).rationaleShown);
+        assertEquals(store.get(READ_CONTACTS).firstRequestedAt, reloaded.get(READ_CONTACTS).firstRequestedAt);
+        // a restart still skips the request
+        assertTrue(reloaded.isPermanentlyDenied(READ_CONTACTS));
+        assertEquals(PermissionSet.of(READ_CONTACTS),
+                reloaded.getPermanentlyDenied(PermissionSet.of(CAMERA, RECORD_AUDIO, READ_CONTACTS)));
+    }
+
+    @Test
+    public void requestableDowngradeIsPersisted() throws Exception {
+        PermissionHistoryStore store = PermissionHistoryStore.reload(file, VERSION_1);
+        store.recordDenied(CAMERA, DenialClassifier.Kind.DENIED_PERMANENTLY, false);
+        store.recordRequestable(CAMERA);
+        store.awaitWrites();
+
+        PermissionHistoryStore reloaded = PermissionHistoryStore.reload(file, VERSION_1);
+        assertEquals(PermissionHistoryStore.Outcome.DENIED, reloaded.get(CAMERA).lastOutcome);
+        assertEquals(1, reloaded.get(CAMERA).denialCount);
+    }
+
+    @Test
+    public void anotherAppVersionDowngradesPermanentDenials() throws Exception {
+        PermissionHistoryStore store = PermissionHistoryStore.reload(file, VERSION_1);
+        store.recordGranted(CAMERA);
+        store.recordDenied(READ_CONTACTS, DenialClassifier.Kind.DENIED_PERMANENTLY, false);
+        store.awaitWrites();
+
+        PermissionHistoryStore updated = PermissionHistoryStore.reload(file, VERSION_2);
+        assertFalse(updated.isPermanentlyDenied(READ_CONTACTS));
+        assertEquals(PermissionHistoryStore.Outcome.DENIED, updated.get(READ_CONTACTS).lastOutcome);
+        assertEquals(1, updated.get(READ_CONTACTS).denialCount);
+        assertEquals(PermissionHistoryStore.Outcome.GRANTED, updated.get(CAMERA).lastOutcome);
+
+        // the file is rewritten for the new version, a permanent denial of it survives the next start
+        updated.recordDenied(READ_CONTACTS, DenialClassifier.Kind.DENIED_PERMANENTLY, false);
+        updated.awaitWrites();
+        assertTrue(PermissionHistoryStore.reload(file, VERSION_2).isPermanentlyDenied(READ_CONTACTS));
+        // going back to the older version expires it as well
+        PermissionHistoryStore downgraded = PermissionHistoryStore.reload(file, VERSION_1);
+        assertFalse(downgraded.isPermanentlyDenied(READ_CONTACTS));
+        // the rewrite for the older version must not outlive the test's file
+        downgraded.awaitWrites();
+    }
+
+    @Test
+    public void storeWithoutAppVersionKeepsTheRecordedOne() throws Exception {
+        PermissionHistoryStore store = PermissionHistoryStore.reload(file, VERSION_1);
+        store.recordDenied(CAMERA, DenialClassifier.Kind.DENIED_PERMANENTLY, false);
+        store.awaitWrites();
+
+        PermissionHistoryStore unversioned = PermissionHistoryStore.reload(file, PermissionHistoryStore.NO_APP_VERSION);
+        assertTrue(unversioned.isPermanentlyDenied(CAMERA));
+        unversioned.recordGranted(RECORD_AUDIO);
+        unversioned.awaitWrites();
+        assertTrue(PermissionHistoryStore.reload(file, VERSION_1).isPermanentlyDenied(CAMERA));
+    }
+
+    @Test
+    public void supersededRecordsAreCompactedAway() throws Exception {
+        PermissionHistoryStore store = PermissionHistoryStore.reload(file, VERSION_1);
+        // enough superseded records to start a compaction by themselves
+        for (int i = 0; i < 64; i++) {
+            store.recordDenied(CAMERA, DenialClassifier.Kind.DENIED, true);
+        }
+        store.awaitWrites();
+        assertEquals(HEADER_SIZE + recordSize(CAMERA), file.length());
+
+        store.recordGranted(RECORD_AUDIO);
+        store.awaitWrites();
+        assertEquals(HEADER_SIZE + recordSize(CAMERA) + recordSize(RECORD_AUDIO), file.length());
+
+        PermissionHistoryStore reloaded = PermissionHistoryStore.reload(file, VERSION_1);
+        assertEquals(64, reloaded.get(CAMERA).denialCount);
+        assertEquals(PermissionHistoryStore.Outcome.GRANTED, reloaded.get(RECORD_AUDIO).lastOutcome);
+        assertEquals(2, reloaded.snapshot().size());
+    }
+
+    @Test
+    public void explicitCompactionKeepsTheLatestEntries() throws Exception {
+        PermissionHistoryStore store = PermissionHistoryStore.reload(file, VERSION_1);
+        store.recordDenied(CAMERA, DenialClassifier.Kind.DENIED, true);
+        store.recordDenied(CAMERA, DenialClassifier.Kind.DENIED_PERMANENTLY, false);
+        store.recordGranted(RECORD_AUDIO);
+        store.compact().get();
+        assertEquals(HEADER_SIZE + recordSize(CAMERA) + recordSize(RECORD_AUDIO), file.length());
+
+        PermissionHistoryStore reloaded = PermissionHistoryStore.reload(file, VERSION_1);
+        assertTrue(reloaded.isPermanentlyDenied(CAMERA));
+        assertEquals(2, reloaded.get(CAMERA).denialCount);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void truncatedTrailingRecordIsDropped() throws Exception {
+        PermissionHistoryStore store = PermissionHistoryStore.reload(file, VERSION_1);
+        store.recordGranted(CAMERA);
+        store.recordDenied(RECORD_AUDIO, DenialClassifier.Kind.DENIED, true);
+        store.awaitWrites();
+        long complete = HEADER_SIZE + recordSize(CAMERA);
+        truncate(file.length() - 5);
+
+        PermissionHistoryStore reloaded = PermissionHistoryStore.reload(file, VERSION_1);
+        assertEquals(PermissionHistoryStore.Outcome.GRANTED, reloaded.get(CAMERA).lastOutcome);
+        assertNull(reloaded.get(RECORD_AUDIO));
+        reloaded.awaitWrites();
+        assertEquals(complete, file.length());
+    }
+
+    @Test
+    public void clearEmptiesTheFile() throws Exception {
+        PermissionHistoryStore store = PermissionHistoryStore.reload(file, VERSION_1);
+        store.recordDenied(CAMERA, DenialClassifier.Kind.DENIED_PERMANENTLY, false);
+        store.clear();
+        store.awaitWrites();
+
+        assertTrue(PermissionHistoryStore.reload(file, VERSION_1).snapshot().isEmpty());
+        assertEquals(HEADER_SIZE, file.length());
+    }
+
+    private static int recordSize(String permission) {
+        return RECORD_OVERHEAD + permission.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private void truncate(long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+    }
+}
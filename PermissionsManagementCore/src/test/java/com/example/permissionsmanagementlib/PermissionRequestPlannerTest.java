@@ -0,0 +1,173 @@
+package com.example.permissionsmanagementlib;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * One row per SDK branch of the planner's rules. Steps are written as "KIND A,B" with the permissions' short names
+ * sorted, "-" for none.
+ */
+public class PermissionRequestPlannerTest {
+
+    private static final String PREFIX = "android.permission.";
+
+    private static final int P = 28;
+    private static final int Q = 29;
+    private static final int R = 30;
+    private static final int S = 31;
+    private static final int S_V2 = 32;
+    private static final int TIRAMISU = 33;
+    private static final int UPSIDE_DOWN_CAKE = 34;
+
+    // sdk, target sdk, requested, granted, steps, dropped
+    private static final Object[][] CASES = {
+            // background location: part of the foreground grant before Q, same batch on Q, settings from R on
+            {P, P, "ACCESS_BACKGROUND_LOCATION", "", "REQUEST ACCESS_COARSE_LOCATION,ACCESS_FINE_LOCATION", "ACCESS_BACKGROUND_LOCATION"},
+            {Q, Q, "ACCESS_BACKGROUND_LOCATION", "",
+                    "REQUEST ACCESS_BACKGROUND_LOCATION,ACCESS_COARSE_LOCATION,ACCESS_FINE_LOCATION", "-"},
+            {R, R, "ACCESS_BACKGROUND_LOCATION", "",
+                    "REQUEST ACCESS_COARSE_LOCATION,ACCESS_FINE_LOCATION | SETTINGS ACCESS_BACKGROUND_LOCATION", "-"},
+            {R, R, "ACCESS_BACKGROUND_LOCATION", "ACCESS_FINE_LOCATION", "SETTINGS ACCESS_BACKGROUND_LOCATION", "-"},
+            {R, R, "ACCESS_BACKGROUND_LOCATION CAMERA", "",
+                    "REQUEST ACCESS_COARSE_LOCATION,ACCESS_FINE_LOCATION,CAMERA | SETTINGS ACCESS_BACKGROUND_LOCATION", "-"},
+            {S, S, "ACCESS_BACKGROUND_LOCATION ACCESS_FINE_LOCATION", "",
+                    "REQUEST ACCESS_COARSE_LOCATION,ACCESS_FINE_LOCATION | SETTINGS ACCESS_BACKGROUND_LOCATION", "-"},
+            // fine location needs coarse location in the same request from S on
+            {R, R, "ACCESS_FINE_LOCATION", "", "REQUEST ACCESS_FINE_LOCATION", "-"},
+            {S, S, "ACCESS_FINE_LOCATION", "", "REQUEST ACCESS_COARSE_LOCATION,ACCESS_FINE_LOCATION", "-"},
+            {S, S, "ACCESS_FINE_LOCATION", "ACCESS_COARSE_LOCATION", "REQUEST ACCESS_FINE_LOCATION", "-"},
+            // background body sensors: own request after the foreground one
+            {S_V2, S_V2, "BODY_SENSORS_BACKGROUND", "", "REQUEST BODY_SENSORS", "BODY_SENSORS_BACKGROUND"},
+            {TIRAMISU, TIRAMISU, "BODY_SENSORS_BACKGROUND", "",
+                    "REQUEST BODY_SENSORS | REQUEST BODY_SENSORS_BACKGROUND", "-"},
+            {TIRAMISU, TIRAMISU, "BODY_SENSORS_BACKGROUND", "BODY_SENSORS", "REQUEST BODY_SENSORS_BACKGROUND", "-"},
+            // notifications need no request before TIRAMISU
+            {S_V2, S_V2, "POST_NOTIFICATIONS", "", "-", "POST_NOTIFICATIONS"},
+            {TIRAMISU, S_V2, "POST_NOTIFICATIONS", "", "REQUEST POST_NOTIFICATIONS", "-"},
+            {TIRAMISU, TIRAMISU, "POST_NOTIFICATIONS CAMERA", "", "REQUEST CAMERA,POST_NOTIFICATIONS", "-"},
+            // media and storage follow the lower of the SDK and the target SDK
+            {TIRAMISU, TIRAMISU, "READ_MEDIA_IMAGES", "", "REQUEST READ_MEDIA_IMAGES", "-"},
+            {TIRAMISU, S_V2, "READ_MEDIA_IMAGES", "", "REQUEST READ_EXTERNAL_STORAGE", "READ_MEDIA_IMAGES"},
+            {S_V2, TIRAMISU, "READ_MEDIA_IMAGES READ_MEDIA_VIDEO", "", "REQUEST READ_EXTERNAL_STORAGE",
+                    "READ_MEDIA_IMAGES,READ_MEDIA_VIDEO"},
+            {TIRAMISU, TIRAMISU, "READ_EXTERNAL_STORAGE", "", "-", "READ_EXTERNAL_STORAGE"},
+            {UPSIDE_DOWN_CAKE, S_V2, "READ_EXTERNAL_STORAGE", "", "REQUEST READ_EXTERNAL_STORAGE", "-"},
+            {TIRAMISU, TIRAMISU, "READ_MEDIA_VISUAL_USER_SELECTED", "", "-", "READ_MEDIA_VISUAL_USER_SELECTED"},
+            {UPSIDE_DOWN_CAKE, UPSIDE_DOWN_CAKE, "READ_MEDIA_VISUAL_USER_SELECTED", "",
+                    "REQUEST READ_MEDIA_VISUAL_USER_SELECTED", "-"},
+            {R, Q, "WRITE_EXTERNAL_STORAGE", "", "REQUEST WRITE_EXTERNAL_STORAGE", "-"},
+            {R, R, "WRITE_EXTERNAL_STORAGE", "", "-", "WRITE_EXTERNAL_STORAGE"},
+            // nearby device permissions stand in for location from their SDK on
+            {R, R, "BLUETOOTH_SCAN BLUETOOTH_CONNECT", "", "REQUEST ACCESS_FINE_LOCATION", "BLUETOOTH_CONNECT,BLUETOOTH_SCAN"},
+            {S, S, "BLUETOOTH_SCAN BLUETOOTH_CONNECT", "", "REQUEST BLUETOOTH_CONNECT,BLUETOOTH_SCAN", "-"},
+            {S_V2, S_V2, "NEARBY_WIFI_DEVICES", "", "REQUEST ACCESS_COARSE_LOCATION,ACCESS_FINE_LOCATION",
+                    "NEARBY_WIFI_DEVICES"},
+            {TIRAMISU, TIRAMISU, "NEARBY_WIFI_DEVICES", "", "REQUEST NEARBY_WIFI_DEVICES", "-"},
+            {P, P, "ACTIVITY_RECOGNITION ACCESS_MEDIA_LOCATION", "", "-", "ACCESS_MEDIA_LOCATION,ACTIVITY_RECOGNITION"},
+            {Q, Q, "ACTIVITY_RECOGNITION ACCESS_MEDIA_LOCATION", "",
+                    "REQUEST ACCESS_MEDIA_LOCATION,ACTIVITY_RECOGNITION", "-"},
+            // permissions without a rule
+            {P, P, "CAMERA RECORD_AUDIO", "", "REQUEST CAMERA,RECORD_AUDIO", "-"},
+            {R, R, "CAMERA RECORD_AUDIO", "CAMERA RECORD_AUDIO", "-", "-"},
+    };
+
+    @Test
+    public void plansEverySdkBranch() {
+        List<String> failures = new ArrayList<>();
+        for (Object[] row : CASES) {
+            int sdk = (Integer) row[0];
+            int targetSdk = (Integer) row[1];
+            PermissionSet granted = permissions((String) row[3]);
+            PermissionRequestPlan plan = PermissionRequestPlanner.plan(permissions((String) row[2]), sdk, targetSdk,
+                    checked -> checked.minus(granted));
+            String steps = describe(plan.getSteps());
+            String dropped = names(plan.getDropped());
+            if (!steps.equals(row[4]) || !dropped.equals(row[5])) {
+                failures.add("sdk " + sdk + ", target " + targetSdk + ", " + row[2] + " granted [" + row[3] + "]: "
+                        + steps + " dropped " + dropped + ", expected " + row[4] + " dropped " + row[5]);
+            }
+        }
+        assertEquals(Collections.emptyList(), failures);
+    }
+
+    @Test
+    public void settingsStepWaitsForAForegroundGrant() {
+        PermissionRequestPlan plan = PermissionRequestPlanner.plan(permissions("ACCESS_BACKGROUND_LOCATION"), R,
+                checked -> checked);
+
+        assertEquals(permissions("ACCESS_BACKGROUND_LOCATION"), plan.getRequired());
+        assertEquals(PermissionSet.EMPTY, plan.getSteps().get(0).prerequisites);
+        assertEquals(permissions("ACCESS_FINE_LOCATION ACCESS_COARSE_LOCATION"), plan.getSteps().get(1).prerequisites);
+    }
+
+    @Test
+    public void replacementsBecomeRequired() {
+        PermissionRequestPlan plan = PermissionRequestPlanner.plan(permissions("READ_MEDIA_AUDIO"), TIRAMISU, S_V2,
+                checked -> checked);
+
+        assertEquals(permissions("READ_EXTERNAL_STORAGE"), plan.getRequired());
+        assertEquals(permissions("READ_MEDIA_AUDIO"), plan.getDropped());
+    }
+
+    @Test
+    public void grantStatesAreCheckedInOneCall() {
+        List<PermissionSet> checks = new ArrayList<>();
+        PermissionRequestPlan plan = PermissionRequestPlanner.plan(permissions("ACCESS_BACKGROUND_LOCATION CAMERA"), S,
+                checked -> {
+                    checks.add(checked);
+                    return checked;
+                });
+
+        assertEquals(2, plan.getSteps().size());
+        assertEquals(Collections.singletonList(
+                permissions("ACCESS_BACKGROUND_LOCATION CAMERA ACCESS_FINE_LOCATION ACCESS_COARSE_LOCATION")), checks);
+    }
+
+    @Test
+    public void targetSdkDefaultsToTheDevicesSdk() {
+        PermissionSet media = permissions("READ_MEDIA_IMAGES");
+        assertEquals(describe(PermissionRequestPlanner.plan(media, TIRAMISU, TIRAMISU, checked -> checked).getSteps()),
+                describe(PermissionRequestPlanner.plan(media, TIRAMISU, checked -> checked).getSteps()));
+    }
+
+    private static PermissionSet permissions(String shortNames) {
+        PermissionSet.Builder builder = new PermissionSet.Builder();
+        for (String name : shortNames.split(" ")) {
+            if (!name.isEmpty()) {
+                builder.add(PREFIX + name);
+            }
+        }
+        return builder.build();
+    }
+
+    private static String describe(List<PermissionRequestPlan.Step> steps) {
+        if (steps.isEmpty()) {
+            return "-";
+        }
+        StringBuilder description = new StringBuilder();
+        for (PermissionRequestPlan.Step step : steps) {
+            if (description.length() > 0) {
+                description.append(" | ");
+            }
+            description.append(step.kind).append(' ').append(names(step.permissions));
+        }
+        return description.toString();
+    }
+
+    private static String names(PermissionSet permissions) {
+        if (permissions.isEmpty()) {
+            return "-";
+        }
+        List<String> names = new ArrayList<>();
+        for (String permission : permissions) {
+            names.add(permission.substring(PREFIX.length()));
+        }
+        Collections.sort(names);
+        return String.join(",", names);
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.permissionsmanagementlib;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PermissionSetTest {
+
+    private static final String CAMERA = "android.permission.CAMERA";
+    private static final String RECORD_AUDIO = "android.permission.RECORD_AUDIO";
+
+    // app permissions registered until ids reach past the inline word and into the second overflow word
+    private static final String[] CUSTOM = customPermissions(140);
+
+    @Test
+    public void inlineAndOverflowIdsAreSeparateWords() {
+        int overflowId = PermissionRegistry.idOf(CUSTOM[CUSTOM.length - 1]);
+        assertTrue(overflowId >= 128);
+
+        PermissionSet set = PermissionSet.of(CAMERA, CUSTOM[CUSTOM.length - 1]);
+        assertEquals(2, set.size());
+        assertTrue(set.contains(CAMERA));
+        assertTrue(set.containsId(overflowId));
+        assertFalse(set.containsId(overflowId - 64));
+        assertFalse(set.containsId(overflowId + 64));
+    }
+
+    @Test
+    public void nextIdWalksAcrossTheBoundary() {
+        PermissionSet set = PermissionSet.of(CAMERA, id63(), id64(), CUSTOM[CUSTOM.length - 1]);
+        List<Integer> ids = new ArrayList<>();
+        for (int id = set.nextId(0); id >= 0; id = set.nextId(id + 1)) {
+            ids.add(id);
+        }
+        assertEquals(Arrays.asList(PermissionRegistry.idOf(CAMERA), 63, 64,
+                PermissionRegistry.idOf(CUSTOM[CUSTOM.length - 1])), ids);
+        assertEquals(63, set.nextId(PermissionRegistry.idOf(CAMERA) + 1));
+        assertEquals(64, set.nextId(64));
+        assertEquals(-1, set.nextId(PermissionRegistry.idOf(CUSTOM[CUSTOM.length - 1]) + 1));
+        assertEquals(-1, set.nextId(1000));
+        assertEquals(-1, PermissionSet.EMPTY.nextId(0));
+    }
+
+    @Test
+    public void setOperationsSpanBothForms() {
+        PermissionSet inline = PermissionSet.of(CAMERA, RECORD_AUDIO, id63());
+        PermissionSet mixed = PermissionSet.of(RECORD_AUDIO, id64(), CUSTOM[CUSTOM.length - 1]);
+
+        PermissionSet union = inline.union(mixed);
+        assertEquals(5, union.size());
+        assertTrue(union.containsAll(inline));
+        assertTrue(union.containsAll(mixed));
+
+        assertEquals(PermissionSet.of(RECORD_AUDIO), inline.intersect(mixed));
+        assertEquals(PermissionSet.of(RECORD_AUDIO), mixed.intersect(inline));
+        assertEquals(PermissionSet.of(CAMERA, id63()), inline.minus(mixed));
+        assertEquals(PermissionSet.of(id64(), CUSTOM[CUSTOM.length - 1]), mixed.minus(inline));
+        assertEquals(PermissionSet.EMPTY, union.minus(inline).minus(mixed));
+        assertTrue(union.minus(inline).minus(mixed).isEmpty());
+    }
+
+    @Test
+    public void operationsReturnAnOperandWhenTheResultEqualsIt() {
+        PermissionSet small = PermissionSet.of(CAMERA, id64());
+        PermissionSet large = PermissionSet.of(CAMERA, RECORD_AUDIO, id64());
+        PermissionSet other = PermissionSet.of(id63());
+
+        assertSame(large, small.union(large));
+        assertSame(large, large.union(small));
+        assertSame(small, small.intersect(large));
+        assertSame(small, large.intersect(small));
+        assertSame(small, small.minus(other));
+    }
+
+    @Test
+    public void emptiedOverflowEqualsTheInlineForm() {
+        PermissionSet inline = PermissionSet.of(CAMERA);
+        PermissionSet spilled = PermissionSet.of(CAMERA, id64()).without(id64());
+
+        assertEquals(inline, spilled);
+        assertEquals(inline.hashCode(), spilled.hashCode());
+        assertFalse(spilled.containsAny(PermissionSet.of(id64())));
+        assertSame(PermissionSet.EMPTY, PermissionSet.of(id64()).minus(PermissionSet.of(id64())));
+        assertEquals(PermissionSet.EMPTY, PermissionSet.of(CUSTOM[CUSTOM.length - 1]).intersect(PermissionSet.of(id64())));
+    }
+
+    @Test
+    public void equalityIgnoresTheListingOrder() {
+        PermissionSet forward = PermissionSet.of(CAMERA, id64());
+        PermissionSet backward = PermissionSet.of(id64(), CAMERA);
+
+        assertEquals(forward, backward);
+        assertEquals(forward.hashCode(), backward.hashCode());
+        assertNotEquals(forward, PermissionSet.of(CAMERA));
+        assertArrayEquals(new String[]{id64(), CAMERA}, backward.toArray());
+        assertEquals(Arrays.asList(CAMERA, id64()), forward.toList());
+    }
+
+    @Test
+    public void unknownNamesAreRegisteredByOf() {
+        String unknown = "com.example.permissionsmanagementlib.test.UNKNOWN";
+        assertFalse(PermissionSet.of(CAMERA).contains(unknown));
+        assertEquals(-1, PermissionRegistry.find(unknown));
+
+        PermissionSet set = PermissionSet.of(unknown, CAMERA);
+        assertTrue(PermissionRegistry.find(unknown) >= 0);
+        assertTrue(set.contains(unknown));
+        assertEquals(Arrays.asList(unknown, CAMERA), set.toList());
+        assertEquals(unknown, PermissionRegistry.nameOf(PermissionRegistry.find(unknown)));
+    }
+
+    @Test
+    public void duplicatesCountOnce() {
+        PermissionSet set = PermissionSet.of(CAMERA, id64(), CAMERA, id64());
+        assertEquals(2, set.size());
+        assertEquals(Arrays.asList(CAMERA, id64()), set.toList());
+    }
+
+    @Test
+    public void inOrderListsMissingNamesLastInIdOrder() {
+        PermissionSet set = PermissionSet.of(CAMERA, RECORD_AUDIO, id64());
+        PermissionSet ordered = set.inOrder(Arrays.asList(id64(), "android.permission.READ_CONTACTS"));
+
+        assertEquals(set, ordered);
+        assertEquals(id64(), ordered.toArray()[0]);
+        assertEquals(3, ordered.toArray().length);
+        assertSame(set, set.inOrder(set));
+    }
+
+    @Test
+    public void returnedCollectionsAreOwnedByTheCaller() {
+        PermissionSet set = PermissionSet.of(CAMERA, RECORD_AUDIO);
+        set.toArray()[0] = null;
+        set.toList().clear();
+        assertEquals(Arrays.asList(CAMERA, RECORD_AUDIO), set.toList());
+    }
+
+    @Test
+    public void builderIsReusableAfterClear() {
+        PermissionSet.Builder builder = new PermissionSet.Builder().add(CAMERA).add(id64());
+        PermissionSet first = builder.build();
+        assertTrue(builder.clear().isEmpty());
+        assertSame(PermissionSet.EMPTY, builder.build());
+        assertEquals(first, builder.addAll(first).build());
+        assertEquals(2, first.size());
+    }
+
+    private static String id63() {
+        return PermissionRegistry.nameOf(63);
+    }
+
+    private static String id64() {
+        return PermissionRegistry.nameOf(64);
+    }
+
+    private static String[] customPermissions(int minIds) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; PermissionRegistry.size() < minIds; i++) {
+            String name = "com.example.permissionsmanagementlib.test.PERMISSION_" + i;
+            PermissionRegistry.idOf(name);
+            names.add(name);
+        }
+        if (names.isEmpty()) {
+            names.add(PermissionRegistry.nameOf(minIds - 1));
+        }
+        return names.toArray(new String[0]);
+    }
+}
@@ -65,6 +65,7 @@ afterEvaluate {
 
 dependencies {
 
+    api(project(":PermissionsManagementCore"))
     implementation(libs.appcompat)
     implementation(libs.material)
     testImplementation(libs.junit)
@@ -0,0 +1,100 @@
+package com.example.permissionsmanagementlib;
+
+import android.Manifest;
+import android.app.AlertDialog;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Recreates an activity with managers, a shown dialog and a toast many times, then checks that nothing of the
+ * destroyed instances survives a GC: not the activities, their launchers and dialogs, nor the entries of the
+ * static hub and toast presenter maps.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ActivityRecreationLeakTest {
+
+    private static final int RECREATIONS = 100;
+    private static final long GC_TIMEOUT_MILLIS = 10_000L;
+
+    private static final String[] PERMISSIONS = {Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO};
+
+    @Test
+    public void recreatedActivitiesAreCollected() {
+        List<WeakReference<Object>> references = new ArrayList<>();
+        try (ActivityScenario<PermissionTestActivity> scenario = ActivityScenario.launch(PermissionTestActivity.class)) {
+            for (int i = 0; i < RECREATIONS; i++) {
+                scenario.onActivity(activity -> {
+                    GeneralPermissionManager general = new GeneralPermissionManager(activity, PERMISSIONS);
+                    BackgroundLocationPermissionManager background = new BackgroundLocationPermissionManager(activity);
+                    PermissionLauncherHub hub = PermissionLauncherHub.of(activity);
+                    PermissionDialogPresenter dialogs = hub.getDialogPresenter();
+                    // left showing, the activity's destruction has to take it down
+                    dialogs.show(PermissionDialogPresenter.DIALOG_RATIONALE, "title", "message",
+                            "positive", () -> {
+                            }, "negative", () -> {
+                            }, false);
+                    PermissionToastPresenter.of(activity).show("message", R.drawable.warning);
+
+                    AlertDialog dialog = dialogs.getPreparedDialog(PermissionDialogPresenter.DIALOG_RATIONALE);
+                    assertNotNull(dialog);
+                    references.add(new WeakReference<>(activity));
+                    references.add(new WeakReference<>(general));
+                    references.add(new WeakReference<>(background));
+                    references.add(new WeakReference<>(hub));
+                    references.add(new WeakReference<>(hub.getPermissionsLauncher()));
+                    references.add(new WeakReference<>(hub.getSettingsLauncher()));
+                    references.add(new WeakReference<>(dialogs));
+                    references.add(new WeakReference<>(dialog));
+                });
+                scenario.recreate();
+            }
+        }
+
+        assertEquals(0, PermissionLauncherHub.liveHubCount());
+        assertEquals(0, PermissionToastPresenter.livePresenterCount());
+        awaitCollected(references);
+    }
+
+    private static void awaitCollected(List<WeakReference<Object>> references) {
+        long deadline = System.currentTimeMillis() + GC_TIMEOUT_MILLIS;
+        while (true) {
+            Runtime.getRuntime().gc();
+            System.runFinalization();
+            Object survivor = firstSurvivor(references);
+            if (survivor == null) {
+                return;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                fail("still reachable after " + RECREATIONS + " recreations: " + survivor.getClass().getName());
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("interrupted");
+            }
+        }
+    }
+
+    private static Object firstSurvivor(List<WeakReference<Object>> references) {
+        for (WeakReference<Object> reference : references) {
+            Object referent = reference.get();
+            if (referent != null) {
+                return referent;
+            }
+        }
+        return null;
+    }
+}
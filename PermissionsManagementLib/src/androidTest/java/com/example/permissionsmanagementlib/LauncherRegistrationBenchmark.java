@@ -0,0 +1,113 @@
+package com.example.permissionsmanagementlib;
+
+import android.Manifest;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.activity.result.ActivityResultRegistry;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Construction cost, retained heap and ActivityResultRegistry registrations of many managers in one activity,
+ * shared launchers against one permission and one settings launcher per manager as before the hub.
+ * Timings and heap deltas go to logcat under the tag "LauncherRegistration".
+ */
+@RunWith(AndroidJUnit4.class)
+public class LauncherRegistrationBenchmark {
+
+    private static final String TAG = "LauncherRegistration";
+    private static final int MANAGERS = 20;
+    // the first rounds warm up class loading and the JIT, the fastest round is reported
+    private static final int ROUNDS = 5;
+    // where ActivityResultRegistry saves its registered keys
+    private static final String REGISTERED_KEYS = "KEY_COMPONENT_ACTIVITY_REGISTERED_KEYS";
+
+    private static final String[] PERMISSIONS = {Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO};
+
+    @Test
+    public void managersShareTwoRegistrations() {
+        long bestShared = Long.MAX_VALUE;
+        long bestPerManager = Long.MAX_VALUE;
+        long smallestSharedHeap = Long.MAX_VALUE;
+        long smallestPerManagerHeap = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long[] nanos = new long[2];
+            long[] heap = new long[2];
+            try (ActivityScenario<PermissionTestActivity> scenario = ActivityScenario.launch(PermissionTestActivity.class)) {
+                scenario.onActivity(activity -> {
+                    ActivityResultRegistry registry = activity.getActivityResultRegistry();
+                    int before = countRegisteredKeys(registry);
+                    // keeps what each variant creates reachable until its heap is measured
+                    List<Object> retained = new ArrayList<>();
+
+                    long heapBefore = usedHeapAfterGc();
+                    long start = SystemClock.elapsedRealtimeNanos();
+                    for (int i = 0; i < MANAGERS; i++) {
+                        retained.add(new GeneralPermissionManager(activity, PERMISSIONS));
+                    }
+                    nanos[0] = SystemClock.elapsedRealtimeNanos() - start;
+                    // the managers and the shared hub
+                    heap[0] = usedHeapAfterGc() - heapBefore;
+                    int shared = countRegisteredKeys(registry) - before;
+
+                    // what every manager's constructor registered before the launchers were shared
+                    heapBefore = usedHeapAfterGc();
+                    start = SystemClock.elapsedRealtimeNanos();
+                    for (int i = 0; i < MANAGERS; i++) {
+                        retained.add(registry.register("perManager.permissions#" + i,
+                                new ActivityResultContracts.RequestMultiplePermissions(), result -> {
+                                }));
+                        retained.add(registry.register("perManager.settings#" + i,
+                                new ActivityResultContracts.StartActivityForResult(), result -> {
+                                }));
+                    }
+                    nanos[1] = SystemClock.elapsedRealtimeNanos() - start;
+                    // only the launchers and registry entries, on top of the managers the shared variant measured
+                    heap[1] = usedHeapAfterGc() - heapBefore;
+                    int perManager = countRegisteredKeys(registry) - before - shared;
+
+                    assertEquals(2, shared);
+                    assertEquals(2 * MANAGERS, perManager);
+                    assertEquals(3 * MANAGERS, retained.size());
+                });
+            }
+            bestShared = Math.min(bestShared, nanos[0]);
+            bestPerManager = Math.min(bestPerManager, nanos[1]);
+            // a concurrent allocation can only add to a delta, so the smallest one is the least disturbed
+            smallestSharedHeap = Math.min(smallestSharedHeap, heap[0]);
+            smallestPerManagerHeap = Math.min(smallestPerManagerHeap, heap[1]);
+        }
+        Log.i(TAG, MANAGERS + " managers: shared launchers " + bestShared / 1000 + " us, "
+                + smallestSharedHeap + " bytes retained, 2 registrations; "
+                + "launchers per manager (registrations only) " + bestPerManager / 1000 + " us, "
+                + smallestPerManagerHeap + " bytes retained, " + 2 * MANAGERS + " registrations");
+    }
+
+    // the Java heap in use once unreachable objects are collected; ART may defer a requested GC, so it asks twice
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 2; i++) {
+            runtime.gc();
+            System.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static int countRegisteredKeys(ActivityResultRegistry registry) {
+        Bundle state = new Bundle();
+        registry.onSaveInstanceState(state);
+        ArrayList<String> keys = state.getStringArrayList(REGISTERED_KEYS);
+        return keys != null ? keys.size() : 0;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.permissionsmanagementlib;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+/**
+ * Empty host for the managers in instrumented tests.
+ */
+public class PermissionTestActivity extends AppCompatActivity {
+}
@@ -0,0 +1,244 @@
+package com.example.permissionsmanagementlib;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.savedstate.SavedStateRegistry;
+
+import java.util.Arrays;
+
+/**
+ * {@link PermissionBackend} of an activity: checks go through the {@link PermissionStateCache}, requests through
+ * the activity's {@link PermissionRequestScheduler}, dialogs through its {@link PermissionDialogPresenter},
+ * and the settings screen through its {@link PermissionLauncherHub}.
+ *
+ * The backend detaches itself when the activity is destroyed and then holds only the application context:
+ * checks and the history keep working, requests, dialogs and the settings screen become no-ops,
+ * and results that arrive late are dropped. A manager kept beyond the activity therefore does not keep it alive.
+ * A flow bound with {@link #bindSavedState(String, PermissionFlowController)} is instead continued by the manager
+ * of the recreated activity.
+ */
+public final class ActivityPermissionBackend implements PermissionBackend {
+
+    private static final String STATE_NAMES = "names";
+    private static final String STATE_DATA = "data";
+
+    private final Context applicationContext;
+    // both null once the activity is destroyed
+    private AppCompatActivity activity;
+    private PermissionLauncherHub launcherHub;
+    private final PermissionStateCache permissionStateCache = PermissionStateCache.getInstance();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // stable listeners, so the scheduler merges repeated requests of this backend
+    private final PermissionRequestScheduler.ResultListener resultListener = this::onPermissionsResult;
+    private final PermissionLauncherHub.SettingsListener settingsResultListener = this::onSettingsResult;
+    private RequestListener requestListener;
+    private SettingsListener settingsListener;
+    private Runnable detachListener;
+
+    public ActivityPermissionBackend(AppCompatActivity activity) {
+        this.applicationContext = activity.getApplicationContext();
+        Lifecycle lifecycle = activity.getLifecycle();
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            // created detached, a hub of a destroyed activity would never be released
+            return;
+        }
+        this.activity = activity;
+        this.launcherHub = PermissionLauncherHub.of(activity);
+        lifecycle.addObserver((LifecycleEventObserver) (source, event) -> {
+            if (event == Lifecycle.Event.ON_DESTROY) {
+                detach();
+            }
+        });
+    }
+
+    /**
+     * Runs {@code detachListener} once the activity is destroyed, e.g. to cancel the running flow.
+     */
+    public void setDetachListener(Runnable detachListener) {
+        this.detachListener = detachListener;
+    }
+
+    public boolean isAttached() {
+        return activity != null;
+    }
+
+    /**
+     * Saves {@code flowController}'s running flow with the activity's state, and resumes the flow the previous
+     * instance of the activity saved for the same manager. The flow is resumed on the next main-loop pass,
+     * after the app has set its callback again, and not at all if a new flow was started by then.
+     *
+     * Managers are matched by {@code name} and their permissions, and by creation order if those are equal.
+     */
+    public void bindSavedState(String name, PermissionFlowController flowController) {
+        if (launcherHub == null) {
+            return;
+        }
+        String[] permissions = flowController.getPermissions().toArray();
+        // registry ids, and with them the set's order, differ between processes
+        Arrays.sort(permissions);
+        String key = launcherHub.claimFlowStateKey(name + ':' + String.join(",", permissions));
+
+        SavedStateRegistry savedStateRegistry = activity.getSavedStateRegistry();
+        Bundle saved = savedStateRegistry.isRestored() ? savedStateRegistry.consumeRestoredStateForKey(key) : null;
+        savedStateRegistry.registerSavedStateProvider(key, () -> saveFlowState(flowController));
+        PermissionFlowState state = saved != null
+                ? PermissionFlowState.decode(saved.getStringArray(STATE_NAMES), saved.getLongArray(STATE_DATA))
+                : null;
+        if (state != null) {
+            handler.post(() -> {
+                if (isAttached() && !flowController.isRunning()) {
+                    flowController.resume(state);
+                }
+            });
+        }
+    }
+
+    private static Bundle saveFlowState(PermissionFlowController flowController) {
+        Bundle bundle = new Bundle();
+        PermissionFlowState state = flowController.saveState();
+        if (state != null) {
+            bundle.putStringArray(STATE_NAMES, state.getNames());
+            bundle.putLongArray(STATE_DATA, state.getData());
+        }
+        return bundle;
+    }
+
+    @Override
+    public int getSdkInt() {
+        return Build.VERSION.SDK_INT;
+    }
+
+    @Override
+    public int getTargetSdkInt() {
+        return applicationContext.getApplicationInfo().targetSdkVersion;
+    }
+
+    @Override
+    public boolean isGranted(String permission) {
+        return permissionStateCache.isGranted(applicationContext, permission);
+    }
+
+    @Override
+    public PermissionSet denied(PermissionSet permissions) {
+        // reads all stale states with one PackageManager call, and warns about undeclared permissions
+        return permissionStateCache.getDenied(applicationContext, permissions);
+    }
+
+    @Override
+    public boolean shouldShowRationale(String permission) {
+        return activity != null && activity.shouldShowRequestPermissionRationale(permission);
+    }
+
+    @Override
+    public void request(PermissionSet permissions, RequestListener listener) {
+        if (launcherHub == null) {
+            return;
+        }
+        requestListener = listener;
+        launcherHub.getRequestScheduler().request(permissions, resultListener);
+    }
+
+    @Override
+    public void openSettings(SettingsListener listener) {
+        if (launcherHub == null) {
+            return;
+        }
+        settingsListener = listener;
+        launcherHub.openAppSettings(settingsResultListener);
+    }
+
+    @Override
+    public void resumeSettings(SettingsListener listener) {
+        if (launcherHub == null) {
+            return;
+        }
+        settingsListener = listener;
+        launcherHub.resumeSettingsResult(settingsResultListener);
+    }
+
+    @Override
+    public void showDialog(int kind, String title, CharSequence message,
+                           String positiveText, Runnable onPositive,
+                           String negativeText, Runnable onNegative,
+                           boolean cancelable) {
+        if (launcherHub == null) {
+            return;
+        }
+        // the presenter uses the same dialog kinds
+        launcherHub.getDialogPresenter().show(kind, title, message, positiveText, onPositive, negativeText, onNegative, cancelable);
+    }
+
+    @Override
+    public PermissionSet getRecordedPermanentlyDenied(PermissionSet permissions) {
+        return PermissionUtils.getPermissionHistory(applicationContext).getPermanentlyDenied(permissions);
+    }
+
+    @Override
+    public void recordGranted(PermissionSet permissions) {
+        PermissionHistoryStore history = PermissionUtils.getPermissionHistory(applicationContext);
+        for (int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            history.recordGranted(PermissionRegistry.nameOf(id));
+        }
+    }
+
+    @Override
+    public void recordRequestable(PermissionSet permissions) {
+        PermissionHistoryStore history = PermissionUtils.getPermissionHistory(applicationContext);
+        for (int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            history.recordRequestable(PermissionRegistry.nameOf(id));
+        }
+    }
+
+    @Override
+    public PermissionLabels getLabels() {
+        return PermissionLabelResolver.getInstance(applicationContext);
+    }
+
+    @Override
+    public CharSequence getAppName() {
+        return PermissionLabelResolver.getInstance(applicationContext).getAppLabel();
+    }
+
+    /**
+     * Returns the activity's hub, or null once the activity is destroyed.
+     */
+    public PermissionLauncherHub getLauncherHub() {
+        return launcherHub;
+    }
+
+    private void detach() {
+        // the hub releases itself, its launchers, dialogs and the scheduler's waiters on the same event
+        activity = null;
+        launcherHub = null;
+        requestListener = null;
+        settingsListener = null;
+        Runnable listener = detachListener;
+        detachListener = null;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    private void onPermissionsResult(PermissionSet deniedPermissions) {
+        RequestListener listener = requestListener;
+        requestListener = null;
+        if (listener != null) {
+            listener.onRequestResult(deniedPermissions);
+        }
+    }
+
+    private void onSettingsResult() {
+        SettingsListener listener = settingsListener;
+        settingsListener = null;
+        if (listener != null) {
+            listener.onSettingsResult();
+        }
+    }
+}
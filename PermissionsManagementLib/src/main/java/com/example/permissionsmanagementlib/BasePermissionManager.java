@@ -0,0 +1,142 @@
+package com.example.permissionsmanagementlib;
+
+import android.content.res.Resources;
+import android.util.Log;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.util.List;
+
+/**
+ * What the managers share: the backend, the flow and its configuration.
+ */
+abstract class BasePermissionManager<M extends BasePermissionManager<M>> {
+
+    private static final PermissionsCallback DETACHED_CALLBACK = new PermissionsCallback() {
+        @Override
+        public void onPermissionsGranted() {
+        }
+
+        @Override
+        public void onPermissionsDenied(List<String> deniedPermissions) {
+        }
+    };
+
+    private final String tag;
+    final Resources resources;
+    private final String toastMessage;
+    private final ActivityPermissionBackend backend;
+    final PermissionFlowController flowController;
+    private PermissionsCallback permissionsCallback;
+
+    BasePermissionManager(AppCompatActivity activity, PermissionSet permissions, String tag, int toastMessageResId) {
+        this.tag = tag;
+        this.resources = activity.getResources();
+        this.toastMessage = resources.getString(toastMessageResId);
+        this.backend = new ActivityPermissionBackend(activity);
+        this.flowController = new PermissionFlowController(backend, permissions, this::getPermissionsCallback)
+                .setTraceTag(tag)
+                .setRationaleButtons(resources.getString(R.string.permission_button_allow),
+                        resources.getString(R.string.permission_button_deny))
+                .setSettingsButtons(resources.getString(R.string.permission_button_settings),
+                        resources.getString(R.string.permission_button_cancel));
+        backend.setDetachListener(this::onActivityDestroyed);
+        // a flow interrupted by a configuration change or process death continues here
+        backend.bindSavedState(tag, flowController);
+    }
+
+    @SuppressWarnings("unchecked")
+    private M self() {
+        return (M) this;
+    }
+
+    private PermissionsCallback getPermissionsCallback() {
+        if (permissionsCallback != null) {
+            return permissionsCallback;
+        }
+        PermissionLauncherHub launcherHub = backend.getLauncherHub();
+        // the default callback toasts through the activity, a result after its destruction goes nowhere
+        return launcherHub != null ? launcherHub.getDefaultCallback(toastMessage) : DETACHED_CALLBACK;
+    }
+
+    private void onActivityDestroyed() {
+        flowController.cancel();
+        permissionsCallback = null;
+    }
+
+    void startFlow(String caller) {
+        if (!backend.isAttached()) {
+            Log.w(tag, caller + " after the activity was destroyed, ignored");
+            return;
+        }
+        flowController.requestPermissions();
+    }
+
+    MessageTemplate pluralTemplate(int pluralsResId) {
+        // getQuantityString without format arguments returns the pattern as it is
+        return MessageTemplate.plural(count -> resources.getQuantityString(pluralsResId, count));
+    }
+
+    /**
+     * Prepares the rationale and settings dialogs on the next main-looper idle, so the first denial shows them faster.
+     */
+    public M prewarmDialogs() {
+        PermissionLauncherHub launcherHub = backend.getLauncherHub();
+        if (launcherHub != null) {
+            launcherHub.getDialogPresenter().prewarm();
+        }
+        return self();
+    }
+
+    public void setPermissionsCallback(PermissionsCallback permissionsCallback) {
+        this.permissionsCallback = permissionsCallback;
+    }
+
+    public M setRationaleTitle(String rationaleTitle) {
+        flowController.setRationaleTitle(rationaleTitle);
+        return self();
+    }
+
+    public M setRationaleMessage(String rationaleMessage) {
+        flowController.setRationaleMessage(rationaleMessage);
+        return self();
+    }
+
+    // a string resource holding a MessageTemplate pattern
+    public M setRationaleMessage(int rationaleMessageResId) {
+        flowController.setRationaleMessage(resources.getString(rationaleMessageResId));
+        return self();
+    }
+
+    // a plurals resource, chosen by the number of denied permissions
+    public M setRationaleMessagePlurals(int rationaleMessagePluralsResId) {
+        flowController.setRationaleMessage(pluralTemplate(rationaleMessagePluralsResId));
+        return self();
+    }
+
+    public M setSettingsTitle(String settingsTitle) {
+        flowController.setSettingsTitle(settingsTitle);
+        return self();
+    }
+
+    public M setSettingsMessage(String settingsMessage) {
+        flowController.setSettingsMessage(settingsMessage);
+        return self();
+    }
+
+    public M setSettingsMessage(int settingsMessageResId) {
+        flowController.setSettingsMessage(resources.getString(settingsMessageResId));
+        return self();
+    }
+
+    public M setSettingsMessagePlurals(int settingsMessagePluralsResId) {
+        flowController.setSettingsMessage(pluralTemplate(settingsMessagePluralsResId));
+        return self();
+    }
+
+    // overrides PermissionFlowRecorder's default metrics for this manager, null disables them
+    public M setPermissionMetrics(PermissionMetrics permissionMetrics) {
+        flowController.setPermissionMetrics(permissionMetrics);
+        return self();
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.permissionsmanagementlib;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Permission checks for code without an activity: workers, services, repositories.
+ *
+ * Safe to call from any thread. All checks go through the process-wide {@link PermissionStateCache} the managers
+ * use, so both always see the same state. The synchronous methods answer from the cache when they can
+ * ({@link #peek(String)} never leaves it). The async methods check fresh on a background executor, and fresh checks
+ * queued at the same time share one PackageManager snapshot.
+ */
+public final class ContextPermissionChecker {
+
+    private static volatile ContextPermissionChecker instance;
+
+    private final Context context;
+    private final PermissionStateCache permissionStateCache = PermissionStateCache.getInstance();
+    private final ExecutorService defaultExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ContextPermissionChecker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // the snapshot refresh that is queued but not started yet, later callers join it
+    private final AtomicReference<CompletableFuture<Void>> queuedRefresh = new AtomicReference<>();
+
+    private ContextPermissionChecker(Context context) {
+        this.context = context;
+    }
+
+    public static ContextPermissionChecker getInstance(Context context) {
+        ContextPermissionChecker checker = instance;
+        if (checker == null) {
+            synchronized (ContextPermissionChecker.class) {
+                checker = instance;
+                if (checker == null) {
+                    checker = new ContextPermissionChecker(context.getApplicationContext());
+                    instance = checker;
+                }
+            }
+        }
+        return checker;
+    }
+
+    /**
+     * Returns the cached state without any system call: {@link PermissionGrantSnapshot#STATE_GRANTED},
+     * {@link PermissionGrantSnapshot#STATE_DENIED} or {@link PermissionGrantSnapshot#STATE_UNKNOWN}.
+     */
+    public int peek(String permission) {
+        return permissionStateCache.peek(permission);
+    }
+
+    public boolean isGranted(String permission) {
+        return permissionStateCache.isGranted(context, permission);
+    }
+
+    public boolean areAllGranted(String... permissions) {
+        return areAllGranted(PermissionSet.of(permissions));
+    }
+
+    public boolean areAllGranted(PermissionSet permissions) {
+        return permissionStateCache.areAllGranted(context, permissions);
+    }
+
+    /**
+     * Returns the subset of {@code permissions} that is not granted.
+     */
+    public PermissionSet getDenied(PermissionSet permissions) {
+        return permissionStateCache.getDenied(context, permissions);
+    }
+
+    /**
+     * Checks {@code permissions} fresh on the checker's background thread.
+     */
+    public CompletableFuture<PermissionSet> getDeniedAsync(PermissionSet permissions) {
+        return getDeniedAsync(permissions, defaultExecutor);
+    }
+
+    /**
+     * Checks {@code permissions} fresh on {@code executor}, ignoring states cached before this call.
+     * The future completes on the executor.
+     */
+    public CompletableFuture<PermissionSet> getDeniedAsync(PermissionSet permissions, Executor executor) {
+        long requestedAt = SystemClock.elapsedRealtime();
+        return refreshAsync(executor).thenApply(ignored -> getDeniedSince(permissions, requestedAt));
+    }
+
+    public CompletableFuture<Boolean> areAllGrantedAsync(PermissionSet permissions) {
+        return areAllGrantedAsync(permissions, defaultExecutor);
+    }
+
+    public CompletableFuture<Boolean> areAllGrantedAsync(PermissionSet permissions, Executor executor) {
+        return getDeniedAsync(permissions, executor).thenApply(PermissionSet::isEmpty);
+    }
+
+    private CompletableFuture<Void> refreshAsync(Executor executor) {
+        while (true) {
+            CompletableFuture<Void> queued = queuedRefresh.get();
+            if (queued != null) {
+                return queued;
+            }
+            CompletableFuture<Void> refresh = new CompletableFuture<>();
+            if (!queuedRefresh.compareAndSet(null, refresh)) {
+                continue;
+            }
+            executor.execute(() -> {
+                // callers arriving from now on need a newer snapshot than the one read here
+                queuedRefresh.compareAndSet(refresh, null);
+                try {
+                    permissionStateCache.refresh(context);
+                    refresh.complete(null);
+                } catch (RuntimeException e) {
+                    refresh.completeExceptionally(e);
+                }
+            });
+            return refresh;
+        }
+    }
+
+    private PermissionSet getDeniedSince(PermissionSet permissions, long checkedSince) {
+        // manifest permissions are already fresh from the snapshot, only the others are checked one by one
+        PermissionSet.Builder denied = null;
+        for (int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            if (!permissionStateCache.isGrantedSince(context, PermissionRegistry.nameOf(id), checkedSince)) {
+                if (denied == null) {
+                    denied = new PermissionSet.Builder();
+                }
+                denied.addId(id);
+            }
+        }
+        return denied == null ? PermissionSet.EMPTY : denied.build();
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.permissionsmanagementlib;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.DialogInterface;
+import android.graphics.drawable.Drawable;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.Button;
+
+import androidx.core.content.ContextCompat;
+
+/**
+ * Shows the rationale and settings dialogs of one activity.
+ *
+ * Each dialog kind is built once and reused: later shows only rebind title, message and buttons.
+ * With {@link #prewarm()} the dialog shells are inflated and the icons decoded on a main-looper idle
+ * handler ahead of time, so the first denial on a cold process does not pay for it.
+ * If the prepared dialog of a kind is already showing (two managers at once), a one-off dialog is built.
+ */
+public final class PermissionDialogPresenter {
+
+    public static final int DIALOG_RATIONALE = 0;
+    public static final int DIALOG_SETTINGS = 1;
+
+    public interface LatencyListener {
+        /**
+         * Called when a dialog is first drawn, with the time since it was requested.
+         * {@code firstShow} is true for the first dialog of the kind shown in this activity.
+         */
+        void onDialogShown(int kind, long latencyNanos, boolean firstShow, boolean prewarmed);
+    }
+
+    private static final int[] ICONS = {R.drawable.warning, R.drawable.setting};
+    // the prepared dialogs' button texts until the first show binds the flow's
+    private static final int[] PLACEHOLDER_POSITIVE = {R.string.permission_button_allow, R.string.permission_button_settings};
+    private static final int[] PLACEHOLDER_NEGATIVE = {R.string.permission_button_deny, R.string.permission_button_cancel};
+
+    private final Activity activity;
+    private final AlertDialog[] dialogs = new AlertDialog[2];
+    private final Drawable[] icons = new Drawable[2];
+    private final boolean[] shown = new boolean[2];
+    private boolean prewarmed;
+    private MessageQueue.IdleHandler prewarmHandler;
+    private LatencyListener latencyListener;
+
+    PermissionDialogPresenter(Activity activity) {
+        this.activity = activity;
+    }
+
+    /**
+     * Prepares both dialogs on the next main-looper idle. Must be called on the main thread.
+     */
+    public void prewarm() {
+        if (prewarmed || prewarmHandler != null) {
+            return;
+        }
+        prewarmHandler = () -> {
+            prewarmHandler = null;
+            if (!activity.isFinishing()) {
+                prepare(DIALOG_RATIONALE);
+                prepare(DIALOG_SETTINGS);
+                prewarmed = true;
+            }
+            return false;
+        };
+        Looper.myQueue().addIdleHandler(prewarmHandler);
+    }
+
+    public void setLatencyListener(LatencyListener latencyListener) {
+        this.latencyListener = latencyListener;
+    }
+
+    public void show(int kind, String title, CharSequence message,
+                     String positiveText, Runnable onPositive,
+                     String negativeText, Runnable onNegative,
+                     boolean cancelable) {
+        if (activity.isFinishing() || activity.isDestroyed()) {
+            // the window is going away, showing a dialog now would leak it
+            return;
+        }
+        long requestedAt = System.nanoTime();
+        AlertDialog dialog = prepare(kind);
+        if (dialog.isShowing()) {
+            dialog = buildDialog(kind, positiveText, negativeText);
+        }
+
+        dialog.setTitle(title);
+        dialog.setMessage(message);
+        dialog.setIcon(icons[kind]);
+        dialog.setCancelable(cancelable);
+        bindButton(dialog, DialogInterface.BUTTON_POSITIVE, positiveText, onPositive);
+        bindButton(dialog, DialogInterface.BUTTON_NEGATIVE, negativeText, onNegative);
+        // back or a tap outside answers like the negative button, else the flow would wait forever;
+        // the buttons dismiss instead of cancelling, so they never get here
+        dialog.setOnCancelListener(cancelable ? cancelledDialog -> onNegative.run() : null);
+
+        if (latencyListener != null) {
+            boolean firstShow = !shown[kind];
+            boolean wasPrewarmed = prewarmed;
+            dialog.setOnShowListener(shownDialog -> measureFirstDraw((AlertDialog) shownDialog, kind, requestedAt, firstShow, wasPrewarmed));
+        } else {
+            dialog.setOnShowListener(null);
+        }
+        shown[kind] = true;
+        dialog.show();
+    }
+
+    // for tests: the reused dialog of a kind, null until it is prepared
+    AlertDialog getPreparedDialog(int kind) {
+        return dialogs[kind];
+    }
+
+    public void dismissAll() {
+        for (AlertDialog dialog : dialogs) {
+            if (dialog != null && dialog.isShowing()) {
+                dialog.dismiss();
+            }
+        }
+    }
+
+    void release() {
+        if (prewarmHandler != null) {
+            Looper.myQueue().removeIdleHandler(prewarmHandler);
+            prewarmHandler = null;
+        }
+        dismissAll();
+        dialogs[DIALOG_RATIONALE] = null;
+        dialogs[DIALOG_SETTINGS] = null;
+        icons[DIALOG_RATIONALE] = null;
+        icons[DIALOG_SETTINGS] = null;
+        latencyListener = null;
+    }
+
+    private AlertDialog prepare(int kind) {
+        if (icons[kind] == null) {
+            icons[kind] = ContextCompat.getDrawable(activity, ICONS[kind]);
+        }
+        if (dialogs[kind] == null) {
+            dialogs[kind] = buildDialog(kind, activity.getString(PLACEHOLDER_POSITIVE[kind]),
+                    activity.getString(PLACEHOLDER_NEGATIVE[kind]));
+        }
+        return dialogs[kind];
+    }
+
+    private AlertDialog buildDialog(int kind, String positiveText, String negativeText) {
+        // the buttons only exist if they get a text at build time, click handling is bound on every show
+        AlertDialog dialog = new AlertDialog.Builder(activity)
+                .setTitle("")
+                .setMessage("")
+                .setIcon(icons[kind])
+                .setPositiveButton(positiveText, null)
+                .setNegativeButton(negativeText, null)
+                .create();
+        // inflates the content view now instead of on the first show
+        dialog.create();
+        return dialog;
+    }
+
+    private static void bindButton(AlertDialog dialog, int which, String text, Runnable action) {
+        Button button = dialog.getButton(which);
+        button.setText(text);
+        button.setOnClickListener(v -> {
+            dialog.dismiss();
+            action.run();
+        });
+    }
+
+    private void measureFirstDraw(AlertDialog dialog, int kind, long requestedAt, boolean firstShow, boolean wasPrewarmed) {
+        View decorView = dialog.getWindow().getDecorView();
+        ViewTreeObserver observer = decorView.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                LatencyListener listener = latencyListener;
+                if (listener != null) {
+                    listener.onDialogShown(kind, System.nanoTime() - requestedAt, firstShow, wasPrewarmed);
+                }
+                return true;
+            }
+        });
+    }
+}
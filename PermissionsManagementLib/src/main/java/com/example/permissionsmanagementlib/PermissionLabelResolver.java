@@ -0,0 +1,239 @@
+package com.example.permissionsmanagementlib;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.pm.PermissionInfo;
+import android.os.Build;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Resolves the system's localized permission labels and group labels through the PackageManager.
+ *
+ * Results are kept in an LRU for the current locale and persisted to a small versioned file,
+ * so later cold starts in the same locale skip the PackageManager calls entirely.
+ * The file is dropped when the locale, the OS build or the app version changes.
+ * Permissions the system does not know fall back to {@link PermissionText#getPermissionName(String)}.
+ */
+public final class PermissionLabelResolver implements PermissionLabels {
+
+    private static final String TAG = "PermissionLabels";
+    private static final int FILE_VERSION = 1;
+    private static final String FILE_PREFIX = "permission_labels_";
+    private static final int MAX_ENTRIES = 64;
+    private static final String UNDEFINED_GROUP = "android.permission-group.UNDEFINED";
+
+    private static volatile PermissionLabelResolver instance;
+
+    private final Context context;
+    private final PackageManager packageManager;
+    private final String fingerprint;
+    private final ExecutorService persistExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "PermissionLabelResolver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Locale locale;
+    private LruCache<String, Label> labels;
+    private boolean dirty;
+    private String appLabel;
+    private Locale appLabelLocale;
+
+    private PermissionLabelResolver(Context context) {
+        this.context = context;
+        this.packageManager = context.getPackageManager();
+        this.fingerprint = Build.FINGERPRINT + '/' + appVersion(context);
+    }
+
+    public static PermissionLabelResolver getInstance(Context context) {
+        PermissionLabelResolver resolver = instance;
+        if (resolver == null) {
+            synchronized (PermissionLabelResolver.class) {
+                resolver = instance;
+                if (resolver == null) {
+                    resolver = new PermissionLabelResolver(context.getApplicationContext());
+                    instance = resolver;
+                }
+            }
+        }
+        return resolver;
+    }
+
+    @Override
+    public String getLabel(String permission) {
+        return resolve(permission).label;
+    }
+
+    /**
+     * Returns the localized label of the permission's group, or null if it has no group.
+     */
+    public String getGroupLabel(String permission) {
+        return resolve(permission).groupLabel;
+    }
+
+    /**
+     * Returns the app's localized name, loaded once per locale.
+     */
+    public synchronized String getAppLabel() {
+        Locale currentLocale = currentLocale();
+        if (appLabel == null || !currentLocale.equals(appLabelLocale)) {
+            String label = toString(context.getApplicationInfo().loadLabel(packageManager));
+            appLabel = label != null ? label : "";
+            appLabelLocale = currentLocale;
+        }
+        return appLabel;
+    }
+
+    public synchronized void clear() {
+        if (labels != null) {
+            labels.evictAll();
+        }
+        dirty = false;
+        Locale currentLocale = currentLocale();
+        persistExecutor.execute(() -> fileFor(currentLocale).delete());
+    }
+
+    private synchronized Label resolve(String permission) {
+        Locale currentLocale = currentLocale();
+        if (!currentLocale.equals(locale)) {
+            locale = currentLocale;
+            labels = new LruCache<>(MAX_ENTRIES);
+            load(currentLocale);
+        }
+
+        Label label = labels.get(permission);
+        if (label == null) {
+            label = loadFromPackageManager(permission);
+            labels.put(permission, label);
+            schedulePersist();
+        }
+        return label;
+    }
+
+    private Label loadFromPackageManager(String permission) {
+        try {
+            PermissionInfo info = packageManager.getPermissionInfo(permission, 0);
+            String label = toString(info.loadLabel(packageManager));
+            String groupLabel = null;
+            // from Android 10 platform permissions report an undefined group, the index knows the real one
+            String group = info.group == null || UNDEFINED_GROUP.equals(info.group) ? PermissionIndex.getGroup(permission) : info.group;
+            if (group != null) {
+                try {
+                    groupLabel = toString(packageManager.getPermissionGroupInfo(group, 0).loadLabel(packageManager));
+                } catch (PackageManager.NameNotFoundException ignored) {
+                    // platform groups are not always resolvable, the label alone is enough
+                }
+            }
+            return new Label(label != null ? label : PermissionText.getPermissionName(permission), groupLabel);
+        } catch (PackageManager.NameNotFoundException e) {
+            return new Label(PermissionText.getPermissionName(permission), null);
+        }
+    }
+
+    private void schedulePersist() {
+        if (dirty) {
+            return;
+        }
+        dirty = true;
+        persistExecutor.execute(this::persist);
+    }
+
+    private void persist() {
+        Locale persistLocale;
+        Map<String, Label> snapshot;
+        synchronized (this) {
+            dirty = false;
+            persistLocale = locale;
+            snapshot = labels.snapshot();
+        }
+
+        File file = fileFor(persistLocale);
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(FILE_VERSION);
+            out.writeUTF(fingerprint);
+            out.writeUTF(persistLocale.toLanguageTag());
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Label> entry : snapshot.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue().label);
+                out.writeBoolean(entry.getValue().groupLabel != null);
+                if (entry.getValue().groupLabel != null) {
+                    out.writeUTF(entry.getValue().groupLabel);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not persist permission labels", e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+
+    private void load(Locale forLocale) {
+        File file = fileFor(forLocale);
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_VERSION || !fingerprint.equals(in.readUTF()) || !forLocale.toLanguageTag().equals(in.readUTF())) {
+                // labels from another OS build or app version may be stale
+                file.delete();
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String permission = in.readUTF();
+                String label = in.readUTF();
+                String groupLabel = in.readBoolean() ? in.readUTF() : null;
+                labels.put(permission, new Label(label, groupLabel));
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable permission label cache", e);
+            file.delete();
+        }
+    }
+
+    private File fileFor(Locale forLocale) {
+        return new File(context.getCacheDir(), FILE_PREFIX + forLocale.toLanguageTag() + ".bin");
+    }
+
+    private Locale currentLocale() {
+        return context.getResources().getConfiguration().getLocales().get(0);
+    }
+
+    private static String appVersion(Context context) {
+        // the installed APK changes with every install or update, reading it needs no PackageManager call
+        return String.valueOf(new File(context.getApplicationInfo().sourceDir).lastModified());
+    }
+
+    private static String toString(CharSequence text) {
+        return text != null ? text.toString() : null;
+    }
+
+    private static final class Label {
+        final String label;
+        final String groupLabel;
+
+        Label(String label, String groupLabel) {
+            this.label = label;
+            this.groupLabel = groupLabel;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.permissionsmanagementlib;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Bundle;
+
+import androidx.activity.result.ActivityResult;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.savedstate.SavedStateRegistry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Activity-scoped owner of the only two launchers the library registers: one for permission
+ * requests and one for the app settings screen. Managers are lightweight handles on top of it and
+ * route their settings round trips through it by token.
+ *
+ * The launchers are registered directly on the activity's ActivityResultRegistry under fixed keys,
+ * so a hub (and the managers using it) can be created at any point of the activity lifecycle,
+ * not only before it is started. They are unregistered when the activity is destroyed, and the hub drops its
+ * dialogs and default callbacks; launches and settings trips asked for after that are ignored.
+ *
+ * What is in flight (the permissions of the system dialog, a pending settings trip) is saved in the activity's
+ * {@link SavedStateRegistry} under a fixed key. The hub of the recreated activity picks it up,
+ * so the results the registry delivers there still reach the resumed flows.
+ */
+public final class PermissionLauncherHub {
+
+    public interface SettingsListener {
+        void onSettingsResult();
+    }
+
+    private static final String KEY_PREFIX = "com.example.permissionsmanagementlib.";
+    private static final String PERMISSIONS_KEY = KEY_PREFIX + "permissions";
+    private static final String SETTINGS_KEY = KEY_PREFIX + "settings";
+    private static final String STATE_KEY = KEY_PREFIX + "hub";
+    private static final String STATE_SCHEDULER = "scheduler";
+    private static final String STATE_SETTINGS_PENDING = "settingsPending";
+
+    private static final Map<Activity, PermissionLauncherHub> hubs = new HashMap<>();
+
+    private final AppCompatActivity activity;
+    private final PermissionRequestScheduler requestScheduler;
+    private final ActivityResultLauncher<String[]> permissionsLauncher;
+    private final ActivityResultLauncher<Intent> settingsLauncher;
+    private PermissionDialogPresenter dialogPresenter;
+
+    private final Map<Integer, SettingsListener> settingsListeners = new LinkedHashMap<>();
+    private final Map<String, PermissionsCallback> defaultCallbacks = new HashMap<>();
+    private int nextToken = 1;
+    private boolean released;
+    // between opening the settings screen and the return, also across recreation
+    private boolean settingsPending;
+    // managers per saved state name, tells managers of the same name apart by creation order
+    private final Map<String, Integer> flowStateKeys = new HashMap<>();
+
+    private PermissionLauncherHub(AppCompatActivity activity) {
+        this.activity = activity;
+        PermissionUtils.preloadPermissionHistory(activity);
+        requestScheduler = new PermissionRequestScheduler(this);
+        // restored before the launchers are registered, the registry delivers waiting results right away
+        SavedStateRegistry savedStateRegistry = activity.getSavedStateRegistry();
+        Bundle state = savedStateRegistry.isRestored() ? savedStateRegistry.consumeRestoredStateForKey(STATE_KEY) : null;
+        if (state != null) {
+            Bundle schedulerState = state.getBundle(STATE_SCHEDULER);
+            if (schedulerState != null) {
+                requestScheduler.restoreState(schedulerState);
+            }
+            settingsPending = state.getBoolean(STATE_SETTINGS_PENDING);
+        }
+        savedStateRegistry.registerSavedStateProvider(STATE_KEY, this::saveState);
+        permissionsLauncher = activity.getActivityResultRegistry().register(
+                PERMISSIONS_KEY,
+                new ActivityResultContracts.RequestMultiplePermissions(),
+                requestScheduler::onBatchResult
+        );
+        settingsLauncher = activity.getActivityResultRegistry().register(
+                SETTINGS_KEY,
+                new ActivityResultContracts.StartActivityForResult(),
+                this::onSettingsResult
+        );
+        PermissionStateCache.getInstance().attach(activity);
+    }
+
+    public static PermissionLauncherHub of(AppCompatActivity activity) {
+        PermissionLauncherHub hub = hubs.get(activity);
+        if (hub == null) {
+            hub = new PermissionLauncherHub(activity);
+            if (activity.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+                // no ON_DESTROY will come to remove it from the map
+                hub.release();
+                return hub;
+            }
+            hubs.put(activity, hub);
+            PermissionLauncherHub created = hub;
+            activity.getLifecycle().addObserver((LifecycleEventObserver) (source, event) -> {
+                if (event == Lifecycle.Event.ON_PAUSE) {
+                    created.requestScheduler.onHostPaused();
+                } else if (event == Lifecycle.Event.ON_DESTROY) {
+                    PermissionLauncherHub removed = hubs.remove(activity);
+                    if (removed != null) {
+                        removed.release();
+                    }
+                }
+            });
+        }
+        return hub;
+    }
+
+    // for tests: hubs of activities that are not destroyed yet
+    static int liveHubCount() {
+        return hubs.size();
+    }
+
+    ActivityResultLauncher<String[]> getPermissionsLauncher() {
+        return permissionsLauncher;
+    }
+
+    ActivityResultLauncher<Intent> getSettingsLauncher() {
+        return settingsLauncher;
+    }
+
+    public PermissionRequestScheduler getRequestScheduler() {
+        return requestScheduler;
+    }
+
+    /**
+     * Opens the app settings screen and returns the token under which the listener waits for the return.
+     */
+    public int openAppSettings(SettingsListener listener) {
+        if (released) {
+            return 0;
+        }
+        int token = nextToken++;
+        settingsListeners.put(token, listener);
+        settingsPending = true;
+        PermissionUtils.openAppSettings(activity, settingsLauncher);
+        return token;
+    }
+
+    /**
+     * Waits for the return from a settings screen the previous instance of the activity opened, without opening
+     * it again, and returns the token. If the user is already back, the listener is called right away.
+     */
+    public int resumeSettingsResult(SettingsListener listener) {
+        if (settingsPending && !released) {
+            int token = nextToken++;
+            settingsListeners.put(token, listener);
+            return token;
+        }
+        listener.onSettingsResult();
+        return 0;
+    }
+
+    public void cancelSettingsResult(int token) {
+        settingsListeners.remove(token);
+    }
+
+    public PermissionToastPresenter getToastPresenter() {
+        return PermissionToastPresenter.of(activity);
+    }
+
+    public PermissionDialogPresenter getDialogPresenter() {
+        if (dialogPresenter == null) {
+            dialogPresenter = new PermissionDialogPresenter(activity);
+        }
+        return dialogPresenter;
+    }
+
+    /**
+     * Returns the default toast callback for the message, shared by all managers of the activity.
+     */
+    PermissionsCallback getDefaultCallback(String toastMessage) {
+        PermissionsCallback callback = defaultCallbacks.get(toastMessage);
+        if (callback == null) {
+            callback = PermissionUtils.getDefaultCallback(activity, toastMessage);
+            defaultCallbacks.put(toastMessage, callback);
+        }
+        return callback;
+    }
+
+    boolean shouldShowRequestPermissionRationale(String permission) {
+        return activity.shouldShowRequestPermissionRationale(permission);
+    }
+
+    void onStateChanged() {
+        PermissionStateObserver.getInstance().requestRecheck(activity);
+    }
+
+    PermissionHistoryStore getPermissionHistory() {
+        return PermissionUtils.getPermissionHistory(activity);
+    }
+
+    void launchPermissions(String[] permissions) {
+        if (released) {
+            return;
+        }
+        permissionsLauncher.launch(permissions);
+    }
+
+    /**
+     * Returns the key under which a manager saves its flow, unique in this activity as long as managers
+     * are created in the same order after recreation.
+     */
+    String claimFlowStateKey(String name) {
+        Integer count = flowStateKeys.get(name);
+        int index = count != null ? count : 0;
+        flowStateKeys.put(name, index + 1);
+        return KEY_PREFIX + "flow." + name + '#' + index;
+    }
+
+    private Bundle saveState() {
+        Bundle state = new Bundle();
+        Bundle schedulerState = requestScheduler.saveState();
+        if (schedulerState != null) {
+            state.putBundle(STATE_SCHEDULER, schedulerState);
+        }
+        state.putBoolean(STATE_SETTINGS_PENDING, settingsPending);
+        return state;
+    }
+
+    private void onSettingsResult(ActivityResult result) {
+        // the user may have changed any permission in the settings screen
+        PermissionStateCache.getInstance().invalidateAll();
+        PermissionStateObserver.getInstance().requestRecheck(activity);
+        settingsPending = false;
+        if (settingsListeners.isEmpty()) {
+            // a flow resumed later finds nothing pending and re-checks right away
+            return;
+        }
+
+        List<SettingsListener> listeners = new ArrayList<>(settingsListeners.values());
+        settingsListeners.clear();
+        for (SettingsListener listener : listeners) {
+            listener.onSettingsResult();
+        }
+    }
+
+    private void release() {
+        released = true;
+        activity.getSavedStateRegistry().unregisterSavedStateProvider(STATE_KEY);
+        requestScheduler.release();
+        permissionsLauncher.unregister();
+        settingsLauncher.unregister();
+        settingsListeners.clear();
+        defaultCallbacks.clear();
+        if (dialogPresenter != null) {
+            dialogPresenter.release();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.permissionsmanagementlib;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.util.Map;
+
+/**
+ * Per-activity front for the system permission request.
+ * Requests made in the same main-loop pass are merged into one launch, permissions that are
+ * already in flight are not requested again, and every result is fanned out to all waiting listeners.
+ * A listener that requests again while it is still waiting is merged with its pending request,
+ * so repeated taps never produce duplicate dialogs or duplicate callbacks.
+ *
+ * The scheduler launches through the activity's {@link PermissionLauncherHub}. Each result is classified with
+ * {@link DenialClassifier} before it is recorded in the history, from the rationale state around the launch,
+ * whether the activity was paused by the system dialog and how long the round trip took.
+ *
+ * The permissions in flight are saved with the activity's state. A result that arrives after the activity was
+ * recreated, before anybody waits for it again, is kept and answers the next request it covers,
+ * so a resumed flow never launches the same dialog twice.
+ */
+public final class PermissionRequestScheduler {
+
+    public interface ResultListener {
+        // deniedPermissions is the subset of the requested permissions that was not granted
+        void onPermissionsResult(PermissionSet deniedPermissions);
+    }
+
+    private static final String STATE_IN_FLIGHT = "inFlight";
+    private static final String STATE_RATIONALE_BEFORE_LAUNCH = "rationaleBeforeLaunch";
+
+    private final PermissionLauncherHub hub;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final PermissionStateCache permissionStateCache = PermissionStateCache.getInstance();
+    private final Runnable launchQueued = this::launchQueued;
+    private final int traceSource = System.identityHashCode(this);
+
+    // delivering a batch that grants everything does not allocate
+    private final PermissionRequestWaiters<ResultListener> waiters = new PermissionRequestWaiters<>();
+    private final PermissionRequestWaiters.Delivery<ResultListener> delivery = ResultListener::onPermissionsResult;
+    private PermissionSet inFlight = PermissionSet.EMPTY;
+    private boolean launchPosted;
+    // state of the launch in flight, for classifying its denials
+    private PermissionSet rationaleBeforeLaunch = PermissionSet.EMPTY;
+    private long launchedAt;
+    private boolean pausedSinceLaunch;
+    // the batch in flight was launched by the previous instance of the activity
+    private boolean restoredLaunch;
+    // answers of a restored launch nobody waited for yet
+    private PermissionSet unclaimed = PermissionSet.EMPTY;
+    private PermissionSet unclaimedDenied = PermissionSet.EMPTY;
+
+    PermissionRequestScheduler(PermissionLauncherHub hub) {
+        this.hub = hub;
+    }
+
+    public static PermissionRequestScheduler of(AppCompatActivity activity) {
+        return PermissionLauncherHub.of(activity).getRequestScheduler();
+    }
+
+    public void request(PermissionSet permissions, ResultListener listener) {
+        if (unclaimed.containsAll(permissions) && !permissions.isEmpty() && !waiters.isWaiting(listener)) {
+            // the user answered before the activity was recreated
+            PermissionSet denied = unclaimedDenied.intersect(permissions);
+            unclaimed = unclaimed.minus(permissions);
+            handler.post(() -> listener.onPermissionsResult(denied));
+            return;
+        }
+        waiters.add(listener, permissions);
+
+        if (inFlight.isEmpty() && !launchPosted) {
+            // wait for the rest of this main-loop pass so concurrent requests share one launch
+            launchPosted = true;
+            handler.post(launchQueued);
+        }
+    }
+
+    public boolean isRequestInFlight() {
+        return !inFlight.isEmpty();
+    }
+
+    private void launchQueued() {
+        launchPosted = false;
+        if (!inFlight.isEmpty()) {
+            return;
+        }
+
+        PermissionSet.Builder batch = new PermissionSet.Builder();
+        waiters.addRemainingTo(batch);
+        if (batch.isEmpty()) {
+            return;
+        }
+        inFlight = batch.build();
+        PermissionSet.Builder rationale = batch.clear();
+        for (int id = inFlight.nextId(0); id >= 0; id = inFlight.nextId(id + 1)) {
+            if (hub.shouldShowRequestPermissionRationale(PermissionRegistry.nameOf(id))) {
+                rationale.addId(id);
+            }
+        }
+        rationaleBeforeLaunch = rationale.build();
+        pausedSinceLaunch = false;
+        restoredLaunch = false;
+        launchedAt = SystemClock.uptimeMillis();
+        PermissionTraceLog.record(PermissionTraceLog.Event.REQUEST_LAUNCHED, traceSource, inFlight);
+        hub.launchPermissions(inFlight.toArray());
+    }
+
+    // the system dialog is an activity on top, showing it pauses the host
+    void onHostPaused() {
+        if (!inFlight.isEmpty()) {
+            pausedSinceLaunch = true;
+        }
+    }
+
+    void onBatchResult(Map<String, Boolean> result) {
+        boolean traced = PermissionTraceLog.beginSection("PermissionRequestScheduler.onBatchResult");
+        try {
+            deliverBatchResult(result);
+        } finally {
+            PermissionTraceLog.endSection(traced);
+        }
+    }
+
+    private void deliverBatchResult(Map<String, Boolean> result) {
+        PermissionSet completed = inFlight;
+        inFlight = PermissionSet.EMPTY;
+        if (completed.isEmpty() && !result.isEmpty()) {
+            // launched by an earlier instance of the activity whose state did not reach this one
+            completed = PermissionSet.of(result.keySet());
+            pausedSinceLaunch = true;
+            launchedAt = 0L;
+            restoredLaunch = true;
+        }
+
+        // a cancelled request comes back without entries, those permissions count as denied
+        PermissionSet batchDenied = PermissionResults.denied(completed, result);
+        PermissionTraceLog.record(PermissionTraceLog.Event.REQUEST_RESULT, traceSource, batchDenied);
+        permissionStateCache.update(completed, batchDenied);
+        // nobody answered a cancelled request, it says nothing about the prompt or the user's decision
+        if (!result.isEmpty()) {
+            PermissionSet rationaleAfter = rationaleOf(batchDenied);
+            boolean promptShown = DenialClassifier.isPromptShown(batchDenied.size() < completed.size(),
+                    !rationaleBeforeLaunch.isEmpty() || !rationaleAfter.isEmpty(),
+                    pausedSinceLaunch, SystemClock.uptimeMillis() - launchedAt);
+            if (!promptShown && !batchDenied.isEmpty()) {
+                PermissionTraceLog.record(PermissionTraceLog.Event.INSTANT_DENIAL, traceSource, batchDenied);
+            }
+            recordHistory(completed, batchDenied, rationaleAfter, promptShown);
+        }
+        // observers re-check from the just updated cache, no extra system calls
+        hub.onStateChanged();
+
+        PermissionSet unclaimedNow = waiters.complete(completed, batchDenied, restoredLaunch);
+        if (restoredLaunch) {
+            restoredLaunch = false;
+            unclaimed = unclaimed.union(unclaimedNow);
+            unclaimedDenied = unclaimedDenied.union(batchDenied.intersect(unclaimedNow));
+        }
+
+        // launch whatever was queued behind this batch before notifying,
+        // so listeners that request again are merged into the next batch
+        if (!waiters.isEmpty() && !launchPosted) {
+            launchPosted = true;
+            handler.post(launchQueued);
+        }
+
+        waiters.deliverFinished(delivery);
+    }
+
+    // the denied permissions the system offers a rationale for after the result
+    private PermissionSet rationaleOf(PermissionSet denied) {
+        if (denied.isEmpty()) {
+            return PermissionSet.EMPTY;
+        }
+        PermissionSet.Builder rationale = new PermissionSet.Builder();
+        for (int id = denied.nextId(0); id >= 0; id = denied.nextId(id + 1)) {
+            if (hub.shouldShowRequestPermissionRationale(PermissionRegistry.nameOf(id))) {
+                rationale.addId(id);
+            }
+        }
+        return rationale.build();
+    }
+
+    private void recordHistory(PermissionSet completed, PermissionSet batchDenied, PermissionSet rationaleAfter,
+                               boolean promptShown) {
+        PermissionHistoryStore history = hub.getPermissionHistory();
+        for (int id = completed.nextId(0); id >= 0; id = completed.nextId(id + 1)) {
+            String permission = PermissionRegistry.nameOf(id);
+            if (batchDenied.containsId(id)) {
+                boolean rationale = rationaleAfter.containsId(id);
+                DenialClassifier.Kind kind = DenialClassifier.classify(rationaleBeforeLaunch.containsId(id), rationale,
+                        promptShown, history.isPermanentlyDenied(permission));
+                // permanently denied permissions are not launched again, the next flow goes straight to settings
+                history.recordDenied(permission, kind, rationale);
+            } else {
+                history.recordGranted(permission);
+            }
+        }
+    }
+
+    Bundle saveState() {
+        if (inFlight.isEmpty()) {
+            return null;
+        }
+        Bundle state = new Bundle();
+        state.putStringArray(STATE_IN_FLIGHT, inFlight.toArray());
+        state.putStringArray(STATE_RATIONALE_BEFORE_LAUNCH, rationaleBeforeLaunch.toArray());
+        return state;
+    }
+
+    /**
+     * Takes over the launch in flight of the previous activity. Must run before the launcher is registered,
+     * a result that is already there is delivered during registration.
+     */
+    void restoreState(Bundle state) {
+        String[] inFlightNames = state.getStringArray(STATE_IN_FLIGHT);
+        String[] rationaleNames = state.getStringArray(STATE_RATIONALE_BEFORE_LAUNCH);
+        if (inFlightNames == null || inFlightNames.length == 0) {
+            return;
+        }
+        inFlight = PermissionSet.of(inFlightNames);
+        rationaleBeforeLaunch = rationaleNames != null ? PermissionSet.of(rationaleNames) : PermissionSet.EMPTY;
+        // the dialog outlived the activity, so somebody saw it
+        pausedSinceLaunch = true;
+        launchedAt = 0L;
+        restoredLaunch = true;
+    }
+
+    void release() {
+        handler.removeCallbacks(launchQueued);
+        waiters.clear();
+        inFlight = PermissionSet.EMPTY;
+        unclaimed = PermissionSet.EMPTY;
+        unclaimedDenied = PermissionSet.EMPTY;
+    }
+}
@@ -0,0 +1,347 @@
+package com.example.permissionsmanagementlib;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.app.ActivityCompat;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of permission grant states.
+ * Entries are filled lazily on first check and dropped when something may have changed them:
+ * a permission result, a return from the settings screen, an activity resume or the TTL expiring.
+ *
+ * When a set check finds two or more stale entries, the grant state of every manifest permission is read
+ * at once from the package's requested-permission flags ({@link #refresh(Context)}), one PackageManager call
+ * instead of one permission check each. Permissions the flags do not answer are still checked individually.
+ *
+ * The cache is safe to use from any thread and reads of a cached state take no lock. Every state is stamped with
+ * the time its check started, and a state never replaces a newer one. Invalidations are numbered, and a check
+ * only stores its state if neither its permission nor the whole cache was invalidated since the check started.
+ * So a slow check on a background thread cannot undo a request result or an invalidation that happened while it ran.
+ */
+public final class PermissionStateCache {
+
+    // default time-to-live for a cached state (covers one-time and auto-reset grants)
+    public static final long DEFAULT_TTL_MILLIS = 60_000L;
+
+    private static final String TAG = "PermissionStateCache";
+    // below this many stale entries individual checks are as cheap as the snapshot
+    private static final int SNAPSHOT_MIN_STALE = 2;
+
+    // checked at the earliest possible time, older than any real state
+    private static final long STALE = Long.MIN_VALUE;
+
+    private static final PermissionStateCache INSTANCE = new PermissionStateCache();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile long ttlMillis = DEFAULT_TTL_MILLIS;
+    private volatile boolean lifecycleCallbacksRegistered;
+    // the manifest does not change while the process lives, so its permission list is read once
+    private volatile PermissionSet manifestPermissions;
+    private volatile boolean snapshotUnavailable;
+    // numbers every invalidation, a check started at sequence n is outdated by any invalidation after n
+    private final AtomicLong invalidations = new AtomicLong();
+    // sequence number of the last invalidateAll
+    private volatile long invalidatedAllAt;
+    private final Set<String> warnedUndeclared = ConcurrentHashMap.newKeySet();
+
+    private PermissionStateCache() {
+    }
+
+    public static PermissionStateCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers the activity resume listener (once per process) that invalidates the cache.
+     */
+    public void attach(Activity activity) {
+        if (lifecycleCallbacksRegistered) {
+            return;
+        }
+        synchronized (this) {
+            if (lifecycleCallbacksRegistered) {
+                return;
+            }
+            activity.getApplication().registerActivityLifecycleCallbacks(new ResumeInvalidator());
+            lifecycleCallbacksRegistered = true;
+        }
+    }
+
+    public boolean isGranted(Context context, String permission) {
+        long now = SystemClock.elapsedRealtime();
+        return isGranted(context, permission, now, now - ttlMillis + 1);
+    }
+
+    /**
+     * Like {@link #isGranted(Context, String)}, but only trusts a cached state checked at or after
+     * {@code checkedSince} (an {@link SystemClock#elapsedRealtime()} time) and checks again otherwise.
+     */
+    public boolean isGrantedSince(Context context, String permission, long checkedSince) {
+        long now = SystemClock.elapsedRealtime();
+        return isGranted(context, permission, now, Math.max(checkedSince, now - ttlMillis + 1));
+    }
+
+    private boolean isGranted(Context context, String permission, long now, long validSince) {
+        Entry entry = entries.get(permission);
+        if (entry != null) {
+            long state = entry.state;
+            if (checkedAt(state) >= validSince) {
+                return isGranted(state);
+            }
+        }
+
+        long sequence = invalidations.get();
+        boolean granted = ActivityCompat.checkSelfPermission(context, permission) == PackageManager.PERMISSION_GRANTED;
+        put(permission, granted, now, sequence);
+        return granted;
+    }
+
+    /**
+     * Returns the cached state without checking anything: {@link PermissionGrantSnapshot#STATE_GRANTED},
+     * {@link PermissionGrantSnapshot#STATE_DENIED}, or {@link PermissionGrantSnapshot#STATE_UNKNOWN} if there is
+     * no valid entry.
+     */
+    public int peek(String permission) {
+        Entry entry = entries.get(permission);
+        if (entry == null) {
+            return PermissionGrantSnapshot.STATE_UNKNOWN;
+        }
+        long state = entry.state;
+        if (SystemClock.elapsedRealtime() - checkedAt(state) >= ttlMillis) {
+            return PermissionGrantSnapshot.STATE_UNKNOWN;
+        }
+        return isGranted(state) ? PermissionGrantSnapshot.STATE_GRANTED : PermissionGrantSnapshot.STATE_DENIED;
+    }
+
+    /**
+     * Returns the subset of {@code permissions} that is not granted.
+     */
+    public PermissionSet getDenied(Context context, PermissionSet permissions) {
+        prefill(context, permissions);
+        PermissionSet.Builder denied = null;
+        for (int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            if (!isGranted(context, PermissionRegistry.nameOf(id))) {
+                if (denied == null) {
+                    denied = new PermissionSet.Builder();
+                }
+                denied.addId(id);
+            }
+        }
+        return denied == null ? PermissionSet.EMPTY : denied.build();
+    }
+
+    public boolean areAllGranted(Context context, PermissionSet permissions) {
+        prefill(context, permissions);
+        for (int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+            if (!isGranted(context, PermissionRegistry.nameOf(id))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the grant state of all permissions declared in the manifest with one PackageManager call
+     * and caches every state the flags answer. Also useful to warm the cache at startup.
+     */
+    public PermissionGrantSnapshot refresh(Context context) {
+        long now = SystemClock.elapsedRealtime();
+        long sequence = invalidations.get();
+        PermissionGrantSnapshot snapshot = readSnapshot(context);
+        if (!snapshot.isAvailable()) {
+            // do not retry a failing call on every check, the individual checks still work
+            snapshotUnavailable = true;
+            return snapshot;
+        }
+        manifestPermissions = snapshot.getRequested();
+
+        PermissionSet requested = snapshot.getRequested();
+        for (int id = requested.nextId(0); id >= 0; id = requested.nextId(id + 1)) {
+            int state = snapshot.getState(id);
+            if (state != PermissionGrantSnapshot.STATE_UNKNOWN) {
+                put(PermissionRegistry.nameOf(id), state == PermissionGrantSnapshot.STATE_GRANTED, now, sequence);
+            }
+        }
+        return snapshot;
+    }
+
+    private static PermissionGrantSnapshot readSnapshot(Context context) {
+        boolean traced = PermissionTraceLog.beginSection("PermissionStateCache.refresh");
+        try {
+            PackageInfo packageInfo = context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), PackageManager.GET_PERMISSIONS);
+            return PermissionGrantSnapshot.of(packageInfo.requestedPermissions, packageInfo.requestedPermissionsFlags);
+        } catch (PackageManager.NameNotFoundException | RuntimeException e) {
+            // e.g. a dead package manager binder
+            return PermissionGrantSnapshot.UNAVAILABLE;
+        } finally {
+            PermissionTraceLog.endSection(traced);
+        }
+    }
+
+    private void prefill(Context context, PermissionSet permissions) {
+        if (!snapshotUnavailable) {
+            long now = SystemClock.elapsedRealtime();
+            int stale = 0;
+            for (int id = permissions.nextId(0); id >= 0; id = permissions.nextId(id + 1)) {
+                Entry entry = entries.get(PermissionRegistry.nameOf(id));
+                if ((entry == null || now - checkedAt(entry.state) >= ttlMillis) && ++stale >= SNAPSHOT_MIN_STALE) {
+                    refresh(context);
+                    break;
+                }
+            }
+        }
+        warnUndeclared(permissions);
+    }
+
+    private void warnUndeclared(PermissionSet permissions) {
+        PermissionSet declared = manifestPermissions;
+        if (declared == null || declared.containsAll(permissions)) {
+            return;
+        }
+        PermissionSet undeclared = permissions.minus(declared);
+        for (int id = undeclared.nextId(0); id >= 0; id = undeclared.nextId(id + 1)) {
+            String permission = PermissionRegistry.nameOf(id);
+            if (warnedUndeclared.add(permission)) {
+                Log.w(TAG, permission + " is not declared in the manifest, requesting it will always be denied");
+            }
+        }
+    }
+
+    public void update(String permission, boolean granted) {
+        put(permission, granted, SystemClock.elapsedRealtime(), invalidations.get());
+    }
+
+    /**
+     * Records the outcome of a request: every permission of {@code requested} not in {@code denied} is granted.
+     */
+    public void update(PermissionSet requested, PermissionSet denied) {
+        long now = SystemClock.elapsedRealtime();
+        long sequence = invalidations.get();
+        for (int id = requested.nextId(0); id >= 0; id = requested.nextId(id + 1)) {
+            put(PermissionRegistry.nameOf(id), !denied.containsId(id), now, sequence);
+        }
+    }
+
+    public void update(Map<String, Boolean> result) {
+        long now = SystemClock.elapsedRealtime();
+        long sequence = invalidations.get();
+        for (Map.Entry<String, Boolean> entry : result.entrySet()) {
+            put(entry.getKey(), Boolean.TRUE.equals(entry.getValue()), now, sequence);
+        }
+    }
+
+    // sequence is the invalidation count read before the check started
+    private void put(String permission, boolean granted, long checkedAt, long sequence) {
+        if (sequence < invalidatedAllAt) {
+            return;
+        }
+        // entries are updated in place, so refreshing a known permission does not allocate
+        Entry entry = entries.get(permission);
+        if (entry == null) {
+            entry = entries.computeIfAbsent(permission, ignored -> new Entry());
+        }
+        synchronized (entry) {
+            // read under the lock, so an invalidation either rejects this state or overwrites it afterwards
+            if (sequence < invalidatedAllAt || sequence < entry.invalidatedAt || checkedAt(entry.state) > checkedAt) {
+                return;
+            }
+            entry.state = pack(granted, checkedAt);
+        }
+    }
+
+    public void invalidate(String permission) {
+        // the entry stays, it remembers the invalidation for checks still running
+        Entry entry = entries.computeIfAbsent(permission, ignored -> new Entry());
+        synchronized (entry) {
+            entry.invalidatedAt = invalidations.incrementAndGet();
+            entry.state = STALE;
+        }
+    }
+
+    public void invalidateAll() {
+        invalidatedAllAt = invalidations.incrementAndGet();
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                entry.state = STALE;
+            }
+        }
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public PermissionStateCache setTtlMillis(long ttlMillis) {
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("ttlMillis must be >= 0");
+        }
+        this.ttlMillis = ttlMillis;
+        return this;
+    }
+
+    private static long pack(boolean granted, long checkedAt) {
+        return checkedAt << 1 | (granted ? 1L : 0L);
+    }
+
+    private static long checkedAt(long state) {
+        return state >> 1;
+    }
+
+    private static boolean isGranted(long state) {
+        return (state & 1L) != 0;
+    }
+
+    private static final class Entry {
+        // check time and grant state packed into one word so readers never see a torn pair, written under the lock
+        volatile long state = STALE;
+        // sequence number of the last invalidation of this permission, guarded by the lock
+        long invalidatedAt;
+    }
+
+    private final class ResumeInvalidator implements Application.ActivityLifecycleCallbacks {
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+            // the user may have changed permissions while the app was in the background
+            invalidateAll();
+            PermissionStateObserver.getInstance().requestRecheck(activity);
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+}
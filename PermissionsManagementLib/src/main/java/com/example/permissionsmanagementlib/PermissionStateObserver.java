@@ -0,0 +1,169 @@
+package com.example.permissionsmanagementlib;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process-wide stream of permission state changes.
+ *
+ * Subscribers watch a permission set and only hear about the permissions that changed.
+ * The states are re-checked in one batch over the union of all watched sets whenever an activity resumes,
+ * the settings screen returns or a request completes, and the result is fanned out to every subscriber,
+ * so N subscribers cost one check per permission. Triggers in the same main-loop pass share one re-check.
+ * Must be used on the main thread.
+ */
+public final class PermissionStateObserver {
+
+    private static final PermissionStateObserver INSTANCE = new PermissionStateObserver();
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final PermissionStateCache permissionStateCache = PermissionStateCache.getInstance();
+    private final Runnable recheck = this::recheckNow;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    // reused on every re-check, subscribers may unsubscribe while being notified
+    private final List<Subscription> dispatching = new ArrayList<>();
+    private Context context;
+    private boolean recheckPosted;
+
+    private PermissionStateObserver() {
+    }
+
+    public static PermissionStateObserver getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Subscribes until {@code owner} is destroyed. Changes are only delivered while the owner is at least started;
+     * changes that happen while it is stopped are delivered, merged, after it comes back.
+     */
+    public Subscription observe(LifecycleOwner owner, Context context, PermissionSet permissions, PermissionStateListener listener) {
+        Subscription subscription = new Subscription(permissions, listener, owner.getLifecycle());
+        owner.getLifecycle().addObserver(subscription.lifecycleObserver);
+        add(context, subscription);
+        return subscription;
+    }
+
+    /**
+     * Subscribes until {@link Subscription#unsubscribe()} is called.
+     */
+    public Subscription subscribe(Context context, PermissionSet permissions, PermissionStateListener listener) {
+        Subscription subscription = new Subscription(permissions, listener, null);
+        add(context, subscription);
+        return subscription;
+    }
+
+    /**
+     * Schedules a re-check of all watched permissions on the next main-loop pass.
+     */
+    public void requestRecheck(Context context) {
+        if (this.context == null) {
+            this.context = context.getApplicationContext();
+        }
+        if (subscriptions.isEmpty() || recheckPosted) {
+            return;
+        }
+        recheckPosted = true;
+        handler.post(recheck);
+    }
+
+    private void add(Context context, Subscription subscription) {
+        if (context instanceof Activity) {
+            // re-checks on resume come from the cache's lifecycle callbacks
+            permissionStateCache.attach((Activity) context);
+        }
+        subscriptions.add(subscription);
+        // the first delivery reports the current state
+        requestRecheck(context);
+    }
+
+    private void recheckNow() {
+        recheckPosted = false;
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+
+        PermissionSet watched = PermissionSet.EMPTY;
+        for (int i = 0; i < subscriptions.size(); i++) {
+            if (subscriptions.get(i).isActive()) {
+                watched = watched.union(subscriptions.get(i).permissions);
+            }
+        }
+        if (watched.isEmpty()) {
+            return;
+        }
+        PermissionSet granted = watched.minus(permissionStateCache.getDenied(context, watched));
+
+        dispatching.addAll(subscriptions);
+        for (int i = 0; i < dispatching.size(); i++) {
+            Subscription subscription = dispatching.get(i);
+            if (subscription.isActive()) {
+                subscription.deliver(granted);
+            }
+        }
+        dispatching.clear();
+    }
+
+    public final class Subscription {
+        private final PermissionSet permissions;
+        private final PermissionStateListener listener;
+        private final Lifecycle lifecycle;
+        private final LifecycleEventObserver lifecycleObserver;
+        // granted subset delivered last, null before the first delivery
+        private PermissionSet lastGranted;
+        private boolean subscribed = true;
+
+        Subscription(PermissionSet permissions, PermissionStateListener listener, Lifecycle lifecycle) {
+            this.permissions = permissions;
+            this.listener = listener;
+            this.lifecycle = lifecycle;
+            this.lifecycleObserver = lifecycle == null ? null : (source, event) -> {
+                if (event == Lifecycle.Event.ON_DESTROY) {
+                    unsubscribe();
+                }
+            };
+        }
+
+        public PermissionSet getPermissions() {
+            return permissions;
+        }
+
+        public void unsubscribe() {
+            if (!subscribed) {
+                return;
+            }
+            subscribed = false;
+            subscriptions.remove(this);
+            if (lifecycle != null) {
+                lifecycle.removeObserver(lifecycleObserver);
+            }
+        }
+
+        private boolean isActive() {
+            return subscribed && (lifecycle == null || lifecycle.getCurrentState().isAtLeast(Lifecycle.State.STARTED));
+        }
+
+        private void deliver(PermissionSet allGranted) {
+            PermissionSet nowGranted = allGranted.intersect(permissions);
+            PermissionSet previous = lastGranted;
+            lastGranted = nowGranted;
+            if (previous == null) {
+                listener.onPermissionStateChanged(nowGranted, permissions.minus(nowGranted));
+                return;
+            }
+            PermissionSet newlyGranted = nowGranted.minus(previous);
+            PermissionSet newlyDenied = previous.minus(nowGranted);
+            if (!newlyGranted.isEmpty() || !newlyDenied.isEmpty()) {
+                listener.onPermissionStateChanged(newlyGranted, newlyDenied);
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.permissionsmanagementlib;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shows the library's custom toast for one activity.
+ *
+ * The toast view is inflated once and reused. Notifications that arrive within
+ * {@link #setCoalesceWindowMillis(long) the coalesce window} are merged into one combined toast, and a newer
+ * notification with the same message replaces the older one instead of queueing behind it.
+ * While a toast is still on screen, a new burst updates it in place rather than stacking another one.
+ *
+ * There is one presenter per activity, independent of the activity's {@link PermissionLauncherHub}, so showing a
+ * toast registers nothing with the activity. It is released when the activity is destroyed.
+ */
+public final class PermissionToastPresenter {
+
+    public static final long DEFAULT_COALESCE_WINDOW_MILLIS = 250L;
+
+    // Toast.LENGTH_SHORT is shown for about 2 seconds
+    private static final long SHORT_TOAST_VISIBLE_MILLIS = 2_000L;
+
+    private static final Map<Activity, PermissionToastPresenter> presenters = new HashMap<>();
+
+    private final Activity activity;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flush = this::flush;
+
+    private final List<String> pendingMessages = new ArrayList<>();
+    private final StringBuilder messageBuilder = new StringBuilder();
+    private int pendingIconResId;
+    private boolean pendingDenial;
+    private long coalesceWindowMillis = DEFAULT_COALESCE_WINDOW_MILLIS;
+
+    private View toastView;
+    private TextView toastText;
+    private ImageView toastIcon;
+    private Toast toast;
+    private long toastShownAt;
+
+    private int inflationCount;
+    private int shownCount;
+    private int coalescedCount;
+    private long mainThreadNanos;
+
+    private PermissionToastPresenter(Activity activity) {
+        this.activity = activity;
+    }
+
+    public static PermissionToastPresenter of(AppCompatActivity activity) {
+        PermissionToastPresenter presenter = presenters.get(activity);
+        if (presenter == null) {
+            presenter = new PermissionToastPresenter(activity);
+            if (activity.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+                // flush() drops what is shown on a finishing activity
+                return presenter;
+            }
+            presenters.put(activity, presenter);
+            activity.getLifecycle().addObserver((LifecycleEventObserver) (source, event) -> {
+                if (event == Lifecycle.Event.ON_DESTROY) {
+                    PermissionToastPresenter removed = presenters.remove(activity);
+                    if (removed != null) {
+                        removed.release();
+                    }
+                }
+            });
+        }
+        return presenter;
+    }
+
+    // for tests: presenters of activities that are not destroyed yet
+    static int livePresenterCount() {
+        return presenters.size();
+    }
+
+    public void show(String message, int iconResId) {
+        long start = System.nanoTime();
+
+        // a newer identical notification makes the older one stale
+        if (pendingMessages.remove(message)) {
+            coalescedCount++;
+        } else if (!pendingMessages.isEmpty()) {
+            coalescedCount++;
+        }
+        pendingMessages.add(message);
+
+        // a denial in the burst decides the icon, otherwise the latest one wins
+        boolean denial = iconResId == R.drawable.undone;
+        if (denial || !pendingDenial) {
+            pendingIconResId = iconResId;
+        }
+        pendingDenial |= denial;
+
+        handler.removeCallbacks(flush);
+        handler.postDelayed(flush, coalesceWindowMillis);
+        mainThreadNanos += System.nanoTime() - start;
+    }
+
+    public PermissionToastPresenter setCoalesceWindowMillis(long coalesceWindowMillis) {
+        this.coalesceWindowMillis = coalesceWindowMillis;
+        return this;
+    }
+
+    public int getInflationCount() {
+        return inflationCount;
+    }
+
+    public int getShownCount() {
+        return shownCount;
+    }
+
+    // notifications merged into another toast or dropped as stale
+    public int getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    // total main thread time spent in show() and in building and showing the toasts
+    public long getMainThreadNanos() {
+        return mainThreadNanos;
+    }
+
+    void release() {
+        handler.removeCallbacks(flush);
+        pendingMessages.clear();
+        if (toast != null) {
+            toast.cancel();
+        }
+        toast = null;
+        toastView = null;
+        toastText = null;
+        toastIcon = null;
+    }
+
+    private void flush() {
+        if (pendingMessages.isEmpty() || activity.isFinishing()) {
+            pendingMessages.clear();
+            return;
+        }
+        long start = System.nanoTime();
+
+        messageBuilder.setLength(0);
+        for (int i = 0; i < pendingMessages.size(); i++) {
+            if (i > 0) {
+                messageBuilder.append('\n');
+            }
+            messageBuilder.append(pendingMessages.get(i));
+        }
+        pendingMessages.clear();
+        pendingDenial = false;
+
+        long now = SystemClock.uptimeMillis();
+        boolean visible = toast != null && now - toastShownAt < SHORT_TOAST_VISIBLE_MILLIS;
+        if (!visible) {
+            ensureView();
+        }
+        toastText.setText(messageBuilder.toString());
+        toastIcon.setImageResource(pendingIconResId);
+
+        if (!visible) {
+            toast = new Toast(activity.getApplicationContext());
+            toast.setDuration(Toast.LENGTH_SHORT);
+            toast.setView(toastView);
+            toast.show();
+            toastShownAt = now;
+            shownCount++;
+        }
+        mainThreadNanos += System.nanoTime() - start;
+    }
+
+    private void ensureView() {
+        // the window manager may not have detached the previous toast yet, a view can only have one parent
+        if (toastView == null || toastView.getParent() != null) {
+            toastView = activity.getLayoutInflater().inflate(R.layout.custom_toast, null);
+            toastText = toastView.findViewById(R.id.toast_text);
+            toastIcon = toastView.findViewById(R.id.toast_icon);
+            inflationCount++;
+        }
+    }
+}
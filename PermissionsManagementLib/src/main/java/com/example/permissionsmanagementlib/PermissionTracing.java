@@ -0,0 +1,77 @@
+package com.example.permissionsmanagementlib;
+
+import android.util.Log;
+
+import androidx.core.os.TraceCompat;
+
+import java.io.IOException;
+
+/**
+ * Switches the library's tracing on and off.
+ *
+ * {@link PermissionTraceLog#LEVEL_EVENTS} keeps the last flow events in a ring buffer that {@link #dump()} prints.
+ * {@link PermissionTraceLog#LEVEL_SECTIONS} additionally marks each flow phase and the main-thread work
+ * with trace sections, so they show up in Perfetto and systrace captures.
+ * Tracing is off by default and then costs one branch per call site.
+ */
+public final class PermissionTracing {
+
+    private static final String TAG = "PermissionTrace";
+
+    private static final PermissionTraceLog.SectionWriter SECTION_WRITER = new PermissionTraceLog.SectionWriter() {
+        @Override
+        public void beginSection(String name) {
+            TraceCompat.beginSection(name);
+        }
+
+        @Override
+        public void endSection() {
+            TraceCompat.endSection();
+        }
+
+        @Override
+        public void beginAsyncSection(String name, int cookie) {
+            // async sections can span callbacks, e.g. the system dialog from launch to result
+            TraceCompat.beginAsyncSection(name, cookie);
+        }
+
+        @Override
+        public void endAsyncSection(String name, int cookie) {
+            TraceCompat.endAsyncSection(name, cookie);
+        }
+    };
+
+    private PermissionTracing() {
+    }
+
+    public static void setLevel(int level) {
+        PermissionTraceLog.setSectionWriter(level >= PermissionTraceLog.LEVEL_SECTIONS ? SECTION_WRITER : null);
+        PermissionTraceLog.setLevel(level);
+    }
+
+    public static int getLevel() {
+        return PermissionTraceLog.getLevel();
+    }
+
+    public static void setCapacity(int capacity) {
+        PermissionTraceLog.setCapacity(capacity);
+    }
+
+    /**
+     * Returns the buffered events, oldest first.
+     */
+    public static String dump() {
+        StringBuilder out = new StringBuilder();
+        try {
+            PermissionTraceLog.dump(out);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new AssertionError(e);
+        }
+        return out.toString();
+    }
+
+    public static void dumpToLogcat() {
+        Log.i(TAG, dump());
+    }
+}
@@ -3,7 +3,11 @@ package com.example.permissionsmanagementlib;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
 import android.net.Uri;
+import android.os.Build;
 import android.provider.Settings;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -14,11 +18,38 @@ import android.widget.Toast;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.io.File;
+import java.lang.ref.WeakReference;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class PermissionUtils {
 
+    private static final String HISTORY_FILE_NAME = "permission_history.bin";
+
+    private static volatile PermissionHistoryStore permissionHistory;
+    private static final AtomicBoolean permissionHistoryPreloaded = new AtomicBoolean();
+
     public static void showModifyToast(Activity activity, String message, int iconResId) {
+        PermissionTraceLog.record(PermissionTraceLog.Event.TOAST_SHOWN, 0, null, iconResId);
+        boolean traced = PermissionTraceLog.beginSection("PermissionUtils.showModifyToast");
+        try {
+            showToast(activity, message, iconResId);
+        } finally {
+            PermissionTraceLog.endSection(traced);
+        }
+    }
+
+    private static void showToast(Activity activity, String message, int iconResId) {
+        if (activity.isDestroyed()) {
+            return;
+        }
+        if (activity instanceof AppCompatActivity) {
+            // reuses the inflated view and merges bursts of notifications into one toast
+            PermissionToastPresenter.of((AppCompatActivity) activity).show(message, iconResId);
+            return;
+        }
+
         // inflate the layout
         LayoutInflater inflater = (LayoutInflater) activity.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
         View layout = inflater.inflate(R.layout.custom_toast, null);
@@ -38,38 +69,108 @@ public class PermissionUtils {
         toast.show();
     }
 
+    /**
+     * Returns a callback that shows a toast. It only holds the activity weakly and does nothing once the activity
+     * is finishing or destroyed, so it may be kept longer than the activity.
+     */
     public static PermissionsCallback getDefaultCallback(AppCompatActivity activity, String toastMessage) {
+        WeakReference<AppCompatActivity> activityRef = new WeakReference<>(activity);
+        Resources resources = activity.getResources();
+        MessageTemplate deniedMessage = MessageTemplate.plural(count -> resources.getQuantityString(R.plurals.permission_denied_toast, count));
+        StringBuilder messageBuilder = new StringBuilder();
         return new PermissionsCallback() {
             @Override
             public void onPermissionsGranted() {
-                PermissionUtils.showModifyToast(activity, toastMessage, R.drawable.done);
+                AppCompatActivity current = getAliveActivity(activityRef);
+                if (current != null) {
+                    PermissionUtils.showModifyToast(current, toastMessage, R.drawable.done);
+                }
             }
 
             @Override
             public void onPermissionsDenied(List<String> deniedPermissions) {
-                String message = "Permissions denied:\n" + PermissionUtils.permissionsStringGenerator(deniedPermissions);
-                PermissionUtils.showModifyToast(activity, message, R.drawable.undone);
+                onPermissionsDenied(PermissionSet.of(deniedPermissions.toArray(new String[0])));
+            }
+
+            @Override
+            public void onPermissionsDenied(PermissionSet deniedPermissions) {
+                AppCompatActivity current = getAliveActivity(activityRef);
+                if (current != null) {
+                    PermissionLabelResolver labels = PermissionLabelResolver.getInstance(current);
+                    messageBuilder.setLength(0);
+                    deniedMessage.render(messageBuilder, deniedPermissions, labels, labels.getAppLabel());
+                    PermissionUtils.showModifyToast(current, messageBuilder.toString(), R.drawable.undone);
+                }
             }
         };
     }
 
-    private static String getPermissionName(String permission) {
-        return permission.toLowerCase().substring(("android.permission.").length()).replace('_', ' ');
+    private static AppCompatActivity getAliveActivity(WeakReference<AppCompatActivity> activityRef) {
+        AppCompatActivity activity = activityRef.get();
+        return activity == null || activity.isFinishing() || activity.isDestroyed() ? null : activity;
     }
 
     public static String permissionsStringGenerator(List<String> permissions) {
-        StringBuilder permissionsString = new StringBuilder();
-        for (int i = 0; i < permissions.size(); i++) {
-            String permission = permissions.get(i);
-            permissionsString.append((i+1) + ") " )
-                    .append(getPermissionName(permission))
-                    .append("\n");
+        return PermissionText.permissionsStringGenerator(permissions);
+    }
+
+    /**
+     * Lists the permissions with the system's localized labels.
+     */
+    public static String permissionsStringGenerator(Context context, List<String> permissions) {
+        return PermissionText.permissionsStringGenerator(permissions, PermissionLabelResolver.getInstance(context));
+    }
+
+    public static String permissionsStringGenerator(PermissionSet permissions) {
+        return permissionsStringGenerator(permissions.toList());
+    }
+
+    /**
+     * Returns the process-wide permission history, e.g. for analytics.
+     */
+    public static PermissionHistoryStore getPermissionHistory(Context context) {
+        PermissionHistoryStore history = permissionHistory;
+        if (history == null) {
+            synchronized (PermissionUtils.class) {
+                history = permissionHistory;
+                if (history == null) {
+                    Context applicationContext = context.getApplicationContext();
+                    // an app update may change what the app requests and how, its permanent denials are only guesses
+                    history = PermissionHistoryStore.open(new File(applicationContext.getFilesDir(), HISTORY_FILE_NAME),
+                            () -> getAppVersion(applicationContext));
+                    permissionHistory = history;
+                }
+            }
         }
+        return history;
+    }
 
-        return permissionsString.toString();
+    /**
+     * Opens the permission history on a background thread, once per process. The launcher hub starts it when it is
+     * created, so the first flow finds the file already read instead of mapping it on the main thread. A flow that
+     * starts earlier waits for the rest of the read, a few records of a small file, which is acceptable there.
+     */
+    static void preloadPermissionHistory(Context context) {
+        if (permissionHistory != null || !permissionHistoryPreloaded.compareAndSet(false, true)) {
+            return;
+        }
+        Context applicationContext = context.getApplicationContext();
+        Thread thread = new Thread(() -> getPermissionHistory(applicationContext), "PermissionHistoryPreload");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static long getAppVersion(Context context) {
+        try {
+            PackageInfo packageInfo = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P ? packageInfo.getLongVersionCode() : packageInfo.versionCode;
+        } catch (PackageManager.NameNotFoundException | RuntimeException e) {
+            return PermissionHistoryStore.NO_APP_VERSION;
+        }
     }
 
     public static void openAppSettings(AppCompatActivity activity, ActivityResultLauncher<Intent> settingsLauncher) {
+        PermissionTraceLog.record(PermissionTraceLog.Event.SETTINGS_OPENED, 0, null);
         Intent intent = new Intent(Settings.ACTION_APPLICATION_DETAILS_SETTINGS);
         Uri uri = Uri.fromParts("package", activity.getPackageName(), null);
         intent.setData(uri);
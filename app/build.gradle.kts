@@ -1,5 +1,7 @@
 plugins {
     alias(libs.plugins.android.application)
+    // fails the build when code uses a permission the merged manifest does not declare
+    alias(libs.plugins.declared.permissions)
 }
 
 android {
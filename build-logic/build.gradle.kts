@@ -0,0 +1,42 @@
+plugins {
+    `java-gradle-plugin`
+    alias(libs.plugins.maven.publish)
+}
+
+// Gradle plugins of the library:
+// - permission-index generates PlatformPermissionIndex for PermissionsManagementCore
+// - permissions checks an app's permission references against its merged manifest
+group = "com.example.permissionsmanagementlib"
+version = "1.0.0"
+
+java {
+    // the Android Gradle plugin API is built for Java 17
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+sourceSets {
+    main {
+        // the platform table is shipped inside the plugin, so consuming apps get the same data as the library
+        resources.srcDir("../PermissionsManagementCore/src/main/permissions")
+    }
+}
+
+gradlePlugin {
+    plugins {
+        create("permissionIndex") {
+            id = "com.example.permissionsmanagementlib.permission-index"
+            implementationClass = "com.example.permissionsmanagementlib.gradle.PermissionIndexPlugin"
+        }
+        create("permissions") {
+            id = "com.example.permissionsmanagementlib.permissions"
+            implementationClass = "com.example.permissionsmanagementlib.gradle.DeclaredPermissionsPlugin"
+        }
+    }
+}
+
+dependencies {
+    compileOnly(libs.android.gradle.api)
+
+    testImplementation(libs.junit)
+}
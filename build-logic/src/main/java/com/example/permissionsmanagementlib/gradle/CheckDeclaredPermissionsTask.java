@@ -0,0 +1,269 @@
+package com.example.permissionsmanagementlib.gradle;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * Compares the permissions an app references in its sources with the ones its merged manifest declares,
+ * and generates {@code DeclaredPermissions}: a constant per declared permission plus the ALL and RUNTIME arrays.
+ * A permission that is used but not declared can never be granted, so it fails the build;
+ * with {@code failOnUndeclared = false} it is only reported as a warning. References in comments are ignored.
+ */
+@CacheableTask
+public abstract class CheckDeclaredPermissionsTask extends DefaultTask {
+
+    static final String CLASS_NAME = "DeclaredPermissions";
+    private static final String ANDROID_NAMESPACE = "http://schemas.android.com/apk/res/android";
+    private static final String ANDROID_PERMISSION_PREFIX = "android.permission.";
+
+    // Manifest.permission.CAMERA and "android.permission.CAMERA" / "com.example.permission.SYNC"
+    private static final Pattern MANIFEST_CONSTANT = Pattern.compile("\\bManifest\\.permission\\.([A-Z][A-Z0-9_]*)\\b");
+    private static final Pattern STRING_LITERAL = Pattern.compile("\"((?:[a-z][a-z0-9_]*\\.)+permission\\.[A-Z][A-Z0-9_]*)\"");
+
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getMergedManifest();
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getSources();
+
+    // only used to print short source locations
+    @Internal
+    public abstract DirectoryProperty getProjectDirectory();
+
+    @Input
+    public abstract Property<String> getPackageName();
+
+    @Input
+    public abstract Property<Boolean> getFailOnUndeclared();
+
+    @Input
+    public abstract ListProperty<String> getAllowUndeclared();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    @TaskAction
+    public void check() {
+        try {
+            Set<String> declared = readDeclared(getMergedManifest().get().getAsFile());
+            Map<String, String> undeclared = new LinkedHashMap<>();
+            File projectDirectory = getProjectDirectory().get().getAsFile();
+            for (File file : getSources().getFiles()) {
+                String location = projectDirectory.toPath().relativize(file.toPath()).toString();
+                findReferences(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8), location, declared, undeclared);
+            }
+            undeclared.keySet().removeAll(getAllowUndeclared().get());
+
+            if (!undeclared.isEmpty()) {
+                String message = undeclaredMessage(undeclared);
+                if (getFailOnUndeclared().get()) {
+                    throw new GradleException(message);
+                }
+                getLogger().warn(message);
+            }
+
+            File source = new File(getOutputDirectory().get().getAsFile(),
+                    getPackageName().get().replace('.', '/') + "/" + CLASS_NAME + ".java");
+            Files.createDirectories(source.getParentFile().toPath());
+            try (Writer writer = Files.newBufferedWriter(source.toPath(), StandardCharsets.UTF_8)) {
+                writeDeclaredPermissions(writer, getPackageName().get(), declared, PlatformPermissionTable.load());
+            }
+        } catch (IOException e) {
+            throw new GradleException("Could not check declared permissions: " + e.getMessage(), e);
+        }
+    }
+
+    static Set<String> readDeclared(File manifest) throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            Document document = factory.newDocumentBuilder().parse(manifest);
+            Set<String> declared = new LinkedHashSet<>();
+            for (String tag : new String[]{"uses-permission", "uses-permission-sdk-23"}) {
+                NodeList nodes = document.getElementsByTagName(tag);
+                for (int i = 0; i < nodes.getLength(); i++) {
+                    String name = ((Element) nodes.item(i)).getAttributeNS(ANDROID_NAMESPACE, "name");
+                    if (!name.isEmpty()) {
+                        declared.add(name);
+                    }
+                }
+            }
+            return declared;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(manifest + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Adds every referenced permission missing from {@code declared} to {@code undeclared}, with its first location.
+     */
+    static void findReferences(List<String> lines, String location, Set<String> declared, Map<String, String> undeclared) {
+        boolean inBlockComment = false;
+        StringBuilder code = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            String source = lines.get(i);
+            if (!inBlockComment && source.indexOf("permission.") < 0 && source.indexOf("/*") < 0) {
+                continue;
+            }
+            inBlockComment = stripComments(source, inBlockComment, code);
+            String line = code.toString();
+            if (line.indexOf("permission.") < 0) {
+                continue;
+            }
+            Matcher constant = MANIFEST_CONSTANT.matcher(line);
+            while (constant.find()) {
+                check(ANDROID_PERMISSION_PREFIX + constant.group(1), location, i + 1, declared, undeclared);
+            }
+            Matcher literal = STRING_LITERAL.matcher(line);
+            while (literal.find()) {
+                check(literal.group(1), location, i + 1, declared, undeclared);
+            }
+        }
+    }
+
+    /**
+     * Writes {@code line} without its comments to {@code code} and returns whether a block comment is still open.
+     * Comment markers inside string and character literals are kept.
+     */
+    static boolean stripComments(String line, boolean inBlockComment, StringBuilder code) {
+        code.setLength(0);
+        char quote = 0;
+        int i = 0;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            char next = i + 1 < line.length() ? line.charAt(i + 1) : 0;
+            if (inBlockComment) {
+                if (c == '*' && next == '/') {
+                    inBlockComment = false;
+                    i++;
+                }
+            } else if (quote != 0) {
+                code.append(c);
+                if (c == '\\' && next != 0) {
+                    code.append(next);
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '/' && next == '/') {
+                break;
+            } else if (c == '/' && next == '*') {
+                inBlockComment = true;
+                i++;
+            } else {
+                if (c == '"' || c == '\'') {
+                    quote = c;
+                }
+                code.append(c);
+            }
+            i++;
+        }
+        return inBlockComment;
+    }
+
+    private static void check(String permission, String location, int line, Set<String> declared, Map<String, String> undeclared) {
+        if (!declared.contains(permission)) {
+            undeclared.putIfAbsent(permission, location + ":" + line);
+        }
+    }
+
+    static String undeclaredMessage(Map<String, String> undeclared) {
+        StringBuilder message = new StringBuilder("Permissions used in code but not declared in the merged manifest"
+                + " (requesting them is always denied):\n");
+        for (Map.Entry<String, String> entry : undeclared.entrySet()) {
+            message.append("  ").append(entry.getKey()).append(" (").append(entry.getValue()).append(")\n");
+        }
+        message.append("Declare them with <uses-permission> or list them in declaredPermissions.allowUndeclared.");
+        return message.toString();
+    }
+
+    static void writeDeclaredPermissions(Appendable out, String packageName, Set<String> declared,
+                                         PlatformPermissionTable table) throws IOException {
+        Map<String, String> constants = new LinkedHashMap<>();
+        Set<String> usedNames = new HashSet<>();
+        for (String permission : declared) {
+            String name = constantName(permission.substring(permission.lastIndexOf('.') + 1));
+            if (!usedNames.add(name)) {
+                // the same simple name in two namespaces
+                name = constantName(permission);
+                usedNames.add(name);
+            }
+            constants.put(permission, name);
+        }
+
+        out.append("package ").append(packageName).append(";\n\n");
+        out.append("// Generated from the merged manifest by the com.example.permissionsmanagementlib.permissions plugin, do not edit.\n");
+        out.append("public final class ").append(CLASS_NAME).append(" {\n\n");
+        for (Map.Entry<String, String> entry : constants.entrySet()) {
+            out.append("    public static final String ").append(entry.getValue()).append(" = ")
+                    .append(GeneratePermissionIndexTask.quote(entry.getKey())).append(";\n");
+        }
+
+        List<String> runtime = new ArrayList<>();
+        for (Map.Entry<String, String> entry : constants.entrySet()) {
+            PlatformPermissionTable.Row row = table.get(entry.getKey());
+            if (row == null || row.protection == PlatformPermissionTable.PROTECTION_DANGEROUS) {
+                // permissions the table does not know may be custom dangerous ones, keep them
+                runtime.add(entry.getValue());
+            }
+        }
+        out.append("\n    // every permission declared in the merged manifest\n");
+        out.append("    public static final String[] ALL = {").append(String.join(", ", constants.values())).append("};\n");
+        out.append("\n    // the declared permissions the user grants at runtime\n");
+        out.append("    public static final String[] RUNTIME = {").append(String.join(", ", runtime)).append("};\n\n");
+        out.append("    private ").append(CLASS_NAME).append("() {\n    }\n}\n");
+    }
+
+    private static String constantName(String value) {
+        StringBuilder name = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            name.append(Character.isLetterOrDigit(c) ? Character.toUpperCase(c) : '_');
+        }
+        if (name.length() == 0 || Character.isDigit(name.charAt(0))) {
+            name.insert(0, '_');
+        }
+        return name.toString();
+    }
+}
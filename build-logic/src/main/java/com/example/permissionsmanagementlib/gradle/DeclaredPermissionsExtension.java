@@ -0,0 +1,25 @@
+package com.example.permissionsmanagementlib.gradle;
+
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+
+/**
+ * {@code declaredPermissions { ... }} block of the permissions plugin.
+ */
+public abstract class DeclaredPermissionsExtension {
+
+    public DeclaredPermissionsExtension() {
+        getFailOnUndeclared().convention(true);
+    }
+
+    /**
+     * Whether a permission referenced in code but missing from the merged manifest fails the build (default),
+     * instead of only logging a warning.
+     */
+    public abstract Property<Boolean> getFailOnUndeclared();
+
+    /**
+     * Permissions that may be referenced without being declared, e.g. ones only checked, never requested.
+     */
+    public abstract ListProperty<String> getAllowUndeclared();
+}
@@ -0,0 +1,76 @@
+package com.example.permissionsmanagementlib.gradle;
+
+import com.android.build.api.artifact.SingleArtifact;
+import com.android.build.api.variant.ApplicationAndroidComponentsExtension;
+import com.android.build.api.variant.SourceDirectories;
+import com.android.build.api.variant.Variant;
+
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.TaskProvider;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import kotlin.Pair;
+
+/**
+ * For Android apps: checks every variant's permission references against its merged manifest before compiling
+ * and generates {@code <namespace>.DeclaredPermissions}. Configured with {@code declaredPermissions { ... }}.
+ */
+public class DeclaredPermissionsPlugin implements Plugin<Project> {
+
+    @Override
+    public void apply(Project project) {
+        DeclaredPermissionsExtension extension = project.getExtensions()
+                .create("declaredPermissions", DeclaredPermissionsExtension.class);
+        project.getPluginManager().withPlugin("com.android.application", androidPlugin -> {
+            ApplicationAndroidComponentsExtension components = project.getExtensions()
+                    .getByType(ApplicationAndroidComponentsExtension.class);
+            components.onVariants(components.selector().all(), variant -> {
+                String variantName = variant.getName();
+                TaskProvider<CheckDeclaredPermissionsTask> check = project.getTasks().register(
+                        "check" + Character.toUpperCase(variantName.charAt(0)) + variantName.substring(1) + "DeclaredPermissions",
+                        CheckDeclaredPermissionsTask.class, task -> {
+                            task.setGroup("verification");
+                            task.setDescription("Checks the permissions used in code against the merged manifest of " + variantName + ".");
+                            task.getMergedManifest().set(variant.getArtifacts().get(SingleArtifact.MERGED_MANIFEST.INSTANCE));
+                            // the source sets compiled into the variant; tests may reference permissions they never request
+                            for (String sourceSet : sourceSets(variant)) {
+                                task.getSources().from(project.fileTree("src/" + sourceSet, tree ->
+                                        tree.include("java/**/*.java", "java/**/*.kt", "kotlin/**/*.java", "kotlin/**/*.kt")));
+                            }
+                            task.getProjectDirectory().set(project.getLayout().getProjectDirectory());
+                            task.getPackageName().set(variant.getNamespace());
+                            task.getFailOnUndeclared().set(extension.getFailOnUndeclared());
+                            task.getAllowUndeclared().set(extension.getAllowUndeclared());
+                            task.getOutputDirectory().set(project.getLayout().getBuildDirectory()
+                                    .dir("generated/sources/declaredPermissions/" + variantName));
+                        });
+                SourceDirectories.Flat java = variant.getSources().getJava();
+                if (java != null) {
+                    // compiling the variant now runs the check first
+                    java.addGeneratedSourceDirectory(check, CheckDeclaredPermissionsTask::getOutputDirectory);
+                }
+            });
+        });
+    }
+
+    // main, the flavors, the build type and the variant itself, e.g. main, free, debug, freeDebug
+    private static Set<String> sourceSets(Variant variant) {
+        Set<String> sourceSets = new LinkedHashSet<>();
+        sourceSets.add("main");
+        for (Pair<String, String> flavor : variant.getProductFlavors()) {
+            sourceSets.add(flavor.getSecond());
+        }
+        String flavorName = variant.getFlavorName();
+        if (flavorName != null && !flavorName.isEmpty()) {
+            sourceSets.add(flavorName);
+        }
+        if (variant.getBuildType() != null) {
+            sourceSets.add(variant.getBuildType());
+        }
+        sourceSets.add(variant.getName());
+        return sourceSets;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.permissionsmanagementlib.gradle;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles the platform permission table into {@code PlatformPermissionIndex}, a class of parallel arrays.
+ * The runtime permissions come first, in table order: PermissionRegistry registers them up front, so their ids
+ * are their rows and they take a PermissionSet's inline bits.
+ */
+@CacheableTask
+public abstract class GeneratePermissionIndexTask extends DefaultTask {
+
+    static final String PACKAGE = "com.example.permissionsmanagementlib";
+    static final String CLASS_NAME = "PlatformPermissionIndex";
+
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getTable();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    @TaskAction
+    public void generate() {
+        File outputDirectory = getOutputDirectory().get().getAsFile();
+        File source = new File(outputDirectory, PACKAGE.replace('.', '/') + "/" + CLASS_NAME + ".java");
+        try (Reader reader = Files.newBufferedReader(getTable().get().getAsFile().toPath(), StandardCharsets.UTF_8)) {
+            PlatformPermissionTable table = PlatformPermissionTable.parse(reader);
+            Files.createDirectories(source.getParentFile().toPath());
+            try (Writer writer = Files.newBufferedWriter(source.toPath(), StandardCharsets.UTF_8)) {
+                write(writer, table.rows());
+            }
+        } catch (IOException e) {
+            throw new GradleException("Could not generate " + CLASS_NAME + ": " + e.getMessage(), e);
+        }
+    }
+
+    static void write(Appendable out, List<PlatformPermissionTable.Row> tableRows) throws IOException {
+        List<PlatformPermissionTable.Row> rows = new ArrayList<>(tableRows.size());
+        for (PlatformPermissionTable.Row row : tableRows) {
+            if (row.protection == PlatformPermissionTable.PROTECTION_DANGEROUS) {
+                rows.add(row);
+            }
+        }
+        int runtimeCount = rows.size();
+        for (PlatformPermissionTable.Row row : tableRows) {
+            if (row.protection != PlatformPermissionTable.PROTECTION_DANGEROUS) {
+                rows.add(row);
+            }
+        }
+
+        out.append("package ").append(PACKAGE).append(";\n\n");
+        out.append("// Generated from platform-permissions.csv by the permission-index plugin, do not edit.\n");
+        out.append("// Rows below RUNTIME_COUNT are the runtime permissions, registered up front with their row as PermissionRegistry id.\n");
+        out.append("final class ").append(CLASS_NAME).append(" {\n\n");
+        out.append("    static final int COUNT = ").append(String.valueOf(rows.size())).append(";\n");
+        out.append("    static final int RUNTIME_COUNT = ").append(String.valueOf(runtimeCount)).append(";\n\n");
+
+        out.append("    static final String[] NAMES = {\n");
+        for (PlatformPermissionTable.Row row : rows) {
+            out.append("            ").append(quote(row.name)).append(",\n");
+        }
+        out.append("    };\n\n");
+
+        out.append("    static final String[] DISPLAY_NAMES = {\n");
+        for (PlatformPermissionTable.Row row : rows) {
+            out.append("            ").append(quote(row.displayName())).append(",\n");
+        }
+        out.append("    };\n\n");
+
+        out.append("    static final String[] GROUPS = {\n");
+        for (PlatformPermissionTable.Row row : rows) {
+            out.append("            ").append(row.group == null ? "null" : quote(row.group)).append(",\n");
+        }
+        out.append("    };\n\n");
+
+        out.append("    static final byte[] PROTECTION = {");
+        for (int i = 0; i < rows.size(); i++) {
+            out.append(i == 0 ? "" : ", ").append(String.valueOf(rows.get(i).protection));
+        }
+        out.append("};\n\n");
+
+        out.append("    static final int[] MIN_SDK = {");
+        for (int i = 0; i < rows.size(); i++) {
+            out.append(i == 0 ? "" : ", ").append(String.valueOf(rows.get(i).minSdk));
+        }
+        out.append("};\n\n");
+
+        out.append("    static final int[] MAX_SDK = {");
+        for (int i = 0; i < rows.size(); i++) {
+            int maxSdk = rows.get(i).maxSdk;
+            out.append(i == 0 ? "" : ", ").append(maxSdk == Integer.MAX_VALUE ? "Integer.MAX_VALUE" : String.valueOf(maxSdk));
+        }
+        out.append("};\n\n");
+
+        out.append("    private ").append(CLASS_NAME).append("() {\n    }\n}\n");
+    }
+
+    static String quote(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.permissionsmanagementlib.gradle;
+
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.api.tasks.TaskProvider;
+
+/**
+ * Generates PlatformPermissionIndex from {@code src/main/permissions/platform-permissions.csv}
+ * and adds it to the main source set. Used by PermissionsManagementCore.
+ */
+public class PermissionIndexPlugin implements Plugin<Project> {
+
+    @Override
+    public void apply(Project project) {
+        project.getPlugins().withType(JavaPlugin.class, javaPlugin -> {
+            TaskProvider<GeneratePermissionIndexTask> generate = project.getTasks().register(
+                    "generatePermissionIndex", GeneratePermissionIndexTask.class, task -> {
+                        task.setGroup("build");
+                        task.setDescription("Generates PlatformPermissionIndex from the platform permission table.");
+                        task.getTable().set(project.getLayout().getProjectDirectory()
+                                .file("src/main/permissions/" + PlatformPermissionTable.RESOURCE));
+                        task.getOutputDirectory().set(project.getLayout().getBuildDirectory()
+                                .dir("generated/sources/permissionIndex/java/main"));
+                    });
+            SourceSetContainer sourceSets = project.getExtensions().getByType(SourceSetContainer.class);
+            sourceSets.getByName(SourceSet.MAIN_SOURCE_SET_NAME).getJava()
+                    .srcDir(generate.flatMap(GeneratePermissionIndexTask::getOutputDirectory));
+        });
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.permissionsmanagementlib.gradle;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The platform permission table (platform-permissions.csv): one row per permission with its group,
+ * protection level and the SDK range it has an effect on.
+ */
+final class PlatformPermissionTable {
+
+    static final String RESOURCE = "platform-permissions.csv";
+    static final String GROUP_PREFIX = "android.permission-group.";
+    private static final String ANDROID_PERMISSION_PREFIX = "android.permission.";
+
+    // same values as PermissionIndex.PROTECTION_* in the core module
+    static final int PROTECTION_NORMAL = 0;
+    static final int PROTECTION_DANGEROUS = 1;
+    static final int PROTECTION_SIGNATURE = 2;
+    static final int PROTECTION_APPOP = 3;
+
+    static final class Row {
+        final String name;
+        final String group;
+        final int protection;
+        final int minSdk;
+        final int maxSdk;
+
+        Row(String name, String group, int protection, int minSdk, int maxSdk) {
+            this.name = name;
+            this.group = group;
+            this.protection = protection;
+            this.minSdk = minSdk;
+            this.maxSdk = maxSdk;
+        }
+
+        // what PermissionText derives at runtime for unknown permissions, e.g. "read external storage"
+        String displayName() {
+            int start = name.startsWith(ANDROID_PERMISSION_PREFIX) ? ANDROID_PERMISSION_PREFIX.length() : name.lastIndexOf('.') + 1;
+            StringBuilder out = new StringBuilder(name.length() - start);
+            for (int i = start; i < name.length(); i++) {
+                char c = name.charAt(i);
+                out.append(c == '_' ? ' ' : Character.toLowerCase(c));
+            }
+            return out.toString();
+        }
+    }
+
+    private final Map<String, Row> rows;
+
+    private PlatformPermissionTable(Map<String, Row> rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * Loads the copy of the table bundled with the plugin.
+     */
+    static PlatformPermissionTable load() throws IOException {
+        try (InputStream in = PlatformPermissionTable.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IOException(RESOURCE + " is missing from the plugin");
+            }
+            return parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    static PlatformPermissionTable parse(Reader reader) throws IOException {
+        Map<String, Row> rows = new LinkedHashMap<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] columns = line.split(",", -1);
+            if (columns.length != 5) {
+                throw new IOException(RESOURCE + ":" + lineNumber + ": expected 5 columns but found " + columns.length);
+            }
+            String name = columns[0].trim();
+            String group = columns[1].trim();
+            Row row = new Row(name,
+                    group.isEmpty() ? null : GROUP_PREFIX + group,
+                    protection(columns[2].trim(), lineNumber),
+                    Integer.parseInt(columns[3].trim()),
+                    columns[4].trim().isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(columns[4].trim()));
+            if (rows.put(name, row) != null) {
+                throw new IOException(RESOURCE + ":" + lineNumber + ": " + name + " is listed twice");
+            }
+        }
+        return new PlatformPermissionTable(rows);
+    }
+
+    private static int protection(String level, int lineNumber) throws IOException {
+        switch (level) {
+            case "normal":
+                return PROTECTION_NORMAL;
+            case "dangerous":
+                return PROTECTION_DANGEROUS;
+            case "signature":
+                return PROTECTION_SIGNATURE;
+            case "appop":
+                return PROTECTION_APPOP;
+            default:
+                throw new IOException(RESOURCE + ":" + lineNumber + ": unknown protection level " + level);
+        }
+    }
+
+    List<Row> rows() {
+        return Collections.unmodifiableList(new ArrayList<>(rows.values()));
+    }
+
+    Row get(String permission) {
+        return rows.get(permission);
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.permissionsmanagementlib.gradle;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CheckDeclaredPermissionsTaskTest {
+
+    private static final String CAMERA = "android.permission.CAMERA";
+    private static final String RECORD_AUDIO = "android.permission.RECORD_AUDIO";
+    private static final String INTERNET = "android.permission.INTERNET";
+
+    @Test
+    public void stripsLineAndBlockComments() {
+        StringBuilder code = new StringBuilder();
+        assertFalse(CheckDeclaredPermissionsTask.stripComments("int a = 1; // Manifest.permission.CAMERA", false, code));
+        assertEquals("int a = 1; ", code.toString());
+
+        assertFalse(CheckDeclaredPermissionsTask.stripComments("a /* b */ c", false, code));
+        assertEquals("a  c", code.toString());
+
+        assertTrue(CheckDeclaredPermissionsTask.stripComments("a /* b", false, code));
+        assertEquals("a ", code.toString());
+        assertTrue(CheckDeclaredPermissionsTask.stripComments("still inside", true, code));
+        assertEquals("", code.toString());
+        assertFalse(CheckDeclaredPermissionsTask.stripComments("end */ d", true, code));
+        assertEquals(" d", code.toString());
+    }
+
+    @Test
+    public void keepsCommentMarkersInLiterals() {
+        StringBuilder code = new StringBuilder();
+        assertFalse(CheckDeclaredPermissionsTask.stripComments("String url = \"http://x\"; // gone", false, code));
+        assertEquals("String url = \"http://x\"; ", code.toString());
+
+        assertFalse(CheckDeclaredPermissionsTask.stripComments("String s = \"a \\\" /* b\"; c", false, code));
+        assertEquals("String s = \"a \\\" /* b\"; c", code.toString());
+
+        assertFalse(CheckDeclaredPermissionsTask.stripComments("char c = '/'; char d = '\\''; // gone", false, code));
+        assertEquals("char c = '/'; char d = '\\''; ", code.toString());
+    }
+
+    @Test
+    public void reportsUndeclaredReferencesWithTheirFirstLocation() {
+        Map<String, String> undeclared = new LinkedHashMap<>();
+        CheckDeclaredPermissionsTask.findReferences(Arrays.asList(
+                "import android.Manifest;",
+                "String[] p = {Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO};",
+                "String sync = \"com.example.permission.SYNC\";",
+                "request(\"android.permission.RECORD_AUDIO\");"
+        ), "src/main/java/A.java", set(CAMERA), undeclared);
+
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put(RECORD_AUDIO, "src/main/java/A.java:2");
+        expected.put("com.example.permission.SYNC", "src/main/java/A.java:3");
+        assertEquals(expected, undeclared);
+    }
+
+    @Test
+    public void ignoresReferencesInComments() {
+        Map<String, String> undeclared = new LinkedHashMap<>();
+        CheckDeclaredPermissionsTask.findReferences(Arrays.asList(
+                "// Manifest.permission.CAMERA",
+                "/* Manifest.permission.RECORD_AUDIO",
+                " * \"android.permission.READ_SMS\"",
+                " */ String s = \"// Manifest.permission.READ_CONTACTS\";",
+                "int x; /** Manifest.permission.SEND_SMS */"
+        ), "A.java", Collections.emptySet(), undeclared);
+
+        // a reference inside a string literal is code, even when it looks like a comment
+        assertEquals(Collections.singleton("android.permission.READ_CONTACTS"), undeclared.keySet());
+    }
+
+    @Test
+    public void readsUsesPermissionTags() throws IOException {
+        File manifest = File.createTempFile("AndroidManifest", ".xml");
+        try {
+            Files.write(manifest.toPath(), Arrays.asList(
+                    "<manifest xmlns:android=\"http://schemas.android.com/apk/res/android\">",
+                    "    <uses-permission android:name=\"android.permission.CAMERA\"/>",
+                    "    <uses-permission-sdk-23 android:name=\"android.permission.RECORD_AUDIO\"/>",
+                    "    <permission android:name=\"com.example.permission.OWN\"/>",
+                    "    <uses-permission android:name=\"android.permission.CAMERA\"/>",
+                    "</manifest>"), StandardCharsets.UTF_8);
+
+            assertEquals(Arrays.asList(CAMERA, RECORD_AUDIO),
+                    Arrays.asList(CheckDeclaredPermissionsTask.readDeclared(manifest).toArray()));
+        } finally {
+            manifest.delete();
+        }
+    }
+
+    @Test
+    public void generatesConstantsAndRuntimePermissions() throws IOException {
+        PlatformPermissionTable table = PlatformPermissionTable.parse(new StringReader(
+                "# test table\n"
+                        + "android.permission.CAMERA, CAMERA, dangerous, 23,\n"
+                        + "android.permission.INTERNET, , normal, 1,\n"));
+        StringBuilder out = new StringBuilder();
+        CheckDeclaredPermissionsTask.writeDeclaredPermissions(out, "com.example.app",
+                set(CAMERA, INTERNET, "com.example.permission.CAMERA", "com.example.permission.SYNC"), table);
+        String source = out.toString();
+
+        assertTrue(source.startsWith("package com.example.app;\n"));
+        assertTrue(source.contains("public static final String CAMERA = \"android.permission.CAMERA\";"));
+        assertTrue(source.contains("public static final String INTERNET = \"android.permission.INTERNET\";"));
+        // the same simple name in another namespace gets the full name
+        assertTrue(source.contains(
+                "public static final String COM_EXAMPLE_PERMISSION_CAMERA = \"com.example.permission.CAMERA\";"));
+        assertTrue(source.contains("public static final String SYNC = \"com.example.permission.SYNC\";"));
+        assertTrue(source.contains("public static final String[] ALL = {CAMERA, INTERNET, COM_EXAMPLE_PERMISSION_CAMERA, SYNC};"));
+        // normal permissions are granted at install, permissions the table does not know may be custom dangerous ones
+        assertTrue(source.contains("public static final String[] RUNTIME = {CAMERA, COM_EXAMPLE_PERMISSION_CAMERA, SYNC};"));
+    }
+
+    @Test
+    public void messageListsEveryUndeclaredPermission() {
+        Map<String, String> undeclared = new LinkedHashMap<>();
+        undeclared.put(CAMERA, "A.java:3");
+        undeclared.put(RECORD_AUDIO, "B.kt:7");
+        String message = CheckDeclaredPermissionsTask.undeclaredMessage(undeclared);
+
+        assertTrue(message.contains("  " + CAMERA + " (A.java:3)\n"));
+        assertTrue(message.contains("  " + RECORD_AUDIO + " (B.kt:7)\n"));
+        assertTrue(message.contains("allowUndeclared"));
+    }
+
+    private static Set<String> set(String... permissions) {
+        return new LinkedHashSet<>(Arrays.asList(permissions));
+    }
+}
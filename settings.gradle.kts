@@ -1,4 +1,5 @@
 pluginManagement {
+    includeBuild("build-logic")
     repositories {
         google {
             content {
@@ -23,3 +24,5 @@ dependencyResolutionManagement {
 rootProject.name = "PermissionsManagement"
 include(":app")
 include(":PermissionsManagementLib")
+include(":PermissionsManagementCore")
+include(":PermissionsManagementBenchmarks")